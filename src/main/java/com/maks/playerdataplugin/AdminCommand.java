@@ -0,0 +1,619 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public class AdminCommand implements CommandExecutor, TabCompleter {
+
+    private static final String[] SUBCOMMANDS = {"metrics", "history", "restore", "inspect", "trace", "bench", "codec", "export", "import", "integrity"};
+    private static final int HISTORY_PAGE_SIZE = 10;
+    private static final int DEFAULT_TRACE_EVENTS = 20;
+    private static final int DEFAULT_CODEC_ITERATIONS = 20;
+    private static final int DEFAULT_INTEGRITY_ENTRIES = 10;
+
+    private final Main plugin;
+    private final FaultBench faultBench;
+    private final BulkTransfer bulkTransfer;
+
+    public AdminCommand(Main plugin) {
+        this.plugin = plugin;
+        this.faultBench = new FaultBench(plugin);
+        this.bulkTransfer = new BulkTransfer(plugin);
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!sender.hasPermission("playerdataplugin.admin")) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+            return true;
+        }
+
+        if (args.length == 1 && args[0].equalsIgnoreCase("metrics")) {
+            showMetrics(sender);
+            return true;
+        }
+
+        if (args.length == 2 && args[0].equalsIgnoreCase("metrics")) {
+            showPlayerMetrics(sender, args[1]);
+            return true;
+        }
+
+        if (args.length >= 1 && args.length <= 3 && args[0].equalsIgnoreCase("bench")) {
+            int operations = plugin.getConfig().getInt("faults.bench.operations", 1000);
+            if (args.length == 3) {
+                try {
+                    operations = Math.max(1, Integer.parseInt(args[2]));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid number of saves: " + args[2]);
+                    return true;
+                }
+            }
+            runBench(sender, args.length >= 2 ? args[1] : "all", operations);
+            return true;
+        }
+
+        if ((args.length == 1 || args.length == 2) && args[0].equalsIgnoreCase("codec")) {
+            int iterations = DEFAULT_CODEC_ITERATIONS;
+            if (args.length == 2) {
+                try {
+                    iterations = Math.max(1, Integer.parseInt(args[1]));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid number of iterations: " + args[1]);
+                    return true;
+                }
+            }
+            runCodecBench(sender, iterations);
+            return true;
+        }
+
+        // These read from the database, which the async startup may not have opened yet
+        if (args.length > 0 && (args[0].equalsIgnoreCase("history") || args[0].equalsIgnoreCase("restore")
+                || args[0].equalsIgnoreCase("inspect") || args[0].equalsIgnoreCase("integrity")) && !plugin.getPersistenceStartup().isReady()) {
+            sender.sendMessage(ChatColor.RED + "The database is still being opened, please try again in a moment.");
+            return true;
+        }
+
+        if ((args.length == 2 || args.length == 3) && args[0].equalsIgnoreCase("history")) {
+            int page = 1;
+            if (args.length == 3) {
+                try {
+                    page = Math.max(1, Integer.parseInt(args[2]));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid page: " + args[2]);
+                    return true;
+                }
+            }
+            showHistory(sender, args[1], page);
+            return true;
+        }
+
+        if (args.length == 3 && args[0].equalsIgnoreCase("restore")) {
+            long snapshotId;
+            try {
+                snapshotId = Long.parseLong(args[2].startsWith("#") ? args[2].substring(1) : args[2]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Invalid snapshot id: " + args[2]);
+                return true;
+            }
+            restoreSnapshot(sender, args[1], snapshotId);
+            return true;
+        }
+
+        if ((args.length == 2 || args.length == 3) && args[0].equalsIgnoreCase("inspect")) {
+            long snapshotId = -1;
+            if (args.length == 3) {
+                try {
+                    snapshotId = Long.parseLong(args[2].startsWith("#") ? args[2].substring(1) : args[2]);
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid snapshot id: " + args[2]);
+                    return true;
+                }
+            }
+            inspectInventory(sender, args[1], snapshotId);
+            return true;
+        }
+
+        if ((args.length == 2 || args.length == 3) && args[0].equalsIgnoreCase("trace")) {
+            int count = DEFAULT_TRACE_EVENTS;
+            if (args.length == 3) {
+                try {
+                    count = Math.max(1, Integer.parseInt(args[2]));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid number of events: " + args[2]);
+                    return true;
+                }
+            }
+            showTrace(sender, args[1], count);
+            return true;
+        }
+
+        if ((args.length == 1 || args.length == 2) && args[0].equalsIgnoreCase("integrity")) {
+            int count = DEFAULT_INTEGRITY_ENTRIES;
+            if (args.length == 2) {
+                try {
+                    count = Math.max(1, Integer.parseInt(args[1]));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid number of entries: " + args[1]);
+                    return true;
+                }
+            }
+            showIntegrityReport(sender, count);
+            return true;
+        }
+
+        if ((args.length == 1 || args.length == 2) && args[0].equalsIgnoreCase("export")) {
+            runTransfer(sender, true, args.length == 2 ? args[1]
+                    : "playerdata-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".pdx");
+            return true;
+        }
+
+        if (args.length == 2 && args[0].equalsIgnoreCase("import")) {
+            runTransfer(sender, false, args[1]);
+            return true;
+        }
+
+        // Invalid usage
+        sender.sendMessage(ChatColor.RED + "Usage:");
+        sender.sendMessage(ChatColor.RED + "/" + label + " metrics [player] - Show persistence metrics");
+        sender.sendMessage(ChatColor.RED + "/" + label + " history <player> [page] - List inventory snapshots");
+        sender.sendMessage(ChatColor.RED + "/" + label + " restore <player> <id> - Restore an inventory snapshot");
+        sender.sendMessage(ChatColor.RED + "/" + label + " inspect <player> [id] - Summarize a stored inventory or snapshot");
+        sender.sendMessage(ChatColor.RED + "/" + label + " trace <player> [count] - Show a player's recent trace events");
+        sender.sendMessage(ChatColor.RED + "/" + label + " bench [scenario|all] [saves] - Benchmark saves under injected faults");
+        sender.sendMessage(ChatColor.RED + "/" + label + " codec [iterations] - Benchmark the item codecs on online players' inventories");
+        sender.sendMessage(ChatColor.RED + "/" + label + " integrity [count] - Show stored inventories the background scan found corrupt or suspicious");
+        sender.sendMessage(ChatColor.RED + "/" + label + " export [file] - Export all stored data into an archive (console only)");
+        sender.sendMessage(ChatColor.RED + "/" + label + " import <file> - Import an archive into the database (console only)");
+        return true;
+    }
+
+    // Resolves online players directly and everyone else through the stored usernames, calls back on the main thread
+    static void resolvePlayer(Main plugin, CommandSender sender, String name, Consumer<UUID> callback) {
+        Player online = Bukkit.getPlayerExact(name);
+        if (online != null) {
+            callback.accept(online.getUniqueId());
+            return;
+        }
+        if (plugin.getPlayerStatsManager() == null) {
+            sender.sendMessage(ChatColor.RED + "Player " + name + " is not online.");
+            return;
+        }
+
+        plugin.getPlayerStatsManager().findPlayerByUsername(name, uuid -> {
+            if (uuid == null) {
+                sender.sendMessage(ChatColor.RED + "Player " + name + " not found.");
+            } else {
+                callback.accept(uuid);
+            }
+        });
+    }
+
+    private void showHistory(CommandSender sender, String name, int page) {
+        SnapshotHistory history = plugin.getSnapshotHistory();
+        if (!history.isEnabled()) {
+            sender.sendMessage(ChatColor.RED + "Inventory history is disabled.");
+            return;
+        }
+
+        resolvePlayer(plugin, sender, name, uuid -> plugin.getDatabaseExecutor().execute(() -> {
+            List<HistorySnapshot> snapshots;
+            try {
+                snapshots = history.list(uuid, (page - 1) * HISTORY_PAGE_SIZE, HISTORY_PAGE_SIZE);
+            } catch (SQLException e) {
+                plugin.getTaskScheduler().runGlobal(() ->
+                        sender.sendMessage(ChatColor.RED + "Failed to load the history of " + name + ": " + e.getMessage()));
+                return;
+            }
+
+            plugin.getTaskScheduler().runGlobal(() -> {
+                if (snapshots.isEmpty()) {
+                    sender.sendMessage(ChatColor.YELLOW + "No inventory snapshots for " + name + (page > 1 ? " on page " + page : "") + ".");
+                    return;
+                }
+
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+                sender.sendMessage(ChatColor.GOLD + "Inventory history of " + name + " (page " + page + ")");
+                for (HistorySnapshot snapshot : snapshots) {
+                    sender.sendMessage(ChatColor.YELLOW + "#" + snapshot.getId() + " " +
+                            ChatColor.WHITE + format.format(new Date(snapshot.getCreatedAt())) + " " +
+                            ChatColor.GRAY + snapshot.getReason() + " " + snapshot.getHash().substring(0, 8) +
+                            (snapshot.isCheckpoint() ? ChatColor.AQUA + " [checkpoint]" : ""));
+                }
+            });
+        }));
+    }
+
+    private void restoreSnapshot(CommandSender sender, String name, long snapshotId) {
+        SnapshotHistory history = plugin.getSnapshotHistory();
+        if (!history.isEnabled()) {
+            sender.sendMessage(ChatColor.RED + "Inventory history is disabled.");
+            return;
+        }
+
+        resolvePlayer(plugin, sender, name, uuid -> plugin.getDatabaseExecutor().execute(() -> {
+            StoredInventory restored;
+            try {
+                restored = history.load(uuid, snapshotId);
+            } catch (SQLException e) {
+                plugin.getTaskScheduler().runGlobal(() ->
+                        sender.sendMessage(ChatColor.RED + "Failed to load snapshot #" + snapshotId + ": " + e.getMessage()));
+                return;
+            }
+            if (restored == null) {
+                plugin.getTaskScheduler().runGlobal(() ->
+                        sender.sendMessage(ChatColor.RED + "Snapshot #" + snapshotId + " of " + name + " not found."));
+                return;
+            }
+
+            // Decoded here, so the main thread only applies the ready state
+            PlayerState restoredState;
+            try {
+                restoredState = plugin.getPlayerDataListener().decodeState(uuid, restored);
+            } catch (IllegalStateException e) {
+                plugin.getTaskScheduler().runGlobal(() ->
+                        sender.sendMessage(ChatColor.RED + "Snapshot #" + snapshotId + " is corrupted: " + e.getMessage()));
+                return;
+            }
+
+            plugin.getTaskScheduler().runForPlayer(uuid, () -> {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player != null && player.isOnline()) {
+                    if (plugin.getPlayerDataListener().restoreInventory(player, restoredState)) {
+                        sender.sendMessage(ChatColor.GREEN + "Restored snapshot #" + snapshotId + " for " + name + ".");
+                        plugin.getLogger().info(sender.getName() + " restored inventory snapshot #" + snapshotId + " of " + name);
+                    } else {
+                        sender.sendMessage(ChatColor.RED + "The data of " + name + " is still loading, try again in a moment.");
+                    }
+                    return;
+                }
+
+                plugin.getDatabaseExecutor().execute(() -> restoreOffline(sender, name, uuid, snapshotId, restored));
+            });
+        }));
+    }
+
+    private void restoreOffline(CommandSender sender, String name, UUID uuid, long snapshotId, StoredInventory restored) {
+        String message;
+        try {
+            switch (plugin.getPlayerDataListener().restoreOfflineInventory(uuid, restored)) {
+                case SAVED:
+                    message = ChatColor.GREEN + "Restored snapshot #" + snapshotId + " for " + name + " (offline).";
+                    plugin.getLogger().info(sender.getName() + " restored inventory snapshot #" + snapshotId + " of offline player " + name);
+                    break;
+                case PLAYER_ACTIVE:
+                    message = ChatColor.RED + name + " is online or still being saved, snapshot #" + snapshotId + " was NOT restored.";
+                    break;
+                default:
+                    message = ChatColor.RED + name + " is online on another server, restore it there.";
+                    break;
+            }
+        } catch (SQLException e) {
+            message = ChatColor.RED + "Failed to restore snapshot #" + snapshotId + ": " + e.getMessage();
+        }
+
+        String result = message;
+        plugin.getTaskScheduler().runGlobal(() -> sender.sendMessage(result));
+    }
+
+    /**
+     * Summarizes the stored inventory, or a history snapshot if an id is given, without applying it. Types
+     * and amounts come from the slot index, so items (and the contents of containers) aren't decoded.
+     */
+    private void inspectInventory(CommandSender sender, String name, long snapshotId) {
+        if (snapshotId >= 0 && !plugin.getSnapshotHistory().isEnabled()) {
+            sender.sendMessage(ChatColor.RED + "Inventory history is disabled.");
+            return;
+        }
+
+        resolvePlayer(plugin, sender, name, uuid -> plugin.getDatabaseExecutor().execute(() -> {
+            List<String> lines = new ArrayList<>();
+            try {
+                StoredInventory stored = snapshotId >= 0 ? plugin.getSnapshotHistory().load(uuid, snapshotId)
+                        : plugin.getDatabaseManager().getInventoryStore().loadAll(Collections.singletonList(uuid)).get(uuid);
+                if (stored == null || stored.isEmpty()) {
+                    lines.add(ChatColor.YELLOW + (snapshotId >= 0 ? "Snapshot #" + snapshotId + " of " + name + " not found."
+                            : "No stored inventory for " + name + "."));
+                } else {
+                    describeInventory(lines, InventorySnapshot.open(stored),
+                            name + (snapshotId >= 0 ? ", snapshot #" + snapshotId : ", stored version " + stored.getVersion()));
+                }
+            } catch (SQLException | IllegalStateException e) {
+                lines.add(ChatColor.RED + "Failed to read the inventory of " + name + ": " + e.getMessage());
+            }
+
+            plugin.getTaskScheduler().runGlobal(() -> {
+                for (String line : lines) {
+                    sender.sendMessage(line);
+                }
+            });
+        }));
+    }
+
+    private static void describeInventory(List<String> lines, InventorySnapshot snapshot, String title) {
+        int containers = 0;
+        for (InventorySnapshot.Section section : InventorySnapshot.Section.values()) {
+            for (int slot = 0; slot < snapshot.getSize(section); slot++) {
+                if (snapshot.isContainer(section, slot)) {
+                    containers++;
+                }
+            }
+        }
+
+        lines.add(ChatColor.GOLD + "Inventory of " + title);
+        lines.add(ChatColor.GRAY + "" + snapshot.countItems(InventorySnapshot.Section.CONTENTS) + " stacks in the inventory, " +
+                snapshot.countItems(InventorySnapshot.Section.ENDER_CHEST) + " in the ender chest, " + containers + " containers");
+        lines.add(ChatColor.YELLOW + "Armor: " + ChatColor.WHITE + describeSlots(snapshot,
+                InventorySnapshot.ARMOR_START, InventorySnapshot.ARMOR_START + InventorySnapshot.ARMOR_SIZE));
+        lines.add(ChatColor.YELLOW + "Offhand: " + ChatColor.WHITE + describeSlots(snapshot,
+                InventorySnapshot.OFFHAND_SLOT, InventorySnapshot.OFFHAND_SLOT + 1));
+        lines.add(ChatColor.YELLOW + "Hotbar: " + ChatColor.WHITE + describeSlots(snapshot, 0, InventorySnapshot.HOTBAR_SIZE));
+        if (!snapshot.isIndexed()) {
+            lines.add(ChatColor.GRAY + "Stored in an older format, decoded in full. The next save rewrites it indexed.");
+        }
+    }
+
+    private static String describeSlots(InventorySnapshot snapshot, int from, int to) {
+        StringBuilder description = new StringBuilder();
+        for (int slot = from; slot < Math.min(to, snapshot.getSize(InventorySnapshot.Section.CONTENTS)); slot++) {
+            if (snapshot.isEmpty(InventorySnapshot.Section.CONTENTS, slot)) {
+                continue;
+            }
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(snapshot.getType(InventorySnapshot.Section.CONTENTS, slot).name().toLowerCase())
+                    .append(" x").append(snapshot.getAmount(InventorySnapshot.Section.CONTENTS, slot));
+            if (snapshot.isContainer(InventorySnapshot.Section.CONTENTS, slot)) {
+                description.append(" (container)");
+            }
+        }
+        return description.length() == 0 ? "empty" : description.toString();
+    }
+
+    private void showTrace(CommandSender sender, String name, int count) {
+        TraceBuffer traceBuffer = plugin.getTraceBuffer();
+        resolvePlayer(plugin, sender, name, uuid -> {
+            List<TraceBuffer.Event> events = traceBuffer.recent(uuid, count);
+            if (events.isEmpty()) {
+                sender.sendMessage(ChatColor.YELLOW + "No trace events for " + name + ".");
+                return;
+            }
+
+            sender.sendMessage(ChatColor.GOLD + "Last " + events.size() + " trace events of " + name);
+            for (TraceBuffer.Event event : events) {
+                sender.sendMessage(ChatColor.GRAY + event.format());
+            }
+        });
+    }
+
+    private void runBench(CommandSender sender, String scenarioName, int operations) {
+        FaultInjector injector = plugin.getDatabaseManager().getFaultInjector();
+        if (injector == null) {
+            sender.sendMessage(ChatColor.RED + "The bench needs faults.enabled on a MySQL-compatible backend. Never run it against production data.");
+            return;
+        }
+        if (!plugin.getPersistenceStartup().isReady()) {
+            sender.sendMessage(ChatColor.RED + "The database is still being opened, please try again in a moment.");
+            return;
+        }
+        // The injected faults hit every connection, real players' saves included
+        if (!Bukkit.getOnlinePlayers().isEmpty()) {
+            sender.sendMessage(ChatColor.RED + "The bench can only run while no players are online.");
+            return;
+        }
+
+        List<FaultInjector.Profile> scenarios = new ArrayList<>();
+        if (scenarioName.equalsIgnoreCase("all")) {
+            scenarios.addAll(injector.getScenarios().values());
+        } else if (injector.getScenarios().containsKey(scenarioName.toLowerCase())) {
+            scenarios.add(injector.getScenarios().get(scenarioName.toLowerCase()));
+        } else {
+            sender.sendMessage(ChatColor.RED + "Unknown scenario " + scenarioName + ", known: " + String.join(", ", injector.getScenarios().keySet()));
+            return;
+        }
+
+        int players = Math.max(1, plugin.getConfig().getInt("faults.bench.players", 50));
+        boolean started = faultBench.start(scenarios, players, operations,
+                line -> plugin.getTaskScheduler().runGlobal(() -> sender.sendMessage(ChatColor.GRAY + line)));
+        if (!started) {
+            sender.sendMessage(ChatColor.RED + "A bench is already running.");
+            return;
+        }
+        sender.sendMessage(ChatColor.GOLD + "Benchmarking " + operations + " saves by " + players + " players on " +
+                plugin.getDatabaseExecutor().getMode() + " database threads, scenarios: " + scenarios.size());
+    }
+
+    private void runCodecBench(CommandSender sender, int iterations) {
+        // Each inventory is captured on its owner's thread, the encoding itself runs async
+        List<CompletableFuture<PlayerState>> captures = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            CompletableFuture<PlayerState> capture = new CompletableFuture<>();
+            plugin.getTaskScheduler().runForEntity(player, () -> capture.complete(PlayerState.capture(player)));
+            captures.add(capture);
+        }
+
+        sender.sendMessage(ChatColor.GOLD + "Benchmarking the item codecs on " + captures.size() + " inventories...");
+        CompletableFuture.allOf(captures.toArray(new CompletableFuture[0])).thenRun(() -> plugin.getTaskScheduler().runAsync(() -> {
+            List<PlayerState> states = new ArrayList<>();
+            for (CompletableFuture<PlayerState> capture : captures) {
+                states.add(capture.join());
+            }
+            List<String> lines = CodecBench.run(states, iterations);
+            plugin.getTaskScheduler().runGlobal(() -> {
+                for (String line : lines) {
+                    sender.sendMessage(ChatColor.GRAY + line);
+                }
+            });
+        }));
+    }
+
+    private void showIntegrityReport(CommandSender sender, int count) {
+        plugin.getDatabaseExecutor().execute(() -> {
+            List<IntegrityIssue> issues;
+            try {
+                issues = plugin.getDatabaseManager().getInventoryStore().listIssues(count);
+            } catch (SQLException e) {
+                plugin.getTaskScheduler().runGlobal(() ->
+                        sender.sendMessage(ChatColor.RED + "Failed to load the integrity report: " + e.getMessage()));
+                return;
+            }
+
+            plugin.getTaskScheduler().runGlobal(() -> {
+                sender.sendMessage(ChatColor.GOLD + "Integrity report");
+                sender.sendMessage(ChatColor.GRAY + plugin.getIntegrityScanner().getMetrics());
+                if (issues.isEmpty()) {
+                    sender.sendMessage(ChatColor.GREEN + "No corrupt or suspicious inventories found so far.");
+                    return;
+                }
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+                for (IntegrityIssue issue : issues) {
+                    sender.sendMessage((issue.getSeverity() == IntegrityIssue.Severity.CORRUPT ? ChatColor.RED : ChatColor.YELLOW) +
+                            issue.getSeverity().name().toLowerCase() + " " + ChatColor.WHITE + issue.getUuid() + ChatColor.GRAY +
+                            " v" + issue.getVersion() + " " + format.format(new Date(issue.getCheckedAt())) + ": " + issue.getDetail());
+                }
+            });
+        });
+    }
+
+    private void runTransfer(CommandSender sender, boolean export, String fileName) {
+        // Transfers touch every stored player, so they're kept off in-game commands
+        if (sender instanceof Player) {
+            sender.sendMessage(ChatColor.RED + "Exports and imports can only be started from the console.");
+            return;
+        }
+        if (!plugin.getPersistenceStartup().isReady()) {
+            sender.sendMessage(ChatColor.RED + "The database is still being opened, please try again in a moment.");
+            return;
+        }
+        if (fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\") || fileName.contains("..")) {
+            sender.sendMessage(ChatColor.RED + "Invalid file name: " + fileName + ", archives are kept in the exports folder.");
+            return;
+        }
+
+        File file = new File(bulkTransfer.getDirectory(), fileName);
+        if (!export && !file.isFile()) {
+            sender.sendMessage(ChatColor.RED + "No archive named " + fileName + " in " + bulkTransfer.getDirectory().getPath() + ".");
+            return;
+        }
+        if (export && !bulkTransfer.getDirectory().isDirectory() && !bulkTransfer.getDirectory().mkdirs()) {
+            sender.sendMessage(ChatColor.RED + "Unable to create " + bulkTransfer.getDirectory().getPath() + ".");
+            return;
+        }
+
+        Consumer<String> output = line -> plugin.getLogger().info(line);
+        boolean started = export ? bulkTransfer.startExport(file, output) : bulkTransfer.startImport(file, output);
+        if (!started) {
+            sender.sendMessage(ChatColor.RED + "An export or import is already running.");
+            return;
+        }
+        sender.sendMessage(ChatColor.GOLD + (export ? "Exporting all stored data to " : "Importing ") + file.getPath() + ", progress is logged.");
+    }
+
+    private void showMetrics(CommandSender sender) {
+        sender.sendMessage(ChatColor.GOLD + "PlayerDataPlugin metrics");
+
+        List<String> lines = new ArrayList<>();
+        lines.add(plugin.getPersistenceStartup().getMetrics());
+        if (plugin.getDatabaseManager().getLocalStore() != null) {
+            lines.add(plugin.getDatabaseManager().getLocalStore().getMetrics());
+        }
+        lines.add(plugin.getDatabaseManager().getCircuitBreaker().getMetrics());
+        lines.addAll(plugin.getDatabaseManager().getPoolMetrics());
+        lines.add(plugin.getDatabaseExecutor().getMetrics());
+        if (plugin.getDatabaseManager().getFaultInjector() != null) {
+            lines.add(plugin.getDatabaseManager().getFaultInjector().getMetrics());
+        }
+        lines.add(plugin.getDatabaseManager().getWriteBacklog().getMetrics());
+        lines.add(plugin.getSnapshotHistory().getMetrics());
+        lines.add(plugin.getTraceBuffer().getMetrics());
+        lines.add(plugin.getCadenceController().getMetrics());
+        lines.add(plugin.getSaveScheduler().getMetrics());
+        lines.add(plugin.getPlayerDataListener().getSaveMetrics());
+        lines.add(BufferPool.getMetrics());
+        lines.add(plugin.getPlayerDataListener().getLoadMetrics());
+        lines.add(plugin.getPlayerDataListener().getRecentQuitCache().getMetrics());
+        lines.add(plugin.getOfflineInventories().getMetrics());
+        lines.add(plugin.getIntegrityScanner().getMetrics());
+        lines.addAll(plugin.getPlayerDataListener().getInventoryLoader().getMetrics());
+        if (plugin.getPlayerStatsManager() != null) {
+            lines.addAll(plugin.getPlayerStatsManager().getStatsLoader().getMetrics());
+            if (plugin.getPlayerStatsManager().getBalanceSampler() != null) {
+                lines.add(plugin.getPlayerStatsManager().getBalanceSampler().getMetrics());
+            }
+        }
+
+        for (String line : lines) {
+            sender.sendMessage(ChatColor.YELLOW + line);
+        }
+    }
+
+    private void showPlayerMetrics(CommandSender sender, String name) {
+        Player player = Bukkit.getPlayerExact(name);
+        if (player == null) {
+            sender.sendMessage(ChatColor.RED + "Player " + name + " is not online.");
+            return;
+        }
+
+        double decodeMillis = plugin.getPlayerDataListener().getLastDecodeMillis(player.getUniqueId());
+        sender.sendMessage(ChatColor.GOLD + "PlayerDataPlugin metrics for " + player.getName());
+        sender.sendMessage(ChatColor.YELLOW + (decodeMillis < 0 ? "join decode: no stored data was decoded"
+                : "join decode: " + String.format("%.3f", decodeMillis) + " ms"));
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        List<String> completions = new ArrayList<>();
+        if (!sender.hasPermission("playerdataplugin.admin")) {
+            return completions;
+        }
+
+        if (args.length == 1) {
+            String partial = args[0].toLowerCase();
+            for (String subcommand : SUBCOMMANDS) {
+                if (subcommand.startsWith(partial)) {
+                    completions.add(subcommand);
+                }
+            }
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("bench") && plugin.getDatabaseManager().getFaultInjector() != null) {
+            String partial = args[1].toLowerCase();
+            completions.add("all");
+            completions.addAll(plugin.getDatabaseManager().getFaultInjector().getScenarios().keySet());
+            completions.removeIf(scenario -> !scenario.startsWith(partial));
+        } else if (args.length == 2 && (args[0].equalsIgnoreCase("history") || args[0].equalsIgnoreCase("restore")
+                || args[0].equalsIgnoreCase("inspect") || args[0].equalsIgnoreCase("metrics") || args[0].equalsIgnoreCase("trace"))) {
+            String partial = args[1].toLowerCase();
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                if (player.getName().toLowerCase().startsWith(partial)) {
+                    completions.add(player.getName());
+                }
+            }
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("import")) {
+            String[] archives = bulkTransfer.getDirectory().list((dir, name) -> name.endsWith(".pdx"));
+            if (archives != null) {
+                for (String archive : archives) {
+                    if (archive.startsWith(args[1])) {
+                        completions.add(archive);
+                    }
+                }
+            }
+        }
+
+        return completions;
+    }
+}
@@ -0,0 +1,169 @@
+package com.maks.playerdataplugin;
+
+import net.milkbowl.vault.economy.Economy;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples Vault balances a few players per tick and caches them, so stats saves and /stats read a cached
+ * value instead of calling the economy plugin (which may query its own database) for every player at once.
+ */
+public class BalanceSampler implements Listener {
+
+    private final Main plugin;
+    private final Economy economy;
+    private final long refreshMillis;
+    private final int samplesPerTick;
+    private final long tickBudgetNanos;
+    private final Map<UUID, Sample> samples = new ConcurrentHashMap<>();
+    // Players due for their first sample, and the round-robin of everyone online (guarded by the sampler)
+    private final Set<UUID> priority = new LinkedHashSet<>();
+    private final Deque<UUID> rotation = new ArrayDeque<>();
+    private TaskScheduler.Task task;
+    private final Tracer tracer;
+
+    // Metrics
+    private final AtomicLong sampled = new AtomicLong();
+    private final AtomicLong sampleNanos = new AtomicLong();
+    private final AtomicLong maxSampleNanos = new AtomicLong();
+    private long budgetExhaustedTicks = 0;
+
+    public static class Sample {
+        private final double balance;
+        private final long sampledAt;
+
+        Sample(double balance, long sampledAt) {
+            this.balance = balance;
+            this.sampledAt = sampledAt;
+        }
+
+        public double getBalance() { return balance; }
+        public long getSampledAt() { return sampledAt; }
+    }
+
+    public BalanceSampler(Main plugin, Economy economy) {
+        this.plugin = plugin;
+        this.economy = economy;
+        this.refreshMillis = Math.max(1L, plugin.getConfig().getLong("economy.balanceRefreshSeconds", 30)) * 1000L;
+        this.samplesPerTick = Math.max(1, plugin.getConfig().getInt("economy.balanceSamplesPerTick", 4));
+        this.tickBudgetNanos = Math.max(1L, plugin.getConfig().getLong("economy.balanceTickBudgetMicros", 1000)) * 1000L;
+        this.tracer = new Tracer(plugin.getTraceBuffer(), "STATS-DEBUG");
+    }
+
+    public synchronized void start() {
+        Bukkit.getOnlinePlayers().forEach(player -> priority.add(player.getUniqueId()));
+        task = plugin.getTaskScheduler().runGlobalTimer(this::tick, 1L, 1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * The cached balance of a player, or null if they haven't been sampled yet.
+     */
+    public Sample getSample(UUID uuid) {
+        return samples.get(uuid);
+    }
+
+    /**
+     * Drops a player's cached balance, once their stats have been saved on quit.
+     */
+    public void forget(UUID uuid) {
+        samples.remove(uuid);
+    }
+
+    private synchronized void tick() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        int taken = 0;
+
+        // New players first, then walk the rotation once at most, skipping balances that are still fresh
+        int candidates = priority.size() + rotation.size();
+        for (int i = 0; i < candidates && taken < samplesPerTick; i++) {
+            if (System.nanoTime() - start >= tickBudgetNanos) {
+                budgetExhaustedTicks++;
+                break;
+            }
+
+            UUID uuid;
+            if (!priority.isEmpty()) {
+                uuid = priority.iterator().next();
+                priority.remove(uuid);
+            } else {
+                uuid = rotation.pollFirst();
+            }
+
+            Player player = Bukkit.getPlayer(uuid);
+            if (player == null) {
+                continue;
+            }
+            rotation.addLast(uuid);
+
+            Sample sample = samples.get(uuid);
+            if (sample != null && now - sample.sampledAt < refreshMillis) {
+                continue;
+            }
+            // Inline on Paper, on the player's region thread on Folia
+            plugin.getTaskScheduler().runForEntity(player, () -> sample(player));
+            taken++;
+        }
+    }
+
+    private void sample(Player player) {
+        long start = System.nanoTime();
+        double balance = economy.getBalance(player);
+        long elapsed = System.nanoTime() - start;
+
+        samples.put(player.getUniqueId(), new Sample(balance, System.currentTimeMillis()));
+        sampled.incrementAndGet();
+        sampleNanos.addAndGet(elapsed);
+        maxSampleNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        synchronized (this) {
+            rotation.remove(uuid);
+            priority.add(uuid);
+        }
+    }
+
+    // Runs before the stats listener's quit save, a single lookup so the final save stores the current balance
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        synchronized (this) {
+            priority.remove(uuid);
+            rotation.remove(uuid);
+        }
+        sample(event.getPlayer());
+        tracer.trace(uuid, "Sampled final balance for {}", event.getPlayer().getName());
+    }
+
+    public synchronized String getMetrics() {
+        long count = sampled.get();
+        return "balance sampler: " + samples.size() + " cached, " + count + " samples (avg " +
+                String.format("%.3f", count == 0 ? 0.0 : sampleNanos.get() / 1_000_000.0 / count) + " ms, max " +
+                String.format("%.3f", maxSampleNanos.get() / 1_000_000.0) + " ms), " + budgetExhaustedTicks +
+                " ticks hit the time budget";
+    }
+}
@@ -0,0 +1,196 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects load requests that arrive within a short window and resolves them with a single
+ * multi-key query. Used to absorb join storms after restarts or proxy failovers.
+ */
+public class BatchLoader<T> {
+
+    /**
+     * Loads all rows for the given keys. Keys without a row are simply absent from the result.
+     */
+    public interface BatchQuery<T> {
+        Map<UUID, T> query(List<UUID> uuids) throws SQLException;
+    }
+
+    // Upper bounds of the batch size histogram buckets, the last bucket is open-ended
+    private static final int[] BUCKET_LIMITS = {1, 4, 16, 64, Integer.MAX_VALUE};
+
+    private final Main plugin;
+    private final String name;
+    private final int maxBatchSize;
+    private final long windowMs;
+    private final BatchQuery<T> query;
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+    private Map<UUID, CompletableFuture<T>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushTask;
+
+    // Metrics
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong keyCount = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_LIMITS.length);
+
+    public BatchLoader(Main plugin, String name, int maxBatchSize, long windowMs, BatchQuery<T> query) {
+        this.plugin = plugin;
+        this.name = name;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.windowMs = Math.max(0, windowMs);
+        this.query = query;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "PlayerDataPlugin-" + name + "-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a load for the given player. Concurrent requests for the same player share one future.
+     * The future completes with null if the player has no stored row.
+     */
+    public CompletableFuture<T> load(UUID uuid) {
+        Map<UUID, CompletableFuture<T>> batch = null;
+        CompletableFuture<T> future;
+
+        synchronized (lock) {
+            future = pending.get(uuid);
+            if (future != null) {
+                return future;
+            }
+
+            future = new CompletableFuture<>();
+            pending.put(uuid, future);
+
+            if (pending.size() >= maxBatchSize) {
+                batch = takePending();
+            } else if (flushTask == null) {
+                flushTask = timer.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (batch != null) {
+            dispatch(batch);
+        }
+        return future;
+    }
+
+    private void flush() {
+        Map<UUID, CompletableFuture<T>> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    // Must be called while holding the lock
+    private Map<UUID, CompletableFuture<T>> takePending() {
+        Map<UUID, CompletableFuture<T>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(Map<UUID, CompletableFuture<T>> batch) {
+        if (plugin.isEnabled()) {
+            plugin.getDatabaseExecutor().execute(() -> execute(batch));
+        } else {
+            // Scheduler is unavailable while the plugin is shutting down
+            execute(batch);
+        }
+    }
+
+    private void execute(Map<UUID, CompletableFuture<T>> batch) {
+        recordBatch(batch.size());
+
+        Map<UUID, T> results;
+        try {
+            results = query.query(new ArrayList<>(batch.keySet()));
+        } catch (Exception e) {
+            failedBatches.incrementAndGet();
+            plugin.getLogger().severe("Batched " + name + " load of " + batch.size() + " players failed: " + e.getMessage());
+            batch.values().forEach(future -> future.completeExceptionally(e));
+            return;
+        }
+
+        for (Map.Entry<UUID, CompletableFuture<T>> entry : batch.entrySet()) {
+            entry.getValue().complete(results.get(entry.getKey()));
+        }
+    }
+
+    private void recordBatch(int size) {
+        batchCount.incrementAndGet();
+        keyCount.addAndGet(size);
+        largestBatch.accumulateAndGet(size, Math::max);
+        for (int i = 0; i < BUCKET_LIMITS.length; i++) {
+            if (size <= BUCKET_LIMITS[i]) {
+                buckets.incrementAndGet(i);
+                break;
+            }
+        }
+
+        if (size > 1 && plugin.getConfig().getBoolean("debug", false)) {
+            plugin.getLogger().info("[DEBUG] Batched " + name + " load of " + size + " players into one query");
+        }
+    }
+
+    /**
+     * Resolves everything still pending and stops the timer thread.
+     */
+    public void shutdown() {
+        flush();
+        timer.shutdownNow();
+    }
+
+    public List<String> getMetrics() {
+        long batches = batchCount.get();
+        long keys = keyCount.get();
+        List<String> lines = new ArrayList<>();
+        lines.add(name + " loader: " + keys + " loads in " + batches + " queries" +
+                " (avg batch " + (batches == 0 ? "0.0" : String.format("%.1f", (double) keys / batches)) +
+                ", largest " + largestBatch.get() + ", failed " + failedBatches.get() + ")");
+
+        StringBuilder histogram = new StringBuilder("  batch sizes:");
+        int lower = 1;
+        for (int i = 0; i < BUCKET_LIMITS.length; i++) {
+            String label = BUCKET_LIMITS[i] == Integer.MAX_VALUE ? lower + "+" :
+                    (lower == BUCKET_LIMITS[i] ? String.valueOf(lower) : lower + "-" + BUCKET_LIMITS[i]);
+            histogram.append(' ').append(label).append('=').append(buckets.get(i));
+            lower = BUCKET_LIMITS[i] + 1;
+        }
+        lines.add(histogram.toString());
+        return lines;
+    }
+
+    /**
+     * Builds a "?, ?, ?" placeholder list for an IN clause.
+     */
+    public static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
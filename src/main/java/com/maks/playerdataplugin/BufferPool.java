@@ -0,0 +1,107 @@
+package com.maks.playerdataplugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable growable byte buffers for encoding. A fresh ByteArrayOutputStream starts small and copies
+ * itself every time it doubles on the way to an inventory's size; a pooled buffer has grown once and
+ * is reused by the next encode. Buffers are shared instead of per-thread, since database work may run
+ * on short-lived virtual threads.
+ */
+public final class BufferPool {
+
+    private static final int INITIAL_SIZE = 16 * 1024;
+    // Buffers that grew past this are dropped instead of pooled, so one huge inventory doesn't pin memory
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+    private static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final ConcurrentLinkedQueue<Buffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    // Metrics
+    private static final AtomicLong acquired = new AtomicLong();
+    private static final AtomicLong created = new AtomicLong();
+
+    /**
+     * A ByteArrayOutputStream whose contents can be read without copying them first.
+     */
+    public static final class Buffer extends ByteArrayOutputStream {
+        private Buffer() {
+            super(INITIAL_SIZE);
+        }
+
+        /**
+         * One exact-size copy, for bytes that outlive the buffer.
+         */
+        public byte[] copy() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        /**
+         * A stream over the written bytes, valid until the buffer is released.
+         */
+        public ByteArrayInputStream asInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    public static Buffer acquire() {
+        acquired.incrementAndGet();
+        Buffer buffer = POOL.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+            return buffer;
+        }
+        created.incrementAndGet();
+        return new Buffer();
+    }
+
+    public static void release(Buffer buffer) {
+        if (buffer.array().length > MAX_RETAINED_SIZE) {
+            return;
+        }
+        if (pooled.incrementAndGet() > MAX_POOLED) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffer.reset();
+        POOL.offer(buffer);
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, -1 where the JVM can't tell. The difference around a
+     * piece of work is what it allocated.
+     */
+    public static long currentThreadAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                // Virtual threads report -1 as well
+                return Math.max(-1L, hotspot.getThreadAllocatedBytes(Thread.currentThread().getId()));
+            }
+        }
+        return -1L;
+    }
+
+    public static String getMetrics() {
+        long count = acquired.get();
+        return "buffers: " + count + " acquired, " + created.get() + " allocated (" +
+                String.format("%.1f", count == 0 ? 0.0 : (count - created.get()) * 100.0 / count) + "% reused), " +
+                pooled.get() + " pooled";
+    }
+}
@@ -0,0 +1,79 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.UUID;
+
+/**
+ * The classic single main thread scheduler of Paper and Spigot.
+ */
+public class BukkitTaskScheduler implements TaskScheduler {
+
+    private final Main plugin;
+
+    public BukkitTaskScheduler(Main plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isFolia() {
+        return false;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    @Override
+    public void runGlobalLater(Runnable task, long delayTicks) {
+        Bukkit.getScheduler().runTaskLater(plugin, task, delayTicks);
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        BukkitTask scheduled = Bukkit.getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
+        return scheduled::cancel;
+    }
+
+    @Override
+    public void runForEntity(Entity entity, Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+
+    @Override
+    public void runForEntityLater(Entity entity, Runnable task, long delayTicks) {
+        Bukkit.getScheduler().runTaskLater(plugin, task, delayTicks);
+    }
+
+    @Override
+    public void runForPlayer(UUID uuid, Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+    }
+
+    @Override
+    public void runAsyncLater(Runnable task, long delayTicks) {
+        Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, task, delayTicks);
+    }
+
+    @Override
+    public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        BukkitTask scheduled = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+        return scheduled::cancel;
+    }
+}
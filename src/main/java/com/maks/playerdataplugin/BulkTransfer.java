@@ -0,0 +1,511 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Exports the stored inventories and stats into a compressed, chunked archive and imports it back, for
+ * backups and migrations between backends. Rows are streamed from the store, every chunk is encoded,
+ * validated and compressed (or on import inflated, decoded and validated) on a worker pool, and only a
+ * few chunks are in flight at a time, so memory stays constant regardless of how many players are stored.
+ * <p>
+ * Archive layout: magic and archive format, then chunks of [byte kind][int records][int raw length]
+ * [int crc32 of the raw records][int compressed length][deflated records], ended by a zero kind.
+ * Inventories are stored in the plugin's own player state format, records in the old two-column format
+ * are converted on export.
+ */
+public class BulkTransfer {
+
+    private static final int MAGIC = 0x50444152; // "PDAR"
+    private static final int ARCHIVE_FORMAT = 1;
+    private static final byte CHUNK_END = 0;
+    private static final byte CHUNK_INVENTORIES = 1;
+    private static final byte CHUNK_STATS = 2;
+    // Upper bound for a chunk's lengths, anything larger means the archive is damaged
+    private static final int MAX_CHUNK_BYTES = 256 * 1024 * 1024;
+
+    private final Main plugin;
+    private final int chunkSize;
+    private final int threads;
+    private final long progressIntervalMs;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // One chunk's worth of rows of a single kind
+    private static class Chunk {
+        final byte kind;
+        final List<UUID> uuids = new ArrayList<>();
+        final List<StoredInventory> inventories = new ArrayList<>();
+        final List<String> usernames = new ArrayList<>();
+        final List<PlayerStatsManager.PlayerStats> stats = new ArrayList<>();
+
+        Chunk(byte kind) {
+            this.kind = kind;
+        }
+
+        int size() {
+            return uuids.size();
+        }
+    }
+
+    private static class EncodedChunk {
+        final byte kind;
+        final int records;
+        final int rawLength;
+        final int crc;
+        final byte[] compressed;
+        final int converted;
+        final int corrupt;
+
+        EncodedChunk(byte kind, int records, int rawLength, int crc, byte[] compressed, int converted, int corrupt) {
+            this.kind = kind;
+            this.records = records;
+            this.rawLength = rawLength;
+            this.crc = crc;
+            this.compressed = compressed;
+            this.converted = converted;
+            this.corrupt = corrupt;
+        }
+    }
+
+    private static class DecodedChunk {
+        final byte kind;
+        final Map<UUID, StoredInventory> inventories = new HashMap<>();
+        final Map<UUID, PlayerStatsManager.PlayerStats> stats = new HashMap<>();
+        final Map<UUID, String> usernames = new HashMap<>();
+        int corrupt = 0;
+
+        DecodedChunk(byte kind) {
+            this.kind = kind;
+        }
+    }
+
+    private interface ResultHandler<T> {
+        void accept(T result) throws IOException, SQLException;
+    }
+
+    /**
+     * Runs jobs on the worker pool and hands their results to the handler in submission order, on the
+     * submitting thread. Submitting blocks while the maximum number of jobs is in flight.
+     */
+    private static class Pipeline<T> {
+        private final ExecutorService workers;
+        private final int maxInFlight;
+        private final ResultHandler<T> handler;
+        private final ArrayDeque<Future<T>> inFlight = new ArrayDeque<>();
+
+        Pipeline(ExecutorService workers, int maxInFlight, ResultHandler<T> handler) {
+            this.workers = workers;
+            this.maxInFlight = maxInFlight;
+            this.handler = handler;
+        }
+
+        void submit(Callable<T> job) throws IOException, SQLException {
+            while (inFlight.size() >= maxInFlight) {
+                completeOldest();
+            }
+            inFlight.add(workers.submit(job));
+        }
+
+        void drain() throws IOException, SQLException {
+            while (!inFlight.isEmpty()) {
+                completeOldest();
+            }
+        }
+
+        private void completeOldest() throws IOException, SQLException {
+            try {
+                handler.accept(inFlight.poll().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Transfer interrupted");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+    }
+
+    public BulkTransfer(Main plugin) {
+        this.plugin = plugin;
+        this.chunkSize = Math.max(1, plugin.getConfig().getInt("transfer.chunkSize", 500));
+        int configuredThreads = plugin.getConfig().getInt("transfer.threads", 0);
+        this.threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+        this.progressIntervalMs = Math.max(1L, plugin.getConfig().getLong("transfer.progressSeconds", 5)) * 1000L;
+    }
+
+    public File getDirectory() {
+        return new File(plugin.getDataFolder(), "exports");
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Exports everything stored into the archive file on a background thread, reporting progress to output.
+     * Returns false if a transfer is already running.
+     */
+    public boolean startExport(File file, Consumer<String> output) {
+        return start("export", output, () -> export(file, output));
+    }
+
+    /**
+     * Imports the archive file on a background thread, reporting progress to output.
+     * Returns false if a transfer is already running.
+     */
+    public boolean startImport(File file, Consumer<String> output) {
+        return start("import", output, () -> importArchive(file, output));
+    }
+
+    private interface Job {
+        void run() throws IOException, SQLException;
+    }
+
+    private boolean start(String name, Consumer<String> output, Job job) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                job.run();
+            } catch (IOException | SQLException e) {
+                output.accept("The " + name + " failed: " + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        }, "PlayerDataPlugin-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private ExecutorService createWorkers() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "PlayerDataPlugin-transfer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void export(File file, Consumer<String> output) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        long[] totals = new long[4]; // inventories, stats, converted, corrupt
+        long[] lastReport = {start};
+        File partial = new File(file.getParentFile(), file.getName() + ".part");
+        ExecutorService workers = createWorkers();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(ARCHIVE_FORMAT);
+
+            Pipeline<EncodedChunk> pipeline = new Pipeline<>(workers, threads * 2, encoded -> {
+                out.writeByte(encoded.kind);
+                out.writeInt(encoded.records);
+                out.writeInt(encoded.rawLength);
+                out.writeInt(encoded.crc);
+                out.writeInt(encoded.compressed.length);
+                out.write(encoded.compressed);
+                totals[encoded.kind == CHUNK_INVENTORIES ? 0 : 1] += encoded.records;
+                totals[2] += encoded.converted;
+                totals[3] += encoded.corrupt;
+
+                if (System.currentTimeMillis() - lastReport[0] >= progressIntervalMs) {
+                    lastReport[0] = System.currentTimeMillis();
+                    output.accept("Export: " + totals[0] + " inventories and " + totals[1] + " stats written (" +
+                            rate(totals[0] + totals[1], start) + " rows/s, " + String.format("%.1f", out.size() / 1024.0 / 1024.0) + " MB)");
+                }
+            });
+
+            // The scans run on this thread and only block while the pipeline is full
+            Chunk[] current = {new Chunk(CHUNK_INVENTORIES)};
+            plugin.getDatabaseManager().getInventoryStore().scanAll((uuid, inventory) -> {
+                current[0].uuids.add(uuid);
+                current[0].inventories.add(inventory);
+                if (current[0].size() >= chunkSize) {
+                    submitEncode(pipeline, current[0]);
+                    current[0] = new Chunk(CHUNK_INVENTORIES);
+                }
+            });
+            submitEncode(pipeline, current[0]);
+
+            current[0] = new Chunk(CHUNK_STATS);
+            plugin.getDatabaseManager().getStatsStore().scanAll((uuid, username, stats) -> {
+                current[0].uuids.add(uuid);
+                current[0].usernames.add(username);
+                current[0].stats.add(stats);
+                if (current[0].size() >= chunkSize) {
+                    submitEncode(pipeline, current[0]);
+                    current[0] = new Chunk(CHUNK_STATS);
+                }
+            });
+            submitEncode(pipeline, current[0]);
+            pipeline.drain();
+            out.writeByte(CHUNK_END);
+        } catch (IOException | SQLException e) {
+            Files.deleteIfExists(partial.toPath());
+            throw e;
+        } finally {
+            workers.shutdownNow();
+        }
+
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        output.accept("Exported " + totals[0] + " inventories and " + totals[1] + " stats to " + file.getName() + " (" +
+                String.format("%.1f", file.length() / 1024.0 / 1024.0) + " MB) in " + seconds(start) + " s, " +
+                totals[2] + " converted from the old format, " + totals[3] + " failed validation (exported as stored)");
+    }
+
+    // The handler only sees IOException, so SQL errors from a full pipeline travel wrapped
+    private void submitEncode(Pipeline<EncodedChunk> pipeline, Chunk chunk) throws IOException {
+        if (chunk.size() == 0) {
+            return;
+        }
+        try {
+            pipeline.submit(() -> encode(chunk));
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    // Runs on a worker: validates every inventory by decoding it, then compresses the chunk
+    private static EncodedChunk encode(Chunk chunk) throws IOException {
+        BufferPool.Buffer raw = BufferPool.acquire();
+        BufferPool.Buffer compressed = BufferPool.acquire();
+        try {
+            int converted = 0;
+            int corrupt = 0;
+            DataOutputStream out = new DataOutputStream(raw);
+            for (int i = 0; i < chunk.size(); i++) {
+                UUID uuid = chunk.uuids.get(i);
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+                if (chunk.kind == CHUNK_INVENTORIES) {
+                    StoredInventory inventory = chunk.inventories.get(i);
+                    byte[] state = inventory.getState();
+                    try {
+                        if (inventory.isLegacy()) {
+                            state = inventory.toStateBytes();
+                            converted++;
+                        } else {
+                            SerializationUtils.deserializePlayerState(state);
+                        }
+                    } catch (IllegalStateException e) {
+                        corrupt++;
+                    }
+                    out.writeLong(inventory.getVersion());
+                    out.writeInt(state == null ? -1 : state.length);
+                    if (state != null) {
+                        out.write(state);
+                    }
+                } else {
+                    PlayerStatsManager.PlayerStats stats = chunk.stats.get(i);
+                    LocalInventoryStore.writeString(out, chunk.usernames.get(i));
+                    out.writeInt(stats.getMobsKilled());
+                    out.writeInt(stats.getPlayersKilled());
+                    out.writeInt(stats.getDeaths());
+                    out.writeDouble(stats.getPlaytimeHours());
+                    out.writeDouble(stats.getBalance());
+                }
+            }
+            out.flush();
+
+            CRC32 crc = new CRC32();
+            crc.update(raw.array(), 0, raw.size());
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+                raw.writeTo(deflater);
+            }
+            return new EncodedChunk(chunk.kind, chunk.size(), raw.size(), (int) crc.getValue(), compressed.copy(), converted, corrupt);
+        } finally {
+            BufferPool.release(compressed);
+            BufferPool.release(raw);
+        }
+    }
+
+    private void importArchive(File file, Consumer<String> output) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        long fileLength = Math.max(1L, file.length());
+        long[] totals = new long[5]; // inventories, stats, skipped online, corrupt, skipped leased elsewhere
+        long[] bytesRead = {8};
+        long[] lastReport = {start};
+        HandoffCoordinator handoff = plugin.getHandoffCoordinator();
+        String leaseOwner = handoff.isEnabled() ? handoff.getServerId() : null;
+        ExecutorService workers = createWorkers();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a player data archive");
+            }
+            int format = in.readInt();
+            if (format != ARCHIVE_FORMAT) {
+                throw new IOException("Unsupported archive format " + format);
+            }
+
+            // Writes happen here, in archive order, while the next chunks decode on the workers
+            Pipeline<DecodedChunk> pipeline = new Pipeline<>(workers, threads * 2, decoded -> {
+                totals[3] += decoded.corrupt;
+                totals[2] += skipOnline(decoded.inventories) + skipOnline(decoded.stats);
+                if (decoded.kind == CHUNK_INVENTORIES && !decoded.inventories.isEmpty()) {
+                    Set<UUID> leased = plugin.getDatabaseManager().getInventoryStore().importAll(decoded.inventories, leaseOwner);
+                    decoded.inventories.keySet().removeAll(leased);
+                    totals[4] += leased.size();
+                    for (UUID uuid : decoded.inventories.keySet()) {
+                        // Caches holding the replaced records must not serve them anymore
+                        plugin.getOfflineInventories().invalidate(uuid);
+                        plugin.getPlayerDataListener().getRecentQuitCache().invalidate(uuid);
+                    }
+                    totals[0] += decoded.inventories.size();
+                } else if (decoded.kind == CHUNK_STATS && !decoded.stats.isEmpty()) {
+                    plugin.getDatabaseManager().getStatsStore().importAll(decoded.stats, decoded.usernames);
+                    totals[1] += decoded.stats.size();
+                }
+
+                if (System.currentTimeMillis() - lastReport[0] >= progressIntervalMs) {
+                    lastReport[0] = System.currentTimeMillis();
+                    output.accept("Import: " + Math.min(100, bytesRead[0] * 100 / fileLength) + "%, " + totals[0] + " inventories and " +
+                            totals[1] + " stats written (" + rate(totals[0] + totals[1], start) + " rows/s)");
+                }
+            });
+
+            while (true) {
+                byte kind = in.readByte();
+                if (kind == CHUNK_END) {
+                    break;
+                }
+                if (kind != CHUNK_INVENTORIES && kind != CHUNK_STATS) {
+                    throw new IOException("Unknown chunk kind " + kind + " at byte " + bytesRead[0]);
+                }
+                int records = in.readInt();
+                int rawLength = in.readInt();
+                int crc = in.readInt();
+                int compressedLength = in.readInt();
+                if (records < 0 || rawLength < 0 || rawLength > MAX_CHUNK_BYTES || compressedLength < 0 || compressedLength > MAX_CHUNK_BYTES) {
+                    throw new IOException("Damaged chunk header at byte " + bytesRead[0]);
+                }
+                byte[] compressed = new byte[compressedLength];
+                in.readFully(compressed);
+                bytesRead[0] += 17 + compressedLength;
+                pipeline.submit(() -> decode(kind, records, rawLength, crc, compressed));
+            }
+            pipeline.drain();
+        } catch (EOFException e) {
+            throw new IOException(file.getName() + " ends before its last chunk, the archive is incomplete", e);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        output.accept("Imported " + totals[0] + " inventories and " + totals[1] + " stats from " + file.getName() + " in " +
+                seconds(start) + " s, " + totals[2] + " players online here and " + totals[4] + " players leased by another server skipped, " +
+                totals[3] + " invalid records skipped");
+    }
+
+    // A player online on this server would overwrite the import with their next save
+    private static int skipOnline(Map<UUID, ?> rows) {
+        int skipped = 0;
+        for (UUID uuid : new ArrayList<>(rows.keySet())) {
+            if (Bukkit.getPlayer(uuid) != null) {
+                rows.remove(uuid);
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    // Runs on a worker: inflates and checks the chunk, then validates every inventory by decoding it
+    private static DecodedChunk decode(byte kind, int records, int rawLength, int crc, byte[] compressed) throws IOException {
+        BufferPool.Buffer raw = BufferPool.acquire();
+        try {
+            try (InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+                byte[] block = new byte[8192];
+                int read;
+                while ((read = inflater.read(block)) != -1) {
+                    raw.write(block, 0, read);
+                    if (raw.size() > rawLength) {
+                        throw new IOException("Chunk inflates past its declared length");
+                    }
+                }
+            }
+            CRC32 actual = new CRC32();
+            actual.update(raw.array(), 0, raw.size());
+            if (raw.size() != rawLength || (int) actual.getValue() != crc) {
+                throw new IOException("Chunk checksum mismatch, the archive is damaged");
+            }
+
+            DecodedChunk decoded = new DecodedChunk(kind);
+            DataInputStream in = new DataInputStream(raw.asInputStream());
+            for (int i = 0; i < records; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                if (kind == CHUNK_INVENTORIES) {
+                    long version = in.readLong();
+                    int length = in.readInt();
+                    if (length < 0) {
+                        decoded.corrupt++;
+                        continue;
+                    }
+                    byte[] state = new byte[length];
+                    in.readFully(state);
+                    try {
+                        SerializationUtils.deserializePlayerState(state);
+                        decoded.inventories.put(uuid, new StoredInventory(state, version));
+                    } catch (IllegalStateException e) {
+                        decoded.corrupt++;
+                    }
+                } else {
+                    String username = LocalInventoryStore.readString(in);
+                    decoded.stats.put(uuid, new PlayerStatsManager.PlayerStats(
+                            in.readInt(), in.readInt(), in.readInt(), in.readDouble(), in.readDouble()));
+                    if (username != null) {
+                        decoded.usernames.put(uuid, username);
+                    }
+                }
+            }
+            return decoded;
+        } finally {
+            BufferPool.release(raw);
+        }
+    }
+
+    private static String rate(long rows, long start) {
+        long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+        return String.format("%.0f", rows * 1000.0 / elapsed);
+    }
+
+    private static String seconds(long start) {
+        return String.format("%.1f", (System.currentTimeMillis() - start) / 1000.0);
+    }
+}
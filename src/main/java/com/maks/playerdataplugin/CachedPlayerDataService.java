@@ -0,0 +1,78 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link PlayerDataService} backed by the plugin's caches. Online players are answered from memory,
+ * only offline lookups reach the stats store (on the interactive pool).
+ */
+public class CachedPlayerDataService implements PlayerDataService {
+
+    private final Main plugin;
+
+    public CachedPlayerDataService(Main plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public CompletableFuture<PlayerStatsSnapshot> getStats(UUID uuid) {
+        PlayerStatsManager statsManager = plugin.getPlayerStatsManager();
+        if (statsManager == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (Bukkit.getPlayer(uuid) != null) {
+            return statsManager.awaitPlayerStats(uuid).thenApply(stats -> stats == null ? null : stats.snapshot());
+        }
+
+        // Offline lookups wait for the async startup to open the database
+        return plugin.getPersistenceStartup().whenReady().thenCompose(ready -> {
+            CompletableFuture<PlayerStatsSnapshot> result = new CompletableFuture<>();
+            plugin.getDatabaseExecutor().execute(() -> {
+                try {
+                    PlayerStatsManager.PlayerStats stats = plugin.getDatabaseManager().getStatsStore().load(uuid);
+                    result.complete(stats == null ? null : stats.snapshot());
+                } catch (SQLException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return result;
+        });
+    }
+
+    @Override
+    public PlayerStatsSnapshot getCachedStats(UUID uuid) {
+        PlayerStatsManager statsManager = plugin.getPlayerStatsManager();
+        PlayerStatsManager.PlayerStats stats = statsManager == null ? null : statsManager.getPlayerStats(uuid);
+        return stats == null ? null : stats.snapshot();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> whenDataLoaded(UUID uuid) {
+        return plugin.getPlayerDataListener().whenDataLoaded(uuid);
+    }
+
+    @Override
+    public boolean isDataLoaded(UUID uuid) {
+        return plugin.getPlayerDataListener().isDataLoaded(uuid);
+    }
+
+    @Override
+    public CompletableFuture<UUID> findUuidByUsername(String username) {
+        return plugin.getPersistenceStartup().whenReady().thenCompose(ready -> {
+            CompletableFuture<UUID> result = new CompletableFuture<>();
+            plugin.getDatabaseExecutor().execute(() -> {
+                try {
+                    result.complete(plugin.getDatabaseManager().getStatsStore().findUuidByUsername(username));
+                } catch (SQLException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return result;
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stretches the save cadence while the server or the database is under pressure and shrinks it again when
+ * both have headroom. Every adjustment period it looks at the average tick time, the average latency of
+ * the writes since the last adjustment and the database queue depth, and moves one scale factor applied to
+ * both the inventory and the stats save interval, within configured bounds.
+ */
+public class CadenceController {
+
+    private final Main plugin;
+    private final boolean enabled;
+    private final long baseSaveIntervalTicks;
+    private final long baseStatsIntervalTicks;
+    private final double minScale;
+    private final double maxScale;
+    private final double targetMspt;
+    private final double targetWriteLatencyMs;
+    private final int maxQueueDepth;
+    private final long adjustIntervalTicks;
+    private TaskScheduler.Task task;
+    private final Tracer tracer;
+
+    private volatile double scale = 1.0;
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    // Inputs of the last adjustment, for metrics
+    private double lastMspt = 0.0;
+    private double lastWriteLatencyMs = 0.0;
+    private int lastQueueDepth = 0;
+    private long adjustments = 0;
+
+    public CadenceController(Main plugin, long baseSaveIntervalTicks, long baseStatsIntervalTicks) {
+        this.plugin = plugin;
+        this.baseSaveIntervalTicks = baseSaveIntervalTicks;
+        this.baseStatsIntervalTicks = baseStatsIntervalTicks;
+        this.enabled = plugin.getConfig().getBoolean("adaptiveCadence.enabled", true);
+        this.minScale = Math.max(0.1, plugin.getConfig().getDouble("adaptiveCadence.minScale", 0.5));
+        this.maxScale = Math.max(minScale, plugin.getConfig().getDouble("adaptiveCadence.maxScale", 4.0));
+        this.targetMspt = plugin.getConfig().getDouble("adaptiveCadence.targetMspt", 40.0);
+        this.targetWriteLatencyMs = plugin.getConfig().getDouble("adaptiveCadence.targetWriteLatencyMs", 50.0);
+        this.maxQueueDepth = plugin.getConfig().getInt("adaptiveCadence.maxQueueDepth", 50);
+        this.adjustIntervalTicks = Math.max(1L, plugin.getConfig().getLong("adaptiveCadence.adjustIntervalSeconds", 30)) * 20L;
+        this.tracer = new Tracer(plugin.getTraceBuffer(), "DEBUG");
+    }
+
+    public void start() {
+        if (enabled) {
+            task = plugin.getTaskScheduler().runGlobalTimer(this::adjust, adjustIntervalTicks, adjustIntervalTicks);
+        }
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Records how long a database write took, called from the save tasks.
+     */
+    public void recordWrite(long nanos) {
+        writes.incrementAndGet();
+        writeNanos.addAndGet(nanos);
+    }
+
+    private void adjust() {
+        long count = writes.getAndSet(0);
+        long nanos = writeNanos.getAndSet(0);
+        double mspt = Bukkit.getAverageTickTime();
+        double writeLatencyMs = count == 0 ? 0.0 : nanos / 1_000_000.0 / count;
+        int queueDepth = plugin.getDatabaseManager().getWriteBacklog().size() + plugin.getDatabaseExecutor().getActiveTasks();
+
+        double previous = scale;
+        if (mspt > targetMspt || writeLatencyMs > targetWriteLatencyMs || queueDepth > maxQueueDepth) {
+            // Back off quickly while anything is saturated
+            scale = Math.min(maxScale, scale * 1.5);
+        } else if (mspt < targetMspt * 0.6 && writeLatencyMs < targetWriteLatencyMs * 0.5 && queueDepth <= maxQueueDepth / 4) {
+            // Recover slowly once everything has clear headroom, the gap between the thresholds keeps it from oscillating
+            scale = Math.max(minScale, scale * 0.8);
+        }
+
+        lastMspt = mspt;
+        lastWriteLatencyMs = writeLatencyMs;
+        lastQueueDepth = queueDepth;
+        adjustments++;
+
+        if (scale != previous) {
+            plugin.getSaveScheduler().setIntervalTicks(getSaveIntervalTicks());
+            if (tracer.isEnabled()) {
+                tracer.traceAll(null, "Save cadence scale {} -> {} (mspt {}, write latency {} ms, queue {})",
+                        previous, scale, mspt, writeLatencyMs, queueDepth);
+            }
+        }
+    }
+
+    /**
+     * The current interval between two saves of the same player.
+     */
+    public long getSaveIntervalTicks() {
+        return Math.max(1L, Math.round(baseSaveIntervalTicks * scale));
+    }
+
+    public long getStatsIntervalTicks() {
+        return Math.max(1L, Math.round(baseStatsIntervalTicks * scale));
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public String getMetrics() {
+        return "cadence: " + (enabled ? "adaptive" : "fixed") + ", saves every " + String.format("%.1f", getSaveIntervalTicks() / 20.0) +
+                " s, stats every " + String.format("%.1f", getStatsIntervalTicks() / 20.0) + " s (scale " + String.format("%.2f", scale) +
+                "), last mspt " + String.format("%.1f", lastMspt) + ", write latency " + String.format("%.1f", lastWriteLatencyMs) +
+                " ms, queue " + lastQueueDepth + ", " + adjustments + " adjustments";
+    }
+}
@@ -0,0 +1,115 @@
+package com.maks.playerdataplugin;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Shared circuit breaker around database connection acquisition.
+ * After enough consecutive failures the circuit opens and calls fail fast. Once the backoff has
+ * elapsed a single probe is let through (half-open); its outcome closes or re-opens the circuit.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Thrown instead of touching the database while the circuit is open.
+     */
+    public static class CircuitOpenException extends SQLException {
+        public CircuitOpenException(String message) {
+            super(message, "08000");
+        }
+    }
+
+    private final Main plugin;
+    private final int failureThreshold;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private int trips = 0; // Consecutive openings without a successful probe, drives the backoff
+    private long retryAt = 0;
+    private boolean probeInFlight = false;
+
+    // Metrics
+    private long totalTrips = 0;
+    private long rejectedCalls = 0;
+
+    public CircuitBreaker(Main plugin) {
+        this.plugin = plugin;
+        this.failureThreshold = Math.max(1, plugin.getConfig().getInt("database.circuitBreaker.failureThreshold", 5));
+        this.baseBackoffMs = Math.max(1, plugin.getConfig().getLong("database.circuitBreaker.baseBackoffMs", 1000));
+        this.maxBackoffMs = Math.max(baseBackoffMs, plugin.getConfig().getLong("database.circuitBreaker.maxBackoffMs", 60000));
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the delay is fixed, the other half random,
+     * so retrying threads spread out instead of hitting the database in lockstep.
+     */
+    public static long backoffDelay(int attempt, long baseMs, long maxMs) {
+        long exponential = baseMs << Math.min(Math.max(attempt, 0), 20);
+        long capped = Math.min(maxMs, exponential);
+        long half = capped / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * Fails fast while the circuit is open. When the backoff has elapsed, the calling thread becomes the probe.
+     */
+    public synchronized void acquirePermission() throws CircuitOpenException {
+        if (state == State.CLOSED) {
+            return;
+        }
+
+        if (state == State.OPEN && System.currentTimeMillis() >= retryAt) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return;
+        }
+
+        rejectedCalls++;
+        throw new CircuitOpenException("Database circuit is open, retrying in " +
+                Math.max(0, retryAt - System.currentTimeMillis()) + "ms");
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        if (state != State.CLOSED) {
+            plugin.getLogger().info("Database connection restored, closing circuit breaker.");
+            state = State.CLOSED;
+            trips = 0;
+            probeInFlight = false;
+        }
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            long delay = backoffDelay(trips, baseBackoffMs, maxBackoffMs);
+            trips++;
+            totalTrips++;
+            state = State.OPEN;
+            probeInFlight = false;
+            retryAt = System.currentTimeMillis() + delay;
+            plugin.getLogger().warning("Database unavailable, circuit breaker opened for " + delay + "ms " +
+                    "(consecutive failures: " + consecutiveFailures + ")");
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    public synchronized String getMetrics() {
+        return "circuit breaker: " + state + " (trips " + totalTrips + ", rejected calls " + rejectedCalls + ")";
+    }
+}
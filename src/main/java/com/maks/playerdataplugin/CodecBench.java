@@ -0,0 +1,159 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the indexed format with the older compact and all-serialized ones on real inventories: encoded
+ * size, encode and decode time per player, how many slots took the compact path, whether every slot
+ * decodes back to the same stack, and what reading only armor and hotbar from the index costs.
+ */
+public class CodecBench {
+
+    private static class Result {
+        long bytes;
+        long encodeNanos;
+        long decodeNanos;
+        // Bytes allocated per encode and decode, -1 where the JVM can't measure it
+        long encodeAllocated = -1;
+        long decodeAllocated = -1;
+    }
+
+    /**
+     * Runs on an async thread, the states are snapshots captured on each player's own thread.
+     */
+    public static List<String> run(List<PlayerState> states, int iterations) {
+        List<String> lines = new ArrayList<>();
+        if (states.isEmpty()) {
+            lines.add("No players online to benchmark.");
+            return lines;
+        }
+
+        Result serialized = measure(states, SerializationUtils.OBJECT_ITEMS_FORMAT, iterations);
+        Result compact = measure(states, SerializationUtils.COMPACT_ITEMS_FORMAT, iterations);
+        Result indexed = measure(states, SerializationUtils.PLAYER_STATE_FORMAT, iterations);
+        int players = states.size();
+        long runs = (long) players * iterations;
+
+        lines.add(describe("serialized items", serialized, players, runs));
+        lines.add(describe("compact items", compact, players, runs) + ": " + compare(serialized, compact));
+        lines.add(describe("indexed", indexed, players, runs) + ": " + compare(serialized, indexed));
+        lines.add(measurePartial(states, iterations, indexed.decodeNanos));
+
+        int[] slots = new int[4];
+        int mismatched = 0;
+        for (PlayerState state : states) {
+            PlayerState decoded = SerializationUtils.deserializePlayerState(SerializationUtils.serializePlayerState(state));
+            mismatched += countSlots(state.getContents(), decoded.getContents(), slots);
+            mismatched += countSlots(state.getEnderChest(), decoded.getEnderChest(), slots);
+        }
+        int items = slots[1] + slots[2] + slots[3];
+        lines.add("slots: " + slots[1] + " plain, " + slots[2] + " damaged, " + slots[3] + " serialized (" +
+                String.format("%.1f", items == 0 ? 0.0 : (slots[1] + slots[2]) * 100.0 / items) + "% compact), " +
+                (mismatched == 0 ? "all round-trip exactly" : mismatched + " did NOT round-trip"));
+        return lines;
+    }
+
+    private static Result measure(List<PlayerState> states, int format, int iterations) {
+        Result result = new Result();
+        List<byte[]> encoded = new ArrayList<>();
+        for (PlayerState state : states) {
+            // Also warms up both code paths before timing
+            byte[] data = SerializationUtils.serializePlayerState(state, format);
+            SerializationUtils.deserializePlayerState(data);
+            encoded.add(data);
+            result.bytes += data.length;
+        }
+
+        long runs = (long) states.size() * iterations;
+        long allocated = BufferPool.currentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (PlayerState state : states) {
+                SerializationUtils.serializePlayerState(state, format);
+            }
+        }
+        result.encodeNanos = System.nanoTime() - start;
+        result.encodeAllocated = perRun(allocated, runs);
+
+        allocated = BufferPool.currentThreadAllocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (byte[] data : encoded) {
+                SerializationUtils.deserializePlayerState(data);
+            }
+        }
+        result.decodeNanos = System.nanoTime() - start;
+        result.decodeAllocated = perRun(allocated, runs);
+        return result;
+    }
+
+    private static long perRun(long allocatedBefore, long runs) {
+        long allocatedAfter = BufferPool.currentThreadAllocatedBytes();
+        return allocatedBefore < 0 || allocatedAfter < 0 ? -1 : (allocatedAfter - allocatedBefore) / runs;
+    }
+
+    // Armor and hotbar only, as a preview would read them, against the full decode of the same records
+    private static String measurePartial(List<PlayerState> states, int iterations, long fullDecodeNanos) {
+        List<byte[]> encoded = new ArrayList<>();
+        for (PlayerState state : states) {
+            encoded.add(SerializationUtils.serializePlayerState(state));
+        }
+
+        long decodedSlots = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (byte[] data : encoded) {
+                InventorySnapshot snapshot = InventorySnapshot.open(data);
+                snapshot.getArmor();
+                snapshot.getHotbar();
+                decodedSlots += snapshot.getDecodedSlots();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long runs = (long) states.size() * iterations;
+        return "armor and hotbar from the index: " + String.format("%.1f", nanos / 1000.0 / runs) + " us per player (" +
+                change(fullDecodeNanos, nanos) + " against a full decode), " + decodedSlots / runs + " slots decoded";
+    }
+
+    private static int countSlots(ItemStack[] original, ItemStack[] decoded, int[] slots) {
+        if (original == null) {
+            return decoded == null ? 0 : 1;
+        }
+        int mismatched = 0;
+        for (int i = 0; i < original.length; i++) {
+            ItemStack item = original[i];
+            ItemStack copy = decoded != null && i < decoded.length ? decoded[i] : null;
+            if (item == null || item.getType().isAir()) {
+                if (copy != null && !copy.getType().isAir()) {
+                    mismatched++;
+                }
+                continue;
+            }
+            slots[SerializationUtils.compactEncoding(item)]++;
+            if (copy == null || !item.isSimilar(copy) || item.getAmount() != copy.getAmount()) {
+                mismatched++;
+            }
+        }
+        return mismatched;
+    }
+
+    private static String describe(String name, Result result, int players, long runs) {
+        return name + ": " + String.format("%.1f", result.bytes / 1024.0) + " KB for " + players + " players (avg " +
+                result.bytes / players + " bytes), encode " + String.format("%.1f", result.encodeNanos / 1000.0 / runs) +
+                " us, decode " + String.format("%.1f", result.decodeNanos / 1000.0 / runs) + " us per player" +
+                (result.encodeAllocated < 0 ? "" : " (allocating " + String.format("%.1f", result.encodeAllocated / 1024.0) + " / " +
+                        String.format("%.1f", result.decodeAllocated / 1024.0) + " KB)");
+    }
+
+    private static String compare(Result before, Result after) {
+        return "size " + change(before.bytes, after.bytes) + ", encode " + change(before.encodeNanos, after.encodeNanos) +
+                ", decode " + change(before.decodeNanos, after.decodeNanos);
+    }
+
+    private static String change(long before, long after) {
+        return before == 0 ? "n/a" : String.format("%+.0f%%", (after - before) * 100.0 / before);
+    }
+}
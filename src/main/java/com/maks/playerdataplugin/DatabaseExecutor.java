@@ -0,0 +1,170 @@
+package com.maks.playerdataplugin;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs blocking database work. On Java 21+ every task gets its own virtual thread, so a task waiting on
+ * JDBC or sleeping between retries doesn't hold a platform thread, and a semaphore sized to the connection
+ * pools bounds how many run at once. On older JDKs (or with database.executor: platform) tasks run on the
+ * scheduler's async threads as before. Virtual threads are looked up reflectively, the plugin still
+ * builds for and runs on Java 8.
+ */
+public class DatabaseExecutor {
+
+    private final Main plugin;
+    private final ExecutorService virtualExecutor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    // Metrics
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    // Peak since the last takeWindowPeak, for measurements over a stretch of time such as one bench scenario
+    private final AtomicInteger windowPeakActive = new AtomicInteger();
+    private final AtomicLong permitWaits = new AtomicLong();
+    private final AtomicLong permitWaitNanos = new AtomicLong();
+
+    public DatabaseExecutor(Main plugin, int maxConcurrency) {
+        this.plugin = plugin;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.permits = new Semaphore(this.maxConcurrency);
+
+        String mode = plugin.getConfig().getString("database.executor", "auto");
+        ExecutorService executor = null;
+        if (!"platform".equalsIgnoreCase(mode)) {
+            executor = createVirtualThreadExecutor();
+            if (executor == null && "virtual".equalsIgnoreCase(mode)) {
+                plugin.getLogger().warning("Virtual threads need Java 21 or newer, running database work on platform threads");
+            }
+        }
+        this.virtualExecutor = executor;
+        plugin.getLogger().info("Running database work on " + getMode() + " threads" +
+                (executor != null ? " (at most " + this.maxConcurrency + " at once)" : "") + ".");
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            // Thread.ofVirtual().name("PlayerDataPlugin-db-", 0).factory(), then Executors.newThreadPerTaskExecutor(factory)
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "PlayerDataPlugin-db-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) executor.invoke(null, factory);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    public void execute(Runnable task) {
+        if (virtualExecutor == null) {
+            plugin.getTaskScheduler().runAsync(() -> run(task));
+            return;
+        }
+
+        virtualExecutor.execute(() -> {
+            // Blocks only this virtual thread, so waiting here is cheap
+            if (!permits.tryAcquire()) {
+                long start = System.nanoTime();
+                permits.acquireUninterruptibly();
+                permitWaits.incrementAndGet();
+                permitWaitNanos.addAndGet(System.nanoTime() - start);
+            }
+            try {
+                run(task);
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    private void run(Runnable task) {
+        int running = active.incrementAndGet();
+        peakActive.accumulateAndGet(running, Math::max);
+        windowPeakActive.accumulateAndGet(running, Math::max);
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            plugin.getLogger().severe("Unexpected error in a database task: " + e);
+            e.printStackTrace();
+        } finally {
+            active.decrementAndGet();
+            executed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits for database work still running, called on shutdown before the connections are closed.
+     */
+    public void shutdown() {
+        if (virtualExecutor == null) {
+            return;
+        }
+        virtualExecutor.shutdown();
+        try {
+            if (!virtualExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Database tasks still running after 10 seconds, continuing shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtualExecutor != null;
+    }
+
+    public String getMode() {
+        return virtualExecutor != null ? "virtual" : "platform";
+    }
+
+    public int getActiveTasks() {
+        return active.get();
+    }
+
+    public long getExecutedTasks() {
+        return executed.get();
+    }
+
+    /**
+     * Most tasks running at once since the previous call, then starts a new window.
+     */
+    public int takeWindowPeak() {
+        return windowPeakActive.getAndSet(active.get());
+    }
+
+    public long getPermitWaits() {
+        return permitWaits.get();
+    }
+
+    public long getPermitWaitNanos() {
+        return permitWaitNanos.get();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public static int getPlatformThreadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    public String getMetrics() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long waits = permitWaits.get();
+        return "db executor: " + getMode() + " threads, " + executed.get() + " tasks, " + active.get() + " active (peak " +
+                peakActive.get() + (virtualExecutor != null ? " of " + maxConcurrency + ", " + waits + " waited for a permit, avg " +
+                String.format("%.2f", waits == 0 ? 0.0 : permitWaitNanos.get() / 1_000_000.0 / waits) + " ms" : "") +
+                "), " + threads.getThreadCount() + " platform threads (peak " + threads.getPeakThreadCount() + ")";
+    }
+}
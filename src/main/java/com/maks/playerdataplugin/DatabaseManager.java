@@ -2,94 +2,389 @@ package com.maks.playerdataplugin;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DatabaseManager {
 
     private final Main plugin;
-    private HikariDataSource dataSource;
+    private Pool interactivePool;
+    private Pool bulkPool;
+    private final CircuitBreaker circuitBreaker;
+    private final WriteBacklog writeBacklog;
+    private InventoryStore inventoryStore;
+    private StatsStore statsStore;
+    private HistoryStore historyStore;
+    private LogStructuredStore localStore;
+    private final boolean localBackend;
+    private final FaultInjector faultInjector;
+    // Startup connects on its own thread while onDisable may disconnect, the lock keeps the two apart
+    private final Object lifecycleLock = new Object();
+    private boolean closed = false;
+    private static final int INTERACTIVE_POOL_SIZE = 4;
+    private static final int BULK_POOL_SIZE = 8;
+
+    /**
+     * Which connection pool serves a query. Interactive work (join loads, lookups, the join-time lease)
+     * keeps its own connections, so it never queues behind bulk saves.
+     */
+    public enum Workload {
+        INTERACTIVE,
+        BULK
+    }
+
+    // A pool with its own wait time metrics
+    private static class Pool {
+        final String name;
+        final HikariDataSource dataSource;
+        // The pool itself, or the pool behind a fault injector
+        final DataSource source;
+        final AtomicLong acquisitions = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        Pool(String name, HikariDataSource dataSource, FaultInjector faultInjector) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.source = faultInjector != null ? new FaultInjectingDataSource(dataSource, faultInjector) : dataSource;
+        }
+
+        Connection acquire() throws SQLException {
+            long start = System.nanoTime();
+            try {
+                Connection connection = source.getConnection();
+                long waited = System.nanoTime() - start;
+                acquisitions.incrementAndGet();
+                waitNanos.addAndGet(waited);
+                maxWaitNanos.accumulateAndGet(waited, Math::max);
+                return connection;
+            } catch (SQLException e) {
+                failures.incrementAndGet();
+                throw e;
+            }
+        }
+
+        String getMetrics() {
+            HikariPoolMXBean bean = dataSource.getHikariPoolMXBean();
+            long count = acquisitions.get();
+            return name + " pool: " + (bean == null ? "starting" : bean.getActiveConnections() + " active, " +
+                    bean.getIdleConnections() + " idle, " + bean.getThreadsAwaitingConnection() + " waiting, " +
+                    bean.getTotalConnections() + "/" + dataSource.getMaximumPoolSize() + " open") +
+                    ", wait avg " + String.format("%.2f", count == 0 ? 0.0 : waitNanos.get() / 1_000_000.0 / count) +
+                    " ms, max " + String.format("%.2f", maxWaitNanos.get() / 1_000_000.0) + " ms, " + failures.get() + " failed";
+        }
+    }
 
     public DatabaseManager(Main plugin) {
         this.plugin = plugin;
+        this.circuitBreaker = new CircuitBreaker(plugin);
+        this.writeBacklog = new WriteBacklog(plugin);
+        this.localBackend = "local".equalsIgnoreCase(plugin.getConfig().getString("storage.backend", "mysql"));
+        // Faults are injected between the plugin and the pools, the local store has no JDBC layer to wrap
+        this.faultInjector = plugin.getConfig().getBoolean("faults.enabled", false) && !localBackend ? new FaultInjector(plugin) : null;
     }
 
-    public void connect() {
+    /**
+     * Opens the connection pools, or the local store. Blocks until the first connection is made, so it runs
+     * in the async startup stage. Calling it again after a failure only opens what is still missing.
+     * Fails once disconnect has run, so a startup outliving the plugin opens nothing.
+     */
+    public void connect() throws SQLException, IOException {
+        synchronized (lifecycleLock) {
+            if (closed) {
+                throw new SQLException("The database manager has been shut down");
+            }
+            open();
+        }
+    }
+
+    private void open() throws SQLException, IOException {
+        if (localBackend) {
+            if (localStore == null) {
+                openLocalStore();
+            }
+            return;
+        }
+
         String host = plugin.getConfig().getString("database.host");
         String port = plugin.getConfig().getString("database.port");
         String database = plugin.getConfig().getString("database.name");
         String user = plugin.getConfig().getString("database.user");
         String password = plugin.getConfig().getString("database.password");
 
+        // An explicit URL points the plugin at another database speaking MySQL's dialect, such as an embedded one for testing
+        String jdbcUrl = plugin.getConfig().getString("database.jdbcUrl", "");
+        if (jdbcUrl.isEmpty()) {
+            jdbcUrl = "jdbc:mysql://" + host + ":" + port + "/" + database + "?useSSL=false&allowPublicKeyRetrieval=true";
+        }
+
+        inventoryStore = new MySqlInventoryStore(this);
+        statsStore = new MySqlStatsStore(this);
+        historyStore = new MySqlHistoryStore(this);
+
+        if (interactivePool == null) {
+            interactivePool = new Pool("interactive", createDataSource(jdbcUrl, user, password, "interactive", INTERACTIVE_POOL_SIZE, 2, 3000), faultInjector);
+        }
+        if (bulkPool == null) {
+            bulkPool = new Pool("bulk", createDataSource(jdbcUrl, user, password, "bulk", BULK_POOL_SIZE, 2, 10000), faultInjector);
+        }
+        plugin.getLogger().info("Connected to the database using HikariCP.");
+    }
+
+    /**
+     * Borrows a connection from every pool once, so the first joins don't pay for opening them.
+     */
+    public void warmUp() throws SQLException {
+        Pool[] pools;
+        synchronized (lifecycleLock) {
+            if (closed) {
+                throw new SQLException("The database manager has been shut down");
+            }
+            pools = new Pool[]{interactivePool, bulkPool};
+        }
+        // Not under the lock, a pool closed meanwhile just fails to hand out the connection
+        for (Pool pool : pools) {
+            if (pool != null) {
+                try (Connection ignored = pool.dataSource.getConnection()) {
+                    // Only opening it matters
+                }
+            }
+        }
+    }
+
+    // Each workload gets its own pool, sized and timed out from database.pools.<name>
+    private HikariDataSource createDataSource(String jdbcUrl, String user, String password, String name,
+                                              int defaultMaxSize, int defaultMinIdle, long defaultConnectionTimeoutMs) {
+        String path = "database.pools." + name + ".";
         HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database + "?useSSL=false&allowPublicKeyRetrieval=true");
+        config.setPoolName("PlayerDataPlugin-" + name);
+        config.setJdbcUrl(jdbcUrl);
         config.setUsername(user);
         config.setPassword(password);
+        String driverClassName = plugin.getConfig().getString("database.driverClassName", "");
+        if (!driverClassName.isEmpty()) {
+            config.setDriverClassName(driverClassName);
+        }
 
         // HikariCP settings
-        config.setMaximumPoolSize(10);
-        config.setMinimumIdle(5);
-        config.setIdleTimeout(300000); // 5 minutes
-        config.setConnectionTimeout(10000); // 10 seconds
-        config.setMaxLifetime(1800000); // 30 minutes
+        config.setMaximumPoolSize(configuredPoolSize(name, defaultMaxSize));
+        config.setMinimumIdle(Math.max(0, plugin.getConfig().getInt(path + "minimumIdle", defaultMinIdle)));
+        config.setIdleTimeout(plugin.getConfig().getLong(path + "idleTimeoutMs", 300000)); // 5 minutes
+        config.setConnectionTimeout(plugin.getConfig().getLong(path + "connectionTimeoutMs", defaultConnectionTimeoutMs));
+        config.setMaxLifetime(plugin.getConfig().getLong(path + "maxLifetimeMs", 1800000)); // 30 minutes
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        return new HikariDataSource(config);
+    }
+    private int configuredPoolSize(String name, int defaultMaxSize) {
+        return Math.max(1, plugin.getConfig().getInt("database.pools." + name + ".maximumPoolSize", defaultMaxSize));
+    }
 
+    // Single-server storage without an external database
+    private void openLocalStore() throws IOException {
+        File file = new File(plugin.getDataFolder(), plugin.getConfig().getString("storage.local.file", "playerdata.log"));
+
+        localStore = new LogStructuredStore(file, plugin.getLogger());
+        localStore.startMaintenance(
+                plugin.getConfig().getLong("storage.local.syncIntervalMs", 1000),
+                plugin.getConfig().getDouble("storage.local.compactionGarbageRatio", 0.5),
+                plugin.getConfig().getLong("storage.local.compactionMinBytes", 4 * 1024 * 1024));
+        inventoryStore = new LocalInventoryStore(localStore);
+        statsStore = new LocalStatsStore(localStore);
+        historyStore = new LocalHistoryStore(localStore);
+        plugin.getLogger().info("Using the local store at " + file.getPath() + ".");
+    }
+
+    /**
+     * Closes the pools or the local store. Waits for a connect still running, and makes later ones fail.
+     */
+    public void disconnect() {
+        synchronized (lifecycleLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            boolean closedPool = false;
+            for (Pool pool : new Pool[]{interactivePool, bulkPool}) {
+                if (pool != null && !pool.dataSource.isClosed()) {
+                    pool.dataSource.close();
+                    closedPool = true;
+                }
+            }
+            if (closedPool) {
+                plugin.getLogger().info("Disconnected from the database.");
+            }
+
+            if (localStore != null) {
+                try {
+                    localStore.close();
+                    plugin.getLogger().info("Closed the local store.");
+                } catch (IOException e) {
+                    plugin.getLogger().severe("Failed to close the local store: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the tables and adds columns missing from older versions.
+     */
+    public void createTables() throws SQLException {
+        inventoryStore.initialize();
+        plugin.getLogger().info("Player data table created/verified.");
+
+        statsStore.initialize();
+        plugin.getLogger().info("Player stats table created/verified.");
+
+        historyStore.initialize();
+        plugin.getLogger().info("Player history tables created/verified.");
+    }
+
+    // Adds a column to tables created by older versions of the plugin
+    void ensureColumn(Connection connection, String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return;
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition)) {
+            statement.execute();
+            plugin.getLogger().info("Added column " + column + " to " + table + ".");
+        }
+    }
+
+    /**
+     * Connection from the bulk pool, for saves and background work.
+     */
+    public Connection getConnection() throws SQLException {
+        return getConnection(Workload.BULK);
+    }
+
+    public Connection getConnection(Workload workload) throws SQLException {
+        Pool pool = workload == Workload.INTERACTIVE ? interactivePool : bulkPool;
+        // Both pools reach the same database, so they share one circuit breaker
+        circuitBreaker.acquirePermission();
         try {
-            dataSource = new HikariDataSource(config);
-            createTables();
-            plugin.getLogger().info("Connected to the database using HikariCP.");
+            if (pool == null) {
+                throw new SQLException(localBackend ? "The local store backend has no database connections" : "Database is not connected", "08003");
+            }
+            Connection connection = pool.acquire();
+            circuitBreaker.recordSuccess();
+            return connection;
         } catch (SQLException e) {
-            e.printStackTrace();
-            plugin.getLogger().severe("Failed to connect to the database.");
+            circuitBreaker.recordFailure();
+            throw e;
         }
     }
 
-    public void disconnect() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
-            plugin.getLogger().info("Disconnected from the database.");
-        }
-    }
-
-    private void createTables() throws SQLException {
-        // Create player_data_info table
-        String playerDataSql = "CREATE TABLE IF NOT EXISTS player_data_info (" +
-                "uuid VARCHAR(36) PRIMARY KEY," +
-                "inventory TEXT," +
-                "armor TEXT" +
-                ");";
-
-        // Create player_stats table
-        String playerStatsSql = "CREATE TABLE IF NOT EXISTS player_stats (" +
-                "uuid VARCHAR(36) NOT NULL PRIMARY KEY," +
-                "username VARCHAR(16)," +
-                "mobs_killed INT DEFAULT 0," +
-                "players_killed INT DEFAULT 0," +
-                "deaths INT DEFAULT 0," +
-                "playtime_hours DOUBLE DEFAULT 0.0," +
-                "balance DOUBLE DEFAULT 0.0," +
-                "last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
-                ");";
-
-        try (Connection connection = getConnection()) {
-            // Create player_data_info table
-            try (PreparedStatement statement = connection.prepareStatement(playerDataSql)) {
-                statement.execute();
-                plugin.getLogger().info("Player data table created/verified.");
+    /**
+     * Checks whether a connection can be obtained. While the circuit is open this fails fast
+     * unless the backoff has elapsed, in which case this call becomes the half-open probe.
+     */
+    public boolean probe() {
+        if (localBackend) {
+            return localStore != null;
+        }
+        try (Connection ignored = getConnection(Workload.INTERACTIVE)) {
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs a write now, or queues it locally while the database is unavailable (degraded mode).
+     * Returns false if the write was queued instead of executed.
+     */
+    public boolean executeOrQueue(String key, WriteBacklog.PendingWrite write) throws SQLException {
+        if (circuitBreaker.isOpen() || writeBacklog.isActive()) {
+            writeBacklog.enqueue(key, write);
+            return false;
+        }
+
+        try {
+            long start = System.nanoTime();
+            write.execute();
+            // Write latency feeds the adaptive save cadence
+            CadenceController cadence = plugin.getCadenceController();
+            if (cadence != null) {
+                cadence.recordWrite(System.nanoTime() - start);
             }
+            return true;
+        } catch (CircuitBreaker.CircuitOpenException e) {
+            writeBacklog.enqueue(key, write);
+            return false;
+        }
+    }
 
-            // Create player_stats table
-            try (PreparedStatement statement = connection.prepareStatement(playerStatsSql)) {
-                statement.execute();
-                plugin.getLogger().info("Player stats table created/verified.");
+    /**
+     * How many connections both pools can hand out at once, the local store gets one per core.
+     * Read from the configuration, so it is known before the pools are opened.
+     */
+    public int getMaxConnections() {
+        if (localBackend) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return configuredPoolSize("interactive", INTERACTIVE_POOL_SIZE) + configuredPoolSize("bulk", BULK_POOL_SIZE);
+    }
+
+    public List<String> getPoolMetrics() {
+        List<String> lines = new ArrayList<>();
+        for (Pool pool : new Pool[]{interactivePool, bulkPool}) {
+            if (pool != null) {
+                lines.add(pool.getMetrics());
             }
         }
+        return lines;
     }
 
-    public Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+    /**
+     * The fault injector in front of the pools, null unless faults.enabled is set.
+     */
+    public FaultInjector getFaultInjector() {
+        return faultInjector;
+    }
+
+    public InventoryStore getInventoryStore() {
+        return inventoryStore;
+    }
+
+    public StatsStore getStatsStore() {
+        return statsStore;
+    }
+
+    public HistoryStore getHistoryStore() {
+        return historyStore;
+    }
+
+    public boolean isLocalBackend() {
+        return localBackend;
+    }
+
+    public LogStructuredStore getLocalStore() {
+        return localStore;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public WriteBacklog getWriteBacklog() {
+        return writeBacklog;
     }
 }
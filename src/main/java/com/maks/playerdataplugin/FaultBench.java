@@ -0,0 +1,283 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs synthetic saves through the same path as real players (database executor, circuit breaker, degraded
+ * mode backlog) under each fault scenario, and reports throughput, latency percentiles and lost writes.
+ * Inventory saves follow savePlayerData's retry policy, stats saves are the single REPLACE of savePlayerStats.
+ * Bench players have fixed UUIDs and save validly encoded inventories; their rows are deleted once each scenario
+ * is verified. The injected faults apply to every connection, so the bench only runs while nobody is online.
+ */
+public class FaultBench {
+
+    private static final long DRAIN_TIMEOUT_MS = 30000;
+    private static final Material[] BENCH_MATERIALS = {Material.STONE, Material.DIRT, Material.COBBLESTONE, Material.OAK_LOG, Material.IRON_INGOT, Material.COAL};
+    private static final int BENCH_SLOTS = 41;
+
+    private final Main plugin;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // What one bench player sent, in order, and how far it was acknowledged
+    private static class BenchPlayer {
+        final UUID uuid;
+        final List<String> hashes = new ArrayList<>();
+        int lastAckedHash = -1;
+        int lastAckedKills = 0;
+        int attemptedKills = 0;
+
+        BenchPlayer(int index) {
+            this.uuid = UUID.nameUUIDFromBytes(("playerdata-bench:" + index).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public FaultBench(Main plugin) {
+        this.plugin = plugin;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Runs the scenarios one after another on a background thread, reporting each result line to output.
+     * Returns false if a bench is already running.
+     */
+    public boolean start(List<FaultInjector.Profile> scenarios, int players, int operations, Consumer<String> output) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Thread thread = new Thread(() -> {
+            FaultInjector injector = plugin.getDatabaseManager().getFaultInjector();
+            FaultInjector.Profile previous = injector.getProfile();
+            try {
+                for (FaultInjector.Profile scenario : scenarios) {
+                    // Real players' saves would get the injected faults too
+                    if (!Bukkit.getOnlinePlayers().isEmpty()) {
+                        output.accept("Bench stopped, a player joined");
+                        break;
+                    }
+                    output.accept(run(scenario, players, operations));
+                }
+            } catch (InterruptedException e) {
+                output.accept("Bench interrupted");
+            } finally {
+                injector.setProfile(previous);
+                running.set(false);
+            }
+        }, "PlayerDataPlugin-bench");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private String run(FaultInjector.Profile scenario, int playerCount, int operations) throws InterruptedException {
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+        int maxRetryAttempts = plugin.getConfig().getInt("database.maxRetryAttempts", 3);
+        long retryDelayMs = plugin.getConfig().getLong("database.retryDelayMs", 1000);
+        long maxRetryDelayMs = Math.max(retryDelayMs, plugin.getConfig().getLong("database.maxRetryDelayMs", 10000));
+
+        List<BenchPlayer> players = new ArrayList<>();
+        for (int i = 0; i < playerCount; i++) {
+            players.add(new BenchPlayer(i));
+        }
+        int opsPerPlayer = Math.max(1, operations / playerCount);
+        long[] latencies = new long[opsPerPlayer * playerCount];
+        AtomicInteger latencyIndex = new AtomicInteger();
+        AtomicLong retries = new AtomicLong();
+        AtomicLong queued = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        AtomicLong statsFailed = new AtomicLong();
+
+        databaseManager.getFaultInjector().setProfile(scenario);
+        CountDownLatch done = new CountDownLatch(players.size());
+        DatabaseExecutor executor = plugin.getDatabaseExecutor();
+        executor.takeWindowPeak();
+        long permitWaitsBefore = executor.getPermitWaits();
+        long permitWaitNanosBefore = executor.getPermitWaitNanos();
+        int peakThreads = DatabaseExecutor.getPlatformThreadCount();
+        long start = System.nanoTime();
+
+        // Each bench player saves sequentially like a real one, the players run concurrently on the database executor
+        for (BenchPlayer player : players) {
+            plugin.getDatabaseExecutor().execute(() -> {
+                try {
+                    for (int op = 0; op < opsPerPlayer; op++) {
+                        StoredInventory data = new StoredInventory(SerializationUtils.serializePlayerState(benchState()), 0L);
+                        synchronized (player) {
+                            player.hashes.add(data.getStateHash());
+                        }
+                        long opStart = System.nanoTime();
+
+                        int attempts = 0;
+                        boolean success = false;
+                        while (attempts < maxRetryAttempts && !success) {
+                            try {
+                                boolean written = databaseManager.executeOrQueue("inventory:" + player.uuid,
+                                        () -> databaseManager.getInventoryStore().save(player.uuid, data, null, 0, false));
+                                success = true;
+                                if (!written) {
+                                    queued.incrementAndGet();
+                                }
+                            } catch (Exception e) {
+                                attempts++;
+                                if (attempts < maxRetryAttempts) {
+                                    retries.incrementAndGet();
+                                    Thread.sleep(CircuitBreaker.backoffDelay(attempts - 1, retryDelayMs, maxRetryDelayMs));
+                                }
+                            }
+                        }
+
+                        PlayerStatsManager.PlayerStats stats = new PlayerStatsManager.PlayerStats(op + 1, 0, 0, 0.0, 0.0);
+                        boolean statsAcked = false;
+                        try {
+                            databaseManager.executeOrQueue("stats:" + player.uuid,
+                                    () -> databaseManager.getStatsStore().save(player.uuid, "bench", stats));
+                            statsAcked = true;
+                        } catch (SQLException e) {
+                            statsFailed.incrementAndGet();
+                        }
+
+                        latencies[latencyIndex.getAndIncrement()] = System.nanoTime() - opStart;
+                        synchronized (player) {
+                            if (success) {
+                                player.lastAckedHash = player.hashes.size() - 1;
+                            } else {
+                                // Left for the playerDataCache fallback in the real save path
+                                failed.incrementAndGet();
+                            }
+                            player.attemptedKills = op + 1;
+                            if (statsAcked) {
+                                player.lastAckedKills = op + 1;
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        // Sampled while the scenario runs, the JVM's own peak thread count covers the server's whole uptime
+        while (!done.await(100, TimeUnit.MILLISECONDS)) {
+            peakThreads = Math.max(peakThreads, DatabaseExecutor.getPlatformThreadCount());
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        int peakActive = executor.takeWindowPeak();
+        long permitWaits = executor.getPermitWaits() - permitWaitsBefore;
+        long permitWaitNanos = executor.getPermitWaitNanos() - permitWaitNanosBefore;
+        String executorFigures = executor.getMode() + " executor peak " + peakActive + " active" +
+                (executor.isVirtual() ? " of " + executor.getMaxConcurrency() + ", " + permitWaits + " permit waits (avg " +
+                        String.format("%.2f", permitWaits == 0 ? 0.0 : permitWaitNanos / 1_000_000.0 / permitWaits) + " ms)" : "") +
+                ", peak " + peakThreads + " platform threads";
+
+        // Verify without faults, after writes queued in degraded mode had their chance to drain
+        databaseManager.getFaultInjector().setProfile(FaultInjector.Profile.NONE);
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (databaseManager.getWriteBacklog().size() > 0 && System.currentTimeMillis() < drainDeadline) {
+            databaseManager.probe();
+            Thread.sleep(250);
+        }
+        String verification = verify(players);
+        String cleanup = cleanup(players);
+
+        int count = latencyIndex.get();
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return scenario.getName() + ": " + count + " saves in " + String.format("%.1f", seconds) + " s (" +
+                String.format("%.1f", seconds == 0 ? 0.0 : count / seconds) + " saves/s), latency p50 " + percentile(sorted, 0.50) +
+                " p95 " + percentile(sorted, 0.95) + " p99 " + percentile(sorted, 0.99) + " max " + percentile(sorted, 1.0) +
+                " ms, " + retries.get() + " retries, " + queued.get() + " queued, " + failed.get() + " gave up, " +
+                statsFailed.get() + " stats failed, " + executorFigures + ", " + verification + ", " + cleanup;
+    }
+
+    // A random, validly encoded inventory, so bench rows look like real ones to anything reading them
+    private static PlayerState benchState() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ItemStack[] contents = new ItemStack[BENCH_SLOTS];
+        for (int slot = 0; slot < contents.length; slot++) {
+            if (random.nextInt(3) > 0) {
+                contents[slot] = new ItemStack(BENCH_MATERIALS[random.nextInt(BENCH_MATERIALS.length)], 1 + random.nextInt(64));
+            }
+        }
+        return PlayerState.inventoryOnly(contents, null);
+    }
+
+    // Bench rows would otherwise stay in the tables, visible to exports and integrity scans
+    private String cleanup(List<BenchPlayer> players) {
+        List<UUID> uuids = new ArrayList<>();
+        for (BenchPlayer player : players) {
+            uuids.add(player.uuid);
+        }
+        try {
+            plugin.getDatabaseManager().getInventoryStore().deleteAll(uuids);
+            plugin.getDatabaseManager().getStatsStore().deleteAll(uuids);
+            return "bench rows deleted";
+        } catch (SQLException e) {
+            return "deleting bench rows failed: " + e.getMessage();
+        }
+    }
+
+    // A write is lost if the stored row is older than the last acknowledged one
+    private String verify(List<BenchPlayer> players) {
+        List<UUID> uuids = new ArrayList<>();
+        for (BenchPlayer player : players) {
+            uuids.add(player.uuid);
+        }
+
+        try {
+            Map<UUID, StoredInventory> inventories = plugin.getDatabaseManager().getInventoryStore().loadAll(uuids);
+            Map<UUID, PlayerStatsManager.PlayerStats> stats = plugin.getDatabaseManager().getStatsStore().loadAll(uuids);
+            int lostInventories = 0;
+            int lostStats = 0;
+            for (BenchPlayer player : players) {
+                synchronized (player) {
+                    if (player.lastAckedHash >= 0) {
+                        // Unacknowledged writes after the last acknowledged one may still have landed
+                        StoredInventory stored = inventories.get(player.uuid);
+                        int storedIndex = stored == null ? -1 : player.hashes.lastIndexOf(stored.getStateHash());
+                        if (storedIndex < player.lastAckedHash) {
+                            lostInventories++;
+                        }
+                    }
+                    PlayerStatsManager.PlayerStats storedStats = stats.get(player.uuid);
+                    int storedKills = storedStats == null ? 0 : storedStats.getMobsKilled();
+                    if (storedKills < player.lastAckedKills || storedKills > player.attemptedKills) {
+                        lostStats++;
+                    }
+                }
+            }
+            return "lost " + lostInventories + " inventories and " + lostStats + " stats of " + players.size() + " players" +
+                    (plugin.getDatabaseManager().getWriteBacklog().size() > 0 ? " (backlog not drained)" : "");
+        } catch (SQLException e) {
+            return "verification failed: " + e.getMessage();
+        }
+    }
+
+    private static String percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return "0.0";
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return String.format("%.1f", sorted[Math.max(0, index)] / 1_000_000.0);
+    }
+}
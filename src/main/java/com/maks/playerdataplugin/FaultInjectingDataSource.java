@@ -0,0 +1,156 @@
+package com.maks.playerdataplugin;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+/**
+ * Wraps a pool's DataSource and injects the faults of the {@link FaultInjector}'s current profile:
+ * connection timeouts when a connection is taken, latency and lock-wait timeouts when a statement runs,
+ * and dropped connections after a write or commit. Connections and statements are wrapped with dynamic
+ * proxies, so every JDBC call not listed here goes straight to the real driver.
+ */
+public class FaultInjectingDataSource implements DataSource {
+
+    private final DataSource delegate;
+    private final FaultInjector injector;
+
+    public FaultInjectingDataSource(DataSource delegate, FaultInjector injector) {
+        this.delegate = delegate;
+        this.injector = injector;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        injector.beforeConnect();
+        return wrap(delegate.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        injector.beforeConnect();
+        return wrap(delegate.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+        private Connection proxy;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            this.proxy = (Connection) proxy;
+            String name = method.getName();
+            if (name.equals("commit")) {
+                injector.beforeExecute(true);
+                call(connection, method, args);
+                if (injector.failAfterExecute()) {
+                    // Committed, but the reply never arrives
+                    throw FaultInjector.linkFailure();
+                }
+                return null;
+            }
+
+            Object result = call(connection, method, args);
+            if (result instanceof Statement && (name.startsWith("prepare") || name.equals("createStatement"))) {
+                // Keep the most specific statement interface the caller asked for
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                        new Class<?>[]{method.getReturnType()}, new StatementHandler((Statement) result, this));
+            }
+            return result;
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final ConnectionHandler connection;
+
+        StatementHandler(Statement statement, ConnectionHandler connection) {
+            this.statement = statement;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getConnection")) {
+                return connection.proxy;
+            }
+            if (!name.startsWith("execute")) {
+                return call(statement, method, args);
+            }
+
+            boolean write = !name.equals("executeQuery");
+            injector.beforeExecute(write);
+            Object result = call(statement, method, args);
+            if (write && injector.failAfterExecute()) {
+                if (!connection.connection.getAutoCommit()) {
+                    // The server drops the transaction along with the connection
+                    connection.connection.rollback();
+                }
+                throw FaultInjector.linkFailure();
+            }
+            return result;
+        }
+    }
+
+    // Unwraps reflection so callers see the driver's own SQLException
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        return type.isInstance(this) ? type.cast(this) : delegate.unwrap(type);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) throws SQLException {
+        return type.isInstance(this) || delegate.isWrapperFor(type);
+    }
+}
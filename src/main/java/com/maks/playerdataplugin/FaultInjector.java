@@ -0,0 +1,199 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which faults a {@link FaultInjectingDataSource} injects. The active profile can be swapped at
+ * runtime, so the bench can run its scenarios one after another against the same pools. Only installed
+ * when faults.enabled is set, meant for test servers and never for production data.
+ */
+public class FaultInjector {
+
+    /**
+     * One fault scenario, read from faults.scenarios.&lt;name&gt;.
+     */
+    public static class Profile {
+        public static final Profile NONE = new Profile("none", "none", 0, 1.0, 0, 0.0, 0, 0.0, 0.0, 0);
+
+        final String name;
+        // none, fixed, uniform (0 to latencyMs), exponential (mean latencyMs) or lognormal (median latencyMs)
+        final String distribution;
+        final long latencyMs;
+        final double sigma;
+        final long maxLatencyMs;
+        final double connectionTimeoutRate;
+        final long connectionTimeoutMs;
+        final double midTransactionFailureRate;
+        final double lockWaitRate;
+        final long lockWaitMs;
+
+        Profile(String name, String distribution, long latencyMs, double sigma, long maxLatencyMs, double connectionTimeoutRate,
+                long connectionTimeoutMs, double midTransactionFailureRate, double lockWaitRate, long lockWaitMs) {
+            this.name = name;
+            this.distribution = distribution;
+            this.latencyMs = latencyMs;
+            this.sigma = sigma;
+            this.maxLatencyMs = maxLatencyMs;
+            this.connectionTimeoutRate = connectionTimeoutRate;
+            this.connectionTimeoutMs = connectionTimeoutMs;
+            this.midTransactionFailureRate = midTransactionFailureRate;
+            this.lockWaitRate = lockWaitRate;
+            this.lockWaitMs = lockWaitMs;
+        }
+
+        static Profile fromConfig(String name, ConfigurationSection section) {
+            return new Profile(name,
+                    section.getString("latency.distribution", "none").toLowerCase(),
+                    section.getLong("latency.ms", 0),
+                    section.getDouble("latency.sigma", 1.0),
+                    section.getLong("latency.maxMs", 5000),
+                    section.getDouble("connectionTimeoutRate", 0.0),
+                    section.getLong("connectionTimeoutMs", 3000),
+                    section.getDouble("midTransactionFailureRate", 0.0),
+                    section.getDouble("lockWaitRate", 0.0),
+                    section.getLong("lockWaitMs", 1000));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        long sampleLatencyMs() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double sample;
+            switch (distribution) {
+                case "fixed":
+                    sample = latencyMs;
+                    break;
+                case "uniform":
+                    sample = random.nextDouble() * latencyMs;
+                    break;
+                case "exponential":
+                    sample = -latencyMs * Math.log(1.0 - random.nextDouble());
+                    break;
+                case "lognormal":
+                    // The median is latencyMs, sigma sets how heavy the tail is
+                    sample = latencyMs * Math.exp(sigma * random.nextGaussian());
+                    break;
+                default:
+                    return 0;
+            }
+            return Math.min(maxLatencyMs, Math.round(sample));
+        }
+    }
+
+    private final Map<String, Profile> scenarios;
+    private volatile Profile profile;
+
+    // Metrics
+    private final AtomicLong delayedCalls = new AtomicLong();
+    private final AtomicLong delayMillis = new AtomicLong();
+    private final AtomicLong connectionTimeouts = new AtomicLong();
+    private final AtomicLong midTransactionFailures = new AtomicLong();
+    private final AtomicLong lockWaits = new AtomicLong();
+
+    public FaultInjector(Main plugin) {
+        Map<String, Profile> loaded = new LinkedHashMap<>();
+        loaded.put(Profile.NONE.name, Profile.NONE);
+        ConfigurationSection section = plugin.getConfig().getConfigurationSection("faults.scenarios");
+        if (section != null) {
+            for (String name : section.getKeys(false)) {
+                ConfigurationSection scenario = section.getConfigurationSection(name);
+                if (scenario != null) {
+                    loaded.put(name.toLowerCase(), Profile.fromConfig(name.toLowerCase(), scenario));
+                }
+            }
+        }
+        this.scenarios = Collections.unmodifiableMap(loaded);
+
+        String active = plugin.getConfig().getString("faults.scenario", "none").toLowerCase();
+        this.profile = scenarios.containsKey(active) ? scenarios.get(active) : Profile.NONE;
+        plugin.getLogger().warning("Fault injection is enabled, active scenario: " + profile.name);
+    }
+
+    public Map<String, Profile> getScenarios() {
+        return scenarios;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    // Called before a connection is handed out
+    void beforeConnect() throws SQLException {
+        Profile current = profile;
+        if (roll(current.connectionTimeoutRate)) {
+            connectionTimeouts.incrementAndGet();
+            sleep(current.connectionTimeoutMs);
+            throw new SQLTransientConnectionException("Connection is not available, request timed out after " +
+                    current.connectionTimeoutMs + "ms (injected)", "08001");
+        }
+    }
+
+    // Called before a statement runs, writes can run into a lock held by someone else
+    void beforeExecute(boolean write) throws SQLException {
+        Profile current = profile;
+        long latency = current.sampleLatencyMs();
+        if (latency > 0) {
+            delayedCalls.incrementAndGet();
+            delayMillis.addAndGet(latency);
+            sleep(latency);
+        }
+        if (write && roll(current.lockWaitRate)) {
+            lockWaits.incrementAndGet();
+            sleep(current.lockWaitMs);
+            throw new SQLTransactionRollbackException("Lock wait timeout exceeded; try restarting transaction (injected)", "40001", 1205);
+        }
+    }
+
+    /**
+     * Whether the connection drops after the statement or commit reached the server. The caller can't tell
+     * whether it landed, which is exactly what retries have to cope with.
+     */
+    boolean failAfterExecute() {
+        if (roll(profile.midTransactionFailureRate)) {
+            midTransactionFailures.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    static SQLException linkFailure() {
+        return new SQLNonTransientConnectionException("Communications link failure (injected)", "08S01");
+    }
+
+    private static boolean roll(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static void sleep(long millis) throws SQLException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while injecting a fault", e);
+        }
+    }
+
+    public String getMetrics() {
+        long delayed = delayedCalls.get();
+        return "faults: scenario " + profile.name + ", " + delayed + " delayed calls (avg " +
+                String.format("%.1f", delayed == 0 ? 0.0 : delayMillis.get() / (double) delayed) + " ms), " +
+                connectionTimeouts.get() + " connection timeouts, " + midTransactionFailures.get() + " mid-transaction failures, " +
+                lockWaits.get() + " lock waits";
+    }
+}
@@ -0,0 +1,90 @@
+package com.maks.playerdataplugin;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folia's regionized schedulers. Folia rejects delays below one tick for region tasks, and its async
+ * scheduler counts in wall clock time, so ticks are converted at 50 ms each.
+ */
+public class FoliaTaskScheduler implements TaskScheduler {
+
+    private static final long MILLIS_PER_TICK = 50L;
+
+    private final Main plugin;
+
+    public FoliaTaskScheduler(Main plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isFolia() {
+        return true;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    @Override
+    public void runGlobalLater(Runnable task, long delayTicks) {
+        Bukkit.getGlobalRegionScheduler().runDelayed(plugin, scheduled -> task.run(), Math.max(1L, delayTicks));
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        ScheduledTask scheduled = Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, ignored -> task.run(),
+                Math.max(1L, delayTicks), Math.max(1L, periodTicks));
+        return scheduled::cancel;
+    }
+
+    @Override
+    public void runForEntity(Entity entity, Runnable task) {
+        if (Bukkit.isOwnedByCurrentRegion(entity)) {
+            task.run();
+        } else {
+            entity.getScheduler().run(plugin, scheduled -> task.run(), null);
+        }
+    }
+
+    @Override
+    public void runForEntityLater(Entity entity, Runnable task, long delayTicks) {
+        entity.getScheduler().runDelayed(plugin, scheduled -> task.run(), null, Math.max(1L, delayTicks));
+    }
+
+    @Override
+    public void runForPlayer(UUID uuid, Runnable task) {
+        Player player = Bukkit.getPlayer(uuid);
+        if (player == null) {
+            runGlobal(task);
+        } else if (Bukkit.isOwnedByCurrentRegion(player)) {
+            task.run();
+        } else if (player.getScheduler().run(plugin, scheduled -> task.run(), task) == null) {
+            // The player was removed in the meantime, the retired callback won't run either
+            runGlobal(task);
+        }
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getAsyncScheduler().runNow(plugin, scheduled -> task.run());
+    }
+
+    @Override
+    public void runAsyncLater(Runnable task, long delayTicks) {
+        Bukkit.getAsyncScheduler().runDelayed(plugin, scheduled -> task.run(), delayTicks * MILLIS_PER_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        ScheduledTask scheduled = Bukkit.getAsyncScheduler().runAtFixedRate(plugin, ignored -> task.run(),
+                delayTicks * MILLIS_PER_TICK, periodTicks * MILLIS_PER_TICK, TimeUnit.MILLISECONDS);
+        return scheduled::cancel;
+    }
+}
@@ -0,0 +1,185 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Coordinates inventory ownership between several servers sharing one player_data_info table.
+ * Each row carries a monotonic version and a lease naming the server that currently owns the player.
+ * A joining server waits (asynchronously) until the previous owner released the lease, which its final
+ * save does in the same write, or the lease expired. Saves only land while the saving server still holds
+ * the lease. A version change alone never hands a player over: the owner's periodic saves advance it too.
+ */
+public class HandoffCoordinator {
+
+    private final Main plugin;
+    private final boolean enabled;
+    private final String serverId;
+    private final int leaseSeconds;
+    private final long waitTimeoutMs;
+    private final long pollIntervalTicks;
+    private final Tracer tracer;
+
+    public HandoffCoordinator(Main plugin) {
+        this.plugin = plugin;
+        String configuredId = plugin.getConfig().getString("handoff.serverId", "");
+        this.serverId = configuredId == null ? "" : configuredId.trim();
+        // The local backend belongs to a single server, there is nobody to hand players off to
+        boolean requested = plugin.getConfig().getBoolean("handoff.enabled", false) && !plugin.getDatabaseManager().isLocalBackend();
+        if (requested && serverId.isEmpty()) {
+            // A random id per boot would make this server's own leases look foreign after a restart
+            plugin.getLogger().severe("handoff.enabled needs a stable handoff.serverId, multi-server handoff stays disabled");
+        }
+        this.enabled = requested && !serverId.isEmpty();
+        this.leaseSeconds = Math.max(10, plugin.getConfig().getInt("handoff.leaseSeconds", 120));
+        this.waitTimeoutMs = plugin.getConfig().getLong("handoff.waitTimeoutMs", 10000);
+        this.pollIntervalTicks = Math.max(1L, plugin.getConfig().getLong("handoff.pollIntervalMs", 250) / 50);
+        this.tracer = new Tracer(plugin.getTraceBuffer(), "HANDOFF-DEBUG");
+
+        if (enabled) {
+            plugin.getLogger().info("Multi-server handoff enabled, server id: " + serverId);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    public int getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    /**
+     * Takes the lease for a joining player. Completes once this server owns the player, which is when the
+     * previous owner released the lease or it expired. Fails if that didn't happen within the wait timeout,
+     * the join then retries the load while saves stay blocked.
+     */
+    public CompletableFuture<Void> acquire(UUID uuid, String playerName) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        plugin.getDatabaseExecutor().execute(() -> {
+            try {
+                if (tryAcquire(uuid)) {
+                    tracer.trace(uuid, "Acquired lease for {} immediately", playerName);
+                    result.complete(null);
+                    return;
+                }
+
+                tracer.trace(uuid, "Lease for {} is held by another server, waiting", playerName);
+                poll(uuid, playerName, System.currentTimeMillis() + waitTimeoutMs, result);
+            } catch (SQLException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private void poll(UUID uuid, String playerName, long deadline, CompletableFuture<Void> result) {
+        plugin.getTaskScheduler().runAsyncLater(() -> {
+            try {
+                if (tryAcquire(uuid)) {
+                    tracer.trace(uuid, "Previous server released the lease for {}", playerName);
+                    result.complete(null);
+                } else if (System.currentTimeMillis() >= deadline) {
+                    // Taking over a live lease would drop the owner's final save, so wait for release or expiry
+                    plugin.getLogger().warning("Another server still holds " + playerName + "'s data lease, waiting for it to be released or expire");
+                    result.completeExceptionally(new SQLException("The data lease of " + playerName + " is held by another server"));
+                } else {
+                    poll(uuid, playerName, deadline, result);
+                }
+            } catch (SQLException e) {
+                result.completeExceptionally(e);
+            }
+        }, pollIntervalTicks);
+    }
+
+    private boolean tryAcquire(UUID uuid) throws SQLException {
+        return store().tryAcquireLease(uuid, serverId, leaseSeconds);
+    }
+
+    private InventoryStore store() {
+        return plugin.getDatabaseManager().getInventoryStore();
+    }
+
+    /**
+     * Releases the lease without writing data, e.g. when a player leaves before their data was applied.
+     */
+    public void release(UUID uuid) {
+        if (!enabled) {
+            return;
+        }
+
+        Runnable task = () -> {
+            try {
+                store().releaseLease(uuid, serverId);
+            } catch (SQLException e) {
+                plugin.getLogger().warning("Failed to release lease for " + uuid + ": " + e.getMessage());
+            }
+        };
+
+        if (plugin.isEnabled()) {
+            plugin.getDatabaseExecutor().execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Extends the leases of everyone online here, so players that don't trigger saves keep their lease.
+     */
+    public void renewLeases() {
+        if (!enabled) {
+            return;
+        }
+
+        List<UUID> online = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            online.add(player.getUniqueId());
+        }
+        if (online.isEmpty()) {
+            return;
+        }
+
+        plugin.getDatabaseExecutor().execute(() -> {
+            try {
+                int renewed = store().renewLeases(online, serverId, leaseSeconds);
+                if (tracer.isEnabled()) {
+                    tracer.trace(null, "Renewed {} leases", renewed);
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().warning("Failed to renew player data leases: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Releases every lease still held by this server, used on shutdown after the final saves.
+     */
+    public void releaseAll() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            int released = store().releaseAllLeases(serverId);
+            if (tracer.isEnabled()) {
+                tracer.trace(null, "Released {} leases on shutdown", released);
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().warning("Failed to release player data leases on shutdown: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.maks.playerdataplugin;
+
+import java.util.UUID;
+
+/**
+ * One entry of a player's inventory history. The content lives in a blob shared by every
+ * snapshot with the same hash.
+ */
+public class HistorySnapshot {
+
+    private final long id;
+    private final UUID uuid;
+    private final long createdAt;
+    private final String hash;
+    private final String reason;
+    private final boolean checkpoint;
+
+    public HistorySnapshot(long id, UUID uuid, long createdAt, String hash, String reason, boolean checkpoint) {
+        this.id = id;
+        this.uuid = uuid;
+        this.createdAt = createdAt;
+        this.hash = hash;
+        this.reason = reason;
+        this.checkpoint = checkpoint;
+    }
+
+    public long getId() { return id; }
+    public UUID getUuid() { return uuid; }
+    public long getCreatedAt() { return createdAt; }
+    public String getHash() { return hash; }
+    public String getReason() { return reason; }
+    public boolean isCheckpoint() { return checkpoint; }
+}
@@ -0,0 +1,54 @@
+package com.maks.playerdataplugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Storage backend for inventory history. Snapshot rows reference compressed blobs by content hash,
+ * so identical inventories are stored once no matter how many snapshots point at them.
+ */
+public interface HistoryStore {
+
+    interface BlobReader {
+        byte[] read(InputStream blob) throws IOException;
+    }
+
+    void initialize() throws SQLException;
+
+    /**
+     * Returns the newest snapshot of the player, or the newest checkpoint if checkpointOnly is set.
+     */
+    HistorySnapshot latest(UUID uuid, boolean checkpointOnly) throws SQLException;
+
+    /**
+     * Stores the blob unless one with the same hash exists, then adds a snapshot row pointing at it.
+     */
+    void append(UUID uuid, String hash, byte[] blob, String reason, boolean checkpoint) throws SQLException;
+
+    /**
+     * Lists the player's snapshots, newest first.
+     */
+    List<HistorySnapshot> list(UUID uuid, int offset, int limit) throws SQLException;
+
+    HistorySnapshot get(UUID uuid, long id) throws SQLException;
+
+    /**
+     * Streams the blob into the reader and returns what it produced, null if no blob has the hash.
+     * The stream is only valid during the call.
+     */
+    byte[] readBlob(String hash, BlobReader reader) throws SQLException, IOException;
+
+    /**
+     * Returns up to limit players with history, ordered by UUID and starting after the given one (null for the start).
+     */
+    List<UUID> playersAfter(UUID after, int limit) throws SQLException;
+
+    /**
+     * Deletes the player's snapshots beyond the newest keepLatest, except checkpoints newer than the cutoff,
+     * together with blobs no snapshot references anymore. Returns the number of deleted snapshots.
+     */
+    int prune(UUID uuid, int keepLatest, long checkpointCutoff) throws SQLException;
+}
@@ -0,0 +1,36 @@
+package com.maks.playerdataplugin;
+
+import java.util.UUID;
+
+/**
+ * One entry of the integrity report: a stored inventory the background scan found unreadable or suspicious.
+ */
+public class IntegrityIssue {
+
+    public enum Severity {
+        // The record can't be decoded, the player would join with an empty inventory
+        CORRUPT,
+        // The record decodes, but holds items that would be corrected on join
+        SUSPICIOUS
+    }
+
+    private final UUID uuid;
+    private final Severity severity;
+    private final long version;
+    private final String detail;
+    private final long checkedAt;
+
+    public IntegrityIssue(UUID uuid, Severity severity, long version, String detail, long checkedAt) {
+        this.uuid = uuid;
+        this.severity = severity;
+        this.version = version;
+        this.detail = detail;
+        this.checkedAt = checkedAt;
+    }
+
+    public UUID getUuid() { return uuid; }
+    public Severity getSeverity() { return severity; }
+    public long getVersion() { return version; }
+    public String getDetail() { return detail; }
+    public long getCheckedAt() { return checkedAt; }
+}
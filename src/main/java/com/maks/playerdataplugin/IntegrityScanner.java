@@ -0,0 +1,246 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Walks every stored inventory in the background and test-decodes it, so corrupt records are found
+ * before the player joins with an empty inventory. Records that can't be decoded, or hold items the join
+ * would correct (oversized or empty stacks), are written to the integrity report, and entries whose
+ * record reads cleanly again are removed. The walk is keyset-paginated at no more than rowsPerSecond
+ * records per second, and pauses while the database is degraded or busy with live traffic.
+ */
+public class IntegrityScanner {
+
+    private static final int MAX_DETAIL_ITEMS = 3;
+
+    private final Main plugin;
+    private final boolean enabled;
+    private final int rowsPerSecond;
+    private final long rescanIntervalMs;
+    private final int maxActiveTasks;
+    private final AtomicBoolean stepping = new AtomicBoolean(false);
+    private TaskScheduler.Task scanTask;
+
+    // State of the current pass, only touched by the step holding the stepping flag (the timer reads nextPassAt)
+    private UUID cursor = null;
+    private Set<UUID> reported = null;
+    private long passStartedAt = 0L;
+    private volatile long nextPassAt = 0L;
+    private long passChecked = 0L;
+    private int passCorrupt = 0;
+    private int passSuspicious = 0;
+
+    // Metrics
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong corrupt = new AtomicLong();
+    private final AtomicLong suspicious = new AtomicLong();
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong yielded = new AtomicLong();
+    private volatile String lastPass = "none finished yet";
+
+    public IntegrityScanner(Main plugin) {
+        this.plugin = plugin;
+        this.enabled = plugin.getConfig().getBoolean("integrity.enabled", true);
+        this.rowsPerSecond = Math.max(1, plugin.getConfig().getInt("integrity.rowsPerSecond", 20));
+        this.rescanIntervalMs = Math.max(0L, plugin.getConfig().getLong("integrity.rescanHours", 24)) * 3600000L;
+        this.maxActiveTasks = Math.max(0, plugin.getConfig().getInt("integrity.maxActiveTasks", 2));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void start() {
+        if (enabled) {
+            // One page per second; a lagging server ticks slower, which only lowers the rate
+            scanTask = plugin.getTaskScheduler().runAsyncTimer(this::tick, 20L, 20L);
+        }
+    }
+
+    public void stop() {
+        if (scanTask != null) {
+            scanTask.cancel();
+            scanTask = null;
+        }
+    }
+
+    private InventoryStore store() {
+        return plugin.getDatabaseManager().getInventoryStore();
+    }
+
+    // Hands the next page to the database executor, so the scan counts against its concurrency limit
+    private void tick() {
+        if (!plugin.getPersistenceStartup().isReady() || System.currentTimeMillis() < nextPassAt) {
+            return;
+        }
+        // Live saves and loads go first
+        if (plugin.getDatabaseManager().getCircuitBreaker().getState() != CircuitBreaker.State.CLOSED
+                || plugin.getDatabaseManager().getWriteBacklog().isActive()
+                || plugin.getDatabaseExecutor().getActiveTasks() > maxActiveTasks) {
+            yielded.incrementAndGet();
+            return;
+        }
+        if (!stepping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            plugin.getDatabaseExecutor().execute(this::step);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            stepping.set(false);
+        }
+    }
+
+    // Checks the next page, finishing the pass once the page comes back short. Runs with the stepping flag held
+    private void step() {
+        try {
+            if (reported == null) {
+                reported = new HashSet<>();
+                for (IntegrityIssue issue : store().listIssues(Integer.MAX_VALUE)) {
+                    reported.add(issue.getUuid());
+                }
+                passStartedAt = System.currentTimeMillis();
+                passChecked = 0L;
+                passCorrupt = 0;
+                passSuspicious = 0;
+            }
+
+            Map<UUID, StoredInventory> page = store().loadAfter(cursor, rowsPerSecond);
+            List<UUID> resolved = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            UUID last = null;
+            for (Map.Entry<UUID, StoredInventory> entry : page.entrySet()) {
+                UUID uuid = entry.getKey();
+                StoredInventory data = entry.getValue();
+                last = uuid;
+                if (data != null && data.isEmpty()) {
+                    continue;
+                }
+
+                IntegrityIssue issue = check(uuid, data, now);
+                passChecked++;
+                checked.incrementAndGet();
+                if (issue == null) {
+                    if (reported.remove(uuid)) {
+                        resolved.add(uuid);
+                    }
+                    continue;
+                }
+
+                store().reportIssue(issue);
+                reported.remove(uuid);
+                if (issue.getSeverity() == IntegrityIssue.Severity.CORRUPT) {
+                    passCorrupt++;
+                    corrupt.incrementAndGet();
+                    plugin.getLogger().warning("Corrupted inventory data stored for " + uuid + ": " + issue.getDetail());
+                } else {
+                    passSuspicious++;
+                    suspicious.incrementAndGet();
+                }
+            }
+            store().clearIssues(resolved);
+
+            if (page.size() < rowsPerSecond) {
+                finishPass();
+            } else {
+                cursor = last;
+            }
+        } catch (SQLException e) {
+            if (!(e instanceof CircuitBreaker.CircuitOpenException)) {
+                plugin.getLogger().warning("Failed to scan stored inventories: " + e.getMessage());
+            }
+        } finally {
+            stepping.set(false);
+        }
+    }
+
+    private void finishPass() throws SQLException {
+        // Reported players the pass didn't reach anymore have no record left to check
+        store().clearIssues(reported);
+        double seconds = (System.currentTimeMillis() - passStartedAt) / 1000.0;
+        lastPass = passChecked + " records in " + String.format("%.0f", seconds) + " s, " + passCorrupt + " corrupt, " +
+                passSuspicious + " suspicious";
+        if (passCorrupt > 0 || passSuspicious > 0) {
+            plugin.getLogger().warning("Integrity scan finished: " + lastPass + ", see /playerdata integrity");
+        }
+        passes.incrementAndGet();
+        cursor = null;
+        reported = null;
+        nextPassAt = System.currentTimeMillis() + rescanIntervalMs;
+    }
+
+    /**
+     * Decodes the record the way a join would and returns what's wrong with it, null if nothing is.
+     */
+    static IntegrityIssue check(UUID uuid, StoredInventory data, long now) {
+        if (data == null) {
+            return new IntegrityIssue(uuid, IntegrityIssue.Severity.CORRUPT, 0L, "Unreadable record", now);
+        }
+
+        PlayerState state;
+        try {
+            state = data.toPlayerState();
+        } catch (RuntimeException e) {
+            return new IntegrityIssue(uuid, IntegrityIssue.Severity.CORRUPT, data.getVersion(), describe(e), now);
+        }
+
+        List<String> problems = new ArrayList<>();
+        int count = findSuspicious(state.getContents(), "inventory", problems)
+                + findSuspicious(state.getEnderChest(), "ender chest", problems);
+        if (count == 0) {
+            return null;
+        }
+        return new IntegrityIssue(uuid, IntegrityIssue.Severity.SUSPICIOUS, data.getVersion(),
+                count + " invalid stacks: " + String.join(", ", problems) + (count > problems.size() ? ", ..." : ""), now);
+    }
+
+    // The same stack checks the join applies, which would silently correct these items
+    private static int findSuspicious(ItemStack[] items, String section, List<String> problems) {
+        if (items == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int slot = 0; slot < items.length; slot++) {
+            ItemStack item = items[slot];
+            if (item == null || item.getType().isAir()) {
+                continue;
+            }
+            if (item.getAmount() > item.getMaxStackSize() || item.getAmount() < 1) {
+                count++;
+                if (problems.size() < MAX_DETAIL_ITEMS) {
+                    problems.add(section + " slot " + slot + " " + item.getType() + " x" + item.getAmount() + " (max " + item.getMaxStackSize() + ")");
+                }
+            }
+        }
+        return count;
+    }
+
+    private static String describe(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        String message = error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+        return root == error ? message : message + " (" + root + ")";
+    }
+
+    public String getMetrics() {
+        if (!enabled) {
+            return "integrity scan: disabled";
+        }
+        return "integrity scan: " + checked.get() + " records checked at up to " + rowsPerSecond + "/s, " + corrupt.get() +
+                " corrupt, " + suspicious.get() + " suspicious, " + passes.get() + " passes (last: " + lastPass + "), " +
+                yielded.get() + " pages deferred for live traffic";
+    }
+}
@@ -0,0 +1,363 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+import org.bukkit.inventory.meta.BundleMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.util.io.BukkitObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only view of an encoded player state that decodes slots on demand. Records in the indexed format
+ * only have their slot tables parsed when opened: type, amount and whether a slot holds a container are
+ * read from the slot header, and a slot's item (including the nested contents of shulker boxes and
+ * bundles) is only built when {@link #getItem} asks for it. Records in older formats are decoded in full
+ * when opened. Not thread-safe, decoded slots are cached.
+ */
+public class InventorySnapshot {
+
+    public enum Section { CONTENTS, ENDER_CHEST }
+
+    // Slot numbers of the player inventory contents on 1.20
+    public static final int HOTBAR_SIZE = 9;
+    public static final int ARMOR_START = 36;
+    public static final int ARMOR_SIZE = 4;
+    public static final int OFFHAND_SLOT = 40;
+
+    private static class SectionIndex {
+        final int length;
+        final Material[] palette;
+        // Absolute position of each slot's record, -1 for empty slots
+        final int[] offsets;
+        final ItemStack[] items;
+        final boolean[] decoded;
+
+        SectionIndex(Material[] palette, int[] offsets) {
+            this.length = offsets.length;
+            this.palette = palette;
+            this.offsets = offsets;
+            this.items = new ItemStack[offsets.length];
+            this.decoded = new boolean[offsets.length];
+        }
+
+        // A section of an older format, already decoded
+        SectionIndex(ItemStack[] items) {
+            this.length = items.length;
+            this.palette = null;
+            this.offsets = null;
+            this.items = items;
+            this.decoded = null;
+        }
+    }
+
+    private final byte[] data;
+    private final ByteBuffer buffer;
+    private final SectionIndex contents;
+    private final SectionIndex enderChest;
+    private final int statusOffset;
+    // Records in older formats are decoded in full when opened
+    private final PlayerState decodedState;
+    private int decodedSlots = 0;
+
+    private InventorySnapshot(byte[] data) {
+        this.data = data;
+        this.buffer = ByteBuffer.wrap(data);
+        buffer.position(1);
+        this.contents = readSection();
+        this.enderChest = readSection();
+        this.statusOffset = buffer.position();
+        this.decodedState = null;
+    }
+
+    private InventorySnapshot(PlayerState state) {
+        this.data = null;
+        this.buffer = null;
+        this.contents = new SectionIndex(state.getContents());
+        this.enderChest = state.getEnderChest() == null ? null : new SectionIndex(state.getEnderChest());
+        this.statusOffset = -1;
+        this.decodedState = state;
+    }
+
+    /**
+     * Opens an encoded player state. Only the slot tables of indexed records are read here.
+     */
+    public static InventorySnapshot open(byte[] data) {
+        if (!SerializationUtils.isIndexed(data)) {
+            return new InventorySnapshot(SerializationUtils.deserializeStreamState(data));
+        }
+        try {
+            return new InventorySnapshot(data);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Corrupt player state record", e);
+        }
+    }
+
+    /**
+     * Opens a stored record, migrating the old inventory/armor format on the fly.
+     */
+    public static InventorySnapshot open(StoredInventory stored) {
+        return stored.getState() != null ? open(stored.getState()) : new InventorySnapshot(stored.toPlayerState());
+    }
+
+    private SectionIndex readSection() {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        Material[] palette = new Material[buffer.getShort() & 0xFFFF];
+        for (int i = 0; i < palette.length; i++) {
+            int nameLength = buffer.getShort() & 0xFFFF;
+            // Material names are ASCII, where modified UTF-8 and UTF-8 agree; unknown names stay null
+            palette[i] = Material.matchMaterial(new String(data, buffer.position(), nameLength, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + nameLength);
+        }
+
+        int dataLength = buffer.getInt();
+        int[] offsets = new int[length];
+        for (int i = 0; i < length; i++) {
+            offsets[i] = buffer.getInt();
+        }
+        int dataStart = buffer.position();
+        for (int i = 0; i < length; i++) {
+            if (offsets[i] >= dataLength) {
+                throw new IllegalStateException("Slot " + i + " points past the section");
+            }
+            if (offsets[i] >= 0) {
+                offsets[i] += dataStart;
+            }
+        }
+        buffer.position(dataStart + dataLength);
+        return new SectionIndex(palette, offsets);
+    }
+
+    public boolean isIndexed() {
+        return decodedState == null;
+    }
+
+    /**
+     * Number of slots in the section, 0 if the record has none (records migrated from the old format
+     * carry no ender chest).
+     */
+    public int getSize(Section section) {
+        SectionIndex index = index(section);
+        return index == null ? 0 : index.length;
+    }
+
+    public boolean isEmpty(Section section, int slot) {
+        SectionIndex index = index(section);
+        if (index.offsets == null) {
+            ItemStack item = index.items[slot];
+            return item == null || item.getType().isAir();
+        }
+        return index.offsets[slot] < 0;
+    }
+
+    /**
+     * The slot's material, null for empty slots. Read from the slot header without decoding the item.
+     */
+    public Material getType(Section section, int slot) {
+        SectionIndex index = index(section);
+        if (isEmpty(section, slot)) {
+            return null;
+        }
+        if (index.offsets == null) {
+            return index.items[slot].getType();
+        }
+        Material type = index.palette[buffer.getShort(index.offsets[slot] + 1) & 0xFFFF];
+        // Materials this server doesn't know by name are only resolved by decoding the item
+        return type != null ? type : getItem(section, slot).getType();
+    }
+
+    /**
+     * The slot's stack size, 0 for empty slots. Read from the slot header without decoding the item.
+     */
+    public int getAmount(Section section, int slot) {
+        SectionIndex index = index(section);
+        if (isEmpty(section, slot)) {
+            return 0;
+        }
+        if (index.offsets == null) {
+            return index.items[slot].getAmount();
+        }
+        int position = index.offsets[slot];
+        return data[position] == SerializationUtils.SLOT_SERIALIZED ? buffer.getInt(position + 3) : data[position + 3] & 0xFF;
+    }
+
+    /**
+     * Whether the slot holds a shulker box, bundle or other item carrying a nested inventory. The nested
+     * contents themselves stay encoded until the slot is decoded.
+     */
+    public boolean isContainer(Section section, int slot) {
+        SectionIndex index = index(section);
+        if (isEmpty(section, slot)) {
+            return false;
+        }
+        if (index.offsets == null) {
+            return isContainer(index.items[slot]);
+        }
+        int position = index.offsets[slot];
+        return data[position] == SerializationUtils.SLOT_SERIALIZED && data[position + 7] != 0;
+    }
+
+    /**
+     * Decodes the item in one slot, null for empty slots.
+     */
+    public ItemStack getItem(Section section, int slot) {
+        SectionIndex index = index(section);
+        if (index.offsets == null || index.decoded[slot]) {
+            return index.items[slot];
+        }
+        if (index.offsets[slot] >= 0) {
+            try {
+                index.items[slot] = decode(index, index.offsets[slot]);
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Corrupt item in slot " + slot + " of the " + section, e);
+            }
+            decodedSlots++;
+        }
+        index.decoded[slot] = true;
+        return index.items[slot];
+    }
+
+    /**
+     * Decodes slots from (inclusive) to (exclusive).
+     */
+    public ItemStack[] getItems(Section section, int from, int to) {
+        ItemStack[] items = new ItemStack[Math.max(0, to - from)];
+        for (int slot = from; slot < to; slot++) {
+            items[slot - from] = getItem(section, slot);
+        }
+        return items;
+    }
+
+    public ItemStack[] getHotbar() {
+        return getItems(Section.CONTENTS, 0, Math.min(HOTBAR_SIZE, getSize(Section.CONTENTS)));
+    }
+
+    /**
+     * Boots, leggings, chestplate and helmet, in the order of the inventory contents.
+     */
+    public ItemStack[] getArmor() {
+        return getItems(Section.CONTENTS, ARMOR_START, Math.min(ARMOR_START + ARMOR_SIZE, getSize(Section.CONTENTS)));
+    }
+
+    /**
+     * Total amount of the material across the inventory and ender chest, read from the slot headers.
+     * Items nested inside containers are not counted.
+     */
+    public int count(Material material) {
+        int total = 0;
+        for (Section section : Section.values()) {
+            for (int slot = 0; slot < getSize(section); slot++) {
+                if (!isEmpty(section, slot) && getType(section, slot) == material) {
+                    total += getAmount(section, slot);
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Number of occupied slots in the section.
+     */
+    public int countItems(Section section) {
+        int total = 0;
+        for (int slot = 0; slot < getSize(section); slot++) {
+            if (!isEmpty(section, slot)) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * How many slots were decoded into items so far, for indexed records.
+     */
+    public int getDecodedSlots() {
+        return decodedSlots;
+    }
+
+    /**
+     * Decodes the whole record.
+     */
+    public PlayerState toPlayerState() {
+        if (decodedState != null) {
+            return decodedState;
+        }
+        ItemStack[] contentItems = contents == null ? null : getItems(Section.CONTENTS, 0, contents.length);
+        ItemStack[] enderChestItems = enderChest == null ? null : getItems(Section.ENDER_CHEST, 0, enderChest.length);
+        try {
+            int position = statusOffset;
+            if (data[position] == 0) {
+                return PlayerState.inventoryOnly(contentItems, enderChestItems);
+            }
+            int level = buffer.getInt(position + 1);
+            float exp = buffer.getFloat(position + 5);
+            int totalExperience = buffer.getInt(position + 9);
+            double health = buffer.getDouble(position + 13);
+            int foodLevel = buffer.getInt(position + 21);
+            float saturation = buffer.getFloat(position + 25);
+            float exhaustion = buffer.getFloat(position + 29);
+            int effectsLength = buffer.getInt(position + 33);
+
+            List<PotionEffect> effects = new ArrayList<>();
+            BukkitObjectInputStream effectsInput = new BukkitObjectInputStream(new ByteArrayInputStream(data, position + 37, effectsLength));
+            int effectCount = effectsInput.readInt();
+            for (int i = 0; i < effectCount; i++) {
+                effects.add((PotionEffect) effectsInput.readObject());
+            }
+            effectsInput.close();
+            return new PlayerState(contentItems, enderChestItems, level, exp, totalExperience, health, foodLevel, saturation, exhaustion, effects);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to deserialize player state.", e);
+        }
+    }
+
+    private ItemStack decode(SectionIndex index, int position) {
+        int encoding = data[position];
+        Material material = index.palette[buffer.getShort(position + 1) & 0xFFFF];
+        switch (encoding) {
+            case SerializationUtils.SLOT_PLAIN:
+                return new ItemStack(requireMaterial(material), data[position + 3] & 0xFF);
+            case SerializationUtils.SLOT_DAMAGED:
+                return SerializationUtils.damagedStack(requireMaterial(material), data[position + 3] & 0xFF, buffer.getInt(position + 4));
+            case SerializationUtils.SLOT_SERIALIZED:
+                int length = buffer.getInt(position + 8);
+                return ItemStack.deserializeBytes(Arrays.copyOfRange(data, position + 12, position + 12 + length));
+            default:
+                throw new IllegalStateException("Unknown slot encoding " + encoding);
+        }
+    }
+
+    private static Material requireMaterial(Material material) {
+        if (material == null) {
+            throw new IllegalStateException("Unknown material");
+        }
+        return material;
+    }
+
+    private SectionIndex index(Section section) {
+        return section == Section.CONTENTS ? contents : enderChest;
+    }
+
+    /**
+     * Whether the stack carries a nested inventory: a shulker box with contents, or a bundle with items.
+     */
+    static boolean isContainer(ItemStack item) {
+        if (!item.hasItemMeta()) {
+            return false;
+        }
+        ItemMeta meta = item.getItemMeta();
+        return (meta instanceof BlockStateMeta && ((BlockStateMeta) meta).hasBlockState()
+                && item.getType().name().endsWith("SHULKER_BOX"))
+                || (meta instanceof BundleMeta && ((BundleMeta) meta).hasItems());
+    }
+}
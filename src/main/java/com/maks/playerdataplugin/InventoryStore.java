@@ -0,0 +1,106 @@
+package com.maks.playerdataplugin;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Storage backend for player inventories, including the ownership leases used for multi-server handoff.
+ * Implementations must be safe to call from several async threads at once.
+ */
+public interface InventoryStore {
+
+    /**
+     * Receives stored inventories one at a time during a scan.
+     */
+    interface RowHandler {
+        void accept(UUID uuid, StoredInventory inventory) throws IOException;
+    }
+
+    /**
+     * Creates or migrates whatever the backend needs before it can be used.
+     */
+    void initialize() throws SQLException;
+
+    /**
+     * Loads the stored inventories for all given players. Players without data are absent from the result.
+     */
+    Map<UUID, StoredInventory> loadAll(List<UUID> uuids) throws SQLException;
+
+    /**
+     * Streams every stored inventory to the handler on the calling thread, holding only the current row in
+     * memory. Records without any stored state (lease placeholders) are skipped.
+     */
+    void scanAll(RowHandler handler) throws SQLException, IOException;
+
+    /**
+     * Returns up to limit stored inventories ordered by UUID, starting after the given one (null for the start),
+     * lease placeholders included. A record that exists but can't be read maps to null.
+     */
+    Map<UUID, StoredInventory> loadAfter(UUID after, int limit) throws SQLException;
+
+    /**
+     * Adds the issue to the integrity report, replacing the player's previous entry.
+     */
+    void reportIssue(IntegrityIssue issue) throws SQLException;
+
+    /**
+     * Removes the players' entries from the integrity report.
+     */
+    void clearIssues(Collection<UUID> uuids) throws SQLException;
+
+    /**
+     * Lists entries of the integrity report, corrupt records first, then the most recently checked.
+     */
+    List<IntegrityIssue> listIssues(int limit) throws SQLException;
+
+    /**
+     * Writes imported inventories in one batch. Each record's version is advanced past both the stored
+     * and the imported one, so caches holding an older version notice the change. Players whose lease is
+     * held by another owner and hasn't expired are left untouched, since that server would overwrite the
+     * import with its next save. Returns those skipped players.
+     */
+    Set<UUID> importAll(Map<UUID, StoredInventory> inventories, String owner) throws SQLException;
+
+    /**
+     * Deletes the players' records, leases included.
+     */
+    void deleteAll(Collection<UUID> uuids) throws SQLException;
+
+    /**
+     * Stores the inventory and advances its version. With a lease owner the write only lands while that
+     * owner still holds the lease, and releaseLease hands the player back in the same write.
+     * Returns the version the write produced, or -1 if it was discarded because another owner holds the lease.
+     */
+    long save(UUID uuid, StoredInventory inventory, String leaseOwner, int leaseSeconds, boolean releaseLease) throws SQLException;
+
+    /**
+     * Stores the inventory only if its version is still expectedVersion and no other owner holds an
+     * unexpired lease, for edits made while the player is offline. A null owner only checks the version.
+     * Returns the version the write produced, or -1 if the record changed or is leased elsewhere.
+     */
+    long saveIfUnchanged(UUID uuid, StoredInventory inventory, long expectedVersion, String owner) throws SQLException;
+
+    /**
+     * Takes the lease if it is free, expired or already ours. Creates an empty record for new players.
+     */
+    boolean tryAcquireLease(UUID uuid, String owner, int leaseSeconds) throws SQLException;
+
+    void releaseLease(UUID uuid, String owner) throws SQLException;
+
+    /**
+     * Extends the leases held by the owner for the given players.
+     */
+    int renewLeases(Collection<UUID> uuids, String owner, int leaseSeconds) throws SQLException;
+
+    int releaseAllLeases(String owner) throws SQLException;
+
+    /**
+     * Returns the current version of the stored inventory, 0 if there is none.
+     */
+    long readVersion(UUID uuid) throws SQLException;
+}
@@ -0,0 +1,284 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * /invsee for players online on this server (their live inventory) and offline players (their stored
+ * inventory, read through {@link OfflineInventories}). Offline inventories open in a chest view; with
+ * the edit permission, changes are written back when the view is closed. Without it, live inventories
+ * are read-only too.
+ */
+public class InvseeCommand implements CommandExecutor, TabCompleter, Listener {
+
+    private static final int ROW_SIZE = 9;
+
+    private final Main plugin;
+    // Live inventories opened by viewers without the edit permission, by viewer
+    private final Map<UUID, Inventory> readOnlyLiveViews = new ConcurrentHashMap<>();
+
+    /**
+     * The chest view of an offline player's inventory or ender chest.
+     */
+    private static class OfflineView implements InventoryHolder {
+        final UUID uuid;
+        final String name;
+        final InventorySnapshot.Section section;
+        final StoredInventory original;
+        final ItemStack[] originalItems;
+        final boolean editable;
+        Inventory inventory;
+
+        OfflineView(UUID uuid, String name, InventorySnapshot.Section section, StoredInventory original,
+                    ItemStack[] originalItems, boolean editable) {
+            this.uuid = uuid;
+            this.name = name;
+            this.section = section;
+            this.original = original;
+            this.originalItems = originalItems;
+            this.editable = editable;
+        }
+
+        @Override
+        public Inventory getInventory() {
+            return inventory;
+        }
+    }
+
+    public InvseeCommand(Main plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(ChatColor.RED + "Only players can open inventories.");
+            return true;
+        }
+        if (!sender.hasPermission("playerdataplugin.invsee")) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+            return true;
+        }
+        if (args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equalsIgnoreCase("enderchest"))) {
+            sender.sendMessage(ChatColor.RED + "Usage: /" + label + " <player> [enderchest]");
+            return true;
+        }
+
+        Player viewer = (Player) sender;
+        InventorySnapshot.Section section = args.length == 2 ? InventorySnapshot.Section.ENDER_CHEST : InventorySnapshot.Section.CONTENTS;
+        Player online = Bukkit.getPlayerExact(args[0]);
+        if (online != null) {
+            Inventory live = section == InventorySnapshot.Section.CONTENTS ? online.getInventory() : online.getEnderChest();
+            viewer.openInventory(live);
+            if (!viewer.hasPermission("playerdataplugin.invsee.edit")) {
+                readOnlyLiveViews.put(viewer.getUniqueId(), live);
+            }
+            return true;
+        }
+        if (!plugin.getPersistenceStartup().isReady()) {
+            sender.sendMessage(ChatColor.RED + "The database is still being opened, please try again in a moment.");
+            return true;
+        }
+
+        String name = args[0];
+        AdminCommand.resolvePlayer(plugin, sender, name, uuid -> plugin.getOfflineInventories().load(uuid).whenComplete((stored, error) -> {
+            if (error != null) {
+                reply(viewer, ChatColor.RED + "Failed to load the inventory of " + name + ": " + error.getMessage());
+                return;
+            }
+            if (stored == null) {
+                reply(viewer, ChatColor.YELLOW + "No stored inventory for " + name + ".");
+                return;
+            }
+
+            // Only the viewed section is decoded, straight from the record's slot index
+            ItemStack[] items;
+            try {
+                InventorySnapshot snapshot = InventorySnapshot.open(stored);
+                items = snapshot.getItems(section, 0, snapshot.getSize(section));
+            } catch (IllegalStateException e) {
+                reply(viewer, ChatColor.RED + "The stored inventory of " + name + " is corrupted: " + e.getMessage());
+                return;
+            }
+
+            OfflineView view = new OfflineView(uuid, name, section, stored, items, viewer.hasPermission("playerdataplugin.invsee.edit"));
+            plugin.getTaskScheduler().runForEntity(viewer, () -> open(viewer, view));
+        }));
+        return true;
+    }
+
+    private void open(Player viewer, OfflineView view) {
+        // Whole rows, the slots past the inventory's own are filled with panes that can't be moved
+        int size = Math.max(ROW_SIZE, (view.originalItems.length + ROW_SIZE - 1) / ROW_SIZE * ROW_SIZE);
+        Inventory inventory = Bukkit.createInventory(view, size, view.name + (view.section == InventorySnapshot.Section.CONTENTS
+                ? "'s inventory" : "'s ender chest") + (view.editable ? "" : " (read-only)"));
+        view.inventory = inventory;
+        for (int slot = 0; slot < view.originalItems.length; slot++) {
+            inventory.setItem(slot, view.originalItems[slot] == null ? null : view.originalItems[slot].clone());
+        }
+        ItemStack filler = new ItemStack(Material.GRAY_STAINED_GLASS_PANE);
+        ItemMeta meta = filler.getItemMeta();
+        if (meta != null) {
+            meta.setDisplayName(" ");
+            filler.setItemMeta(meta);
+        }
+        for (int slot = view.originalItems.length; slot < size; slot++) {
+            inventory.setItem(slot, filler);
+        }
+        viewer.openInventory(inventory);
+    }
+
+    @EventHandler
+    public void onInventoryClick(InventoryClickEvent event) {
+        if (isReadOnlyLiveView(event.getWhoClicked().getUniqueId(), event.getView().getTopInventory())) {
+            event.setCancelled(true);
+            return;
+        }
+        InventoryHolder holder = event.getView().getTopInventory().getHolder();
+        if (!(holder instanceof OfflineView)) {
+            return;
+        }
+        OfflineView view = (OfflineView) holder;
+        int topSize = event.getView().getTopInventory().getSize();
+        if (!view.editable || (event.getRawSlot() >= view.originalItems.length && event.getRawSlot() < topSize)) {
+            event.setCancelled(true);
+        }
+    }
+
+    @EventHandler
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (isReadOnlyLiveView(event.getWhoClicked().getUniqueId(), event.getView().getTopInventory())) {
+            event.setCancelled(true);
+            return;
+        }
+        InventoryHolder holder = event.getView().getTopInventory().getHolder();
+        if (!(holder instanceof OfflineView)) {
+            return;
+        }
+        OfflineView view = (OfflineView) holder;
+        int topSize = event.getView().getTopInventory().getSize();
+        for (int slot : event.getRawSlots()) {
+            if (slot < topSize && (!view.editable || slot >= view.originalItems.length)) {
+                event.setCancelled(true);
+                return;
+            }
+        }
+    }
+
+    @EventHandler
+    public void onInventoryClose(InventoryCloseEvent event) {
+        readOnlyLiveViews.remove(event.getPlayer().getUniqueId(), event.getInventory());
+        if (!(event.getInventory().getHolder() instanceof OfflineView) || !(event.getPlayer() instanceof Player)) {
+            return;
+        }
+        OfflineView view = (OfflineView) event.getInventory().getHolder();
+        Player viewer = (Player) event.getPlayer();
+        if (!view.editable) {
+            return;
+        }
+
+        ItemStack[] edited = new ItemStack[view.originalItems.length];
+        for (int slot = 0; slot < edited.length; slot++) {
+            ItemStack item = event.getInventory().getItem(slot);
+            edited[slot] = item == null ? null : item.clone();
+        }
+        if (sameItems(view.originalItems, edited)) {
+            return;
+        }
+
+        plugin.getDatabaseExecutor().execute(() -> {
+            String message;
+            try {
+                PlayerState state = view.original.toPlayerState();
+                PlayerState editedState = view.section == InventorySnapshot.Section.CONTENTS
+                        ? state.withItems(edited, state.getEnderChest()) : state.withItems(state.getContents(), edited);
+                switch (plugin.getOfflineInventories().write(view.uuid, view.original, editedState)) {
+                    case SAVED:
+                        message = ChatColor.GREEN + "Saved your changes to the inventory of " + view.name + ".";
+                        plugin.getLogger().info(viewer.getName() + " edited the offline inventory of " + view.name);
+                        break;
+                    case CONFLICT:
+                        message = ChatColor.RED + "The inventory of " + view.name + " changed while you were editing it, " +
+                                "your changes were NOT saved. Open it again to see the current one.";
+                        break;
+                    default:
+                        message = ChatColor.RED + view.name + " is online or still being saved, your changes were NOT saved.";
+                        break;
+                }
+            } catch (SQLException | IllegalStateException e) {
+                message = ChatColor.RED + "Failed to save the inventory of " + view.name + ": " + e.getMessage();
+            }
+
+            reply(viewer, message);
+        });
+    }
+
+    // Every click is cancelled, shift-clicks from the viewer's own inventory would move items in as well.
+    // Views wrap the same inventory in a new object, so they are compared with equals
+    private boolean isReadOnlyLiveView(UUID viewer, Inventory top) {
+        Inventory live = readOnlyLiveViews.get(viewer);
+        return live != null && live.equals(top);
+    }
+
+    // Loads and writes complete on database threads
+    private void reply(Player viewer, String message) {
+        plugin.getTaskScheduler().runForEntity(viewer, () -> viewer.sendMessage(message));
+    }
+
+    private static boolean sameItems(ItemStack[] original, ItemStack[] edited) {
+        for (int slot = 0; slot < original.length; slot++) {
+            ItemStack before = original[slot];
+            ItemStack after = edited[slot];
+            boolean beforeEmpty = before == null || before.getType().isAir();
+            boolean afterEmpty = after == null || after.getType().isAir();
+            if (beforeEmpty != afterEmpty) {
+                return false;
+            }
+            if (!beforeEmpty && (!before.isSimilar(after) || before.getAmount() != after.getAmount())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        List<String> completions = new ArrayList<>();
+        if (!sender.hasPermission("playerdataplugin.invsee")) {
+            return completions;
+        }
+        if (args.length == 1) {
+            String partial = args[0].toLowerCase();
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                if (player.getName().toLowerCase().startsWith(partial)) {
+                    completions.add(player.getName());
+                }
+            }
+        } else if (args.length == 2 && "enderchest".startsWith(args[1].toLowerCase())) {
+            completions.add("enderchest");
+        }
+        return completions;
+    }
+}
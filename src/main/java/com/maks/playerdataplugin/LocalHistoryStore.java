@@ -0,0 +1,174 @@
+package com.maks.playerdataplugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inventory history in the embedded {@link LogStructuredStore}. Blob reference counts are kept in memory
+ * and rebuilt from the snapshot records on startup.
+ */
+public class LocalHistoryStore implements HistoryStore {
+
+    private static final String SNAPSHOT_PREFIX = "history:";
+    private static final String BLOB_PREFIX = "blob:";
+
+    private final LogStructuredStore store;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<String, Integer> blobReferences = new HashMap<>();
+
+    public LocalHistoryStore(LogStructuredStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public synchronized void initialize() {
+        store.forEach(SNAPSHOT_PREFIX, (key, value) -> {
+            HistorySnapshot snapshot = decode(key, value);
+            if (snapshot != null) {
+                blobReferences.merge(snapshot.getHash(), 1, Integer::sum);
+                if (snapshot.getId() >= nextId.get()) {
+                    nextId.set(snapshot.getId() + 1);
+                }
+            }
+        });
+    }
+
+    @Override
+    public HistorySnapshot latest(UUID uuid, boolean checkpointOnly) {
+        for (HistorySnapshot snapshot : snapshots(uuid)) {
+            if (!checkpointOnly || snapshot.isCheckpoint()) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void append(UUID uuid, String hash, byte[] blob, String reason, boolean checkpoint) throws SQLException {
+        long id = nextId.getAndIncrement();
+        BufferPool.Buffer bytes = BufferPool.acquire();
+        try {
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeLong(System.currentTimeMillis());
+                LocalInventoryStore.writeString(out, hash);
+                LocalInventoryStore.writeString(out, reason);
+                out.writeBoolean(checkpoint);
+            } catch (IOException e) {
+                throw new SQLException("Failed to encode snapshot of " + uuid, e);
+            }
+
+            try {
+                if (!blobReferences.containsKey(hash)) {
+                    store.put(BLOB_PREFIX + hash, blob);
+                }
+                store.put(snapshotKey(uuid, id), bytes.array(), 0, bytes.size());
+            } catch (IOException e) {
+                throw new SQLException("Failed to write snapshot of " + uuid + " to the local store", e);
+            }
+        } finally {
+            BufferPool.release(bytes);
+        }
+        blobReferences.merge(hash, 1, Integer::sum);
+    }
+
+    @Override
+    public List<HistorySnapshot> list(UUID uuid, int offset, int limit) {
+        List<HistorySnapshot> all = snapshots(uuid);
+        return new ArrayList<>(all.subList(Math.min(offset, all.size()), Math.min(offset + limit, all.size())));
+    }
+
+    @Override
+    public HistorySnapshot get(UUID uuid, long id) {
+        byte[] value = store.get(snapshotKey(uuid, id));
+        return value == null ? null : decode(snapshotKey(uuid, id), value);
+    }
+
+    @Override
+    public byte[] readBlob(String hash, BlobReader reader) throws IOException {
+        byte[] blob = store.get(BLOB_PREFIX + hash);
+        return blob == null ? null : reader.read(new ByteArrayInputStream(blob));
+    }
+
+    @Override
+    public List<UUID> playersAfter(UUID after, int limit) {
+        TreeSet<String> players = new TreeSet<>();
+        store.forEach(SNAPSHOT_PREFIX, (key, value) ->
+                players.add(key.substring(SNAPSHOT_PREFIX.length(), key.lastIndexOf(':'))));
+
+        List<UUID> result = new ArrayList<>();
+        for (String player : after == null ? players : players.tailSet(after.toString(), false)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(UUID.fromString(player));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int prune(UUID uuid, int keepLatest, long checkpointCutoff) throws SQLException {
+        List<HistorySnapshot> all = snapshots(uuid);
+        int deleted = 0;
+        try {
+            for (int i = keepLatest; i < all.size(); i++) {
+                HistorySnapshot snapshot = all.get(i);
+                if (snapshot.isCheckpoint() && snapshot.getCreatedAt() >= checkpointCutoff) {
+                    continue;
+                }
+                store.delete(snapshotKey(uuid, snapshot.getId()));
+                deleted++;
+
+                Integer references = blobReferences.merge(snapshot.getHash(), -1, Integer::sum);
+                if (references != null && references <= 0) {
+                    blobReferences.remove(snapshot.getHash());
+                    store.delete(BLOB_PREFIX + snapshot.getHash());
+                }
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to prune history of " + uuid + " in the local store", e);
+        }
+        return deleted;
+    }
+
+    // Newest first
+    private List<HistorySnapshot> snapshots(UUID uuid) {
+        List<HistorySnapshot> result = new ArrayList<>();
+        store.forEach(SNAPSHOT_PREFIX + uuid + ":", (key, value) -> {
+            HistorySnapshot snapshot = decode(key, value);
+            if (snapshot != null) {
+                result.add(snapshot);
+            }
+        });
+        result.sort(Comparator.comparingLong(HistorySnapshot::getId).reversed());
+        return result;
+    }
+
+    private static String snapshotKey(UUID uuid, long id) {
+        return SNAPSHOT_PREFIX + uuid + ":" + id;
+    }
+
+    private static HistorySnapshot decode(String key, byte[] value) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            int separator = key.lastIndexOf(':');
+            UUID uuid = UUID.fromString(key.substring(SNAPSHOT_PREFIX.length(), separator));
+            long id = Long.parseLong(key.substring(separator + 1));
+            long createdAt = in.readLong();
+            String hash = LocalInventoryStore.readString(in);
+            String reason = LocalInventoryStore.readString(in);
+            return new HistorySnapshot(id, uuid, createdAt, hash, reason, in.readBoolean());
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.maks.playerdataplugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Inventory storage in the embedded {@link LogStructuredStore}. The store belongs to a single server,
+ * so leases always succeed.
+ */
+public class LocalInventoryStore implements InventoryStore {
+
+    private static final String KEY_PREFIX = "inventory:";
+    private static final String ISSUE_PREFIX = "integrity:";
+    private static final int STATE_MARKER = -2;
+
+    private final LogStructuredStore store;
+
+    public LocalInventoryStore(LogStructuredStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void initialize() {
+        // Nothing to create, the log is opened by DatabaseManager
+    }
+
+    @Override
+    public Map<UUID, StoredInventory> loadAll(List<UUID> uuids) throws SQLException {
+        Map<UUID, StoredInventory> result = new HashMap<>();
+        for (UUID uuid : uuids) {
+            byte[] value = store.get(KEY_PREFIX + uuid);
+            if (value != null) {
+                result.put(uuid, decode(value));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void scanAll(RowHandler handler) throws SQLException, IOException {
+        for (String key : store.keys(KEY_PREFIX)) {
+            byte[] value = store.get(key);
+            if (value != null) {
+                handler.accept(UUID.fromString(key.substring(KEY_PREFIX.length())), decode(value));
+            }
+        }
+    }
+
+    @Override
+    public Map<UUID, StoredInventory> loadAfter(UUID after, int limit) {
+        Map<UUID, StoredInventory> result = new LinkedHashMap<>();
+        for (String key : store.keysAfter(KEY_PREFIX, after == null ? null : KEY_PREFIX + after, limit)) {
+            byte[] value = store.get(key);
+            if (value == null) {
+                continue;
+            }
+            StoredInventory inventory;
+            try {
+                inventory = decode(value);
+            } catch (SQLException e) {
+                inventory = null;
+            }
+            result.put(UUID.fromString(key.substring(KEY_PREFIX.length())), inventory);
+        }
+        return result;
+    }
+
+    @Override
+    public void reportIssue(IntegrityIssue issue) throws SQLException {
+        try {
+            BufferPool.Buffer record = BufferPool.acquire();
+            try {
+                try (DataOutputStream out = new DataOutputStream(record)) {
+                    writeString(out, issue.getSeverity().name());
+                    out.writeLong(issue.getVersion());
+                    writeString(out, issue.getDetail());
+                    out.writeLong(issue.getCheckedAt());
+                }
+                store.put(ISSUE_PREFIX + issue.getUuid(), record.array(), 0, record.size());
+            } finally {
+                BufferPool.release(record);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to write the integrity report entry of " + issue.getUuid() + " to the local store", e);
+        }
+    }
+
+    @Override
+    public void clearIssues(Collection<UUID> uuids) throws SQLException {
+        try {
+            for (UUID uuid : uuids) {
+                store.delete(ISSUE_PREFIX + uuid);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to clear integrity report entries in the local store", e);
+        }
+    }
+
+    @Override
+    public List<IntegrityIssue> listIssues(int limit) throws SQLException {
+        List<IntegrityIssue> result = new ArrayList<>();
+        for (String key : store.keys(ISSUE_PREFIX)) {
+            byte[] value = store.get(key);
+            if (value == null) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+                result.add(new IntegrityIssue(UUID.fromString(key.substring(ISSUE_PREFIX.length())),
+                        IntegrityIssue.Severity.valueOf(readString(in)), in.readLong(), readString(in), in.readLong()));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new SQLException("Corrupt integrity report entry in the local store", e);
+            }
+        }
+        result.sort(Comparator.comparing(IntegrityIssue::getSeverity)
+                .thenComparing(Comparator.comparingLong(IntegrityIssue::getCheckedAt).reversed()));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    @Override
+    public synchronized Set<UUID> importAll(Map<UUID, StoredInventory> inventories, String owner) throws SQLException {
+        for (Map.Entry<UUID, StoredInventory> entry : inventories.entrySet()) {
+            write(entry.getKey(), entry.getValue(), Math.max(readVersion(entry.getKey()), entry.getValue().getVersion()) + 1);
+        }
+        return Collections.emptySet();
+    }
+
+    @Override
+    public synchronized void deleteAll(Collection<UUID> uuids) throws SQLException {
+        try {
+            for (UUID uuid : uuids) {
+                store.delete(KEY_PREFIX + uuid);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to delete inventories from the local store", e);
+        }
+    }
+
+    @Override
+    public synchronized long save(UUID uuid, StoredInventory inventory, String leaseOwner, int leaseSeconds, boolean releaseLease) throws SQLException {
+        return write(uuid, inventory, readVersion(uuid) + 1);
+    }
+
+    private long write(UUID uuid, StoredInventory inventory, long version) throws SQLException {
+        try {
+            BufferPool.Buffer record = BufferPool.acquire();
+            try {
+                encode(record, inventory.toStateBytes(), version);
+                store.put(KEY_PREFIX + uuid, record.array(), 0, record.size());
+            } finally {
+                BufferPool.release(record);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to write inventory of " + uuid + " to the local store", e);
+        }
+        return version;
+    }
+
+    @Override
+    public synchronized long saveIfUnchanged(UUID uuid, StoredInventory inventory, long expectedVersion, String owner) throws SQLException {
+        return readVersion(uuid) == expectedVersion ? save(uuid, inventory, owner, 0, false) : -1L;
+    }
+
+    @Override
+    public boolean tryAcquireLease(UUID uuid, String owner, int leaseSeconds) {
+        return true;
+    }
+
+    @Override
+    public void releaseLease(UUID uuid, String owner) {
+    }
+
+    @Override
+    public int renewLeases(Collection<UUID> uuids, String owner, int leaseSeconds) {
+        return uuids.size();
+    }
+
+    @Override
+    public int releaseAllLeases(String owner) {
+        return 0;
+    }
+
+    @Override
+    public long readVersion(UUID uuid) throws SQLException {
+        byte[] value = store.get(KEY_PREFIX + uuid);
+        return value == null ? 0L : decode(value).getVersion();
+    }
+
+    // The marker takes the place of the old inventory string length, which was never below -1
+    private static void encode(BufferPool.Buffer record, byte[] state, long version) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            out.writeLong(version);
+            out.writeInt(STATE_MARKER);
+            out.writeInt(state.length);
+            out.write(state);
+        }
+    }
+
+    private static StoredInventory decode(byte[] value) throws SQLException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            long version = in.readLong();
+            int marker = in.readInt();
+            if (marker == STATE_MARKER) {
+                byte[] state = new byte[in.readInt()];
+                in.readFully(state);
+                return new StoredInventory(state, version);
+            }
+
+            // Record in the old inventory/armor format, the marker was the inventory string length
+            String inventoryData = null;
+            if (marker >= 0) {
+                byte[] bytes = new byte[marker];
+                in.readFully(bytes);
+                inventoryData = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return StoredInventory.legacy(inventoryData, readString(in), version);
+        } catch (IOException e) {
+            throw new SQLException("Corrupt inventory record in the local store", e);
+        }
+    }
+
+    // Strings are length-prefixed because writeUTF is limited to 64KB
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
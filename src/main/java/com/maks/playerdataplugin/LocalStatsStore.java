@@ -0,0 +1,135 @@
+package com.maks.playerdataplugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stats storage in the embedded {@link LogStructuredStore}, with an in-memory username index.
+ */
+public class LocalStatsStore implements StatsStore {
+
+    private static final String KEY_PREFIX = "stats:";
+
+    private final LogStructuredStore store;
+    private final Map<String, UUID> usernames = new ConcurrentHashMap<>();
+
+    public LocalStatsStore(LogStructuredStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        // Build the username index from the stored records
+        store.forEach(KEY_PREFIX, (key, value) -> {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+                String username = LocalInventoryStore.readString(in);
+                if (username != null) {
+                    usernames.put(username.toLowerCase(Locale.ROOT), UUID.fromString(key.substring(KEY_PREFIX.length())));
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // Skip unreadable records, loading that player reports the problem
+            }
+        });
+    }
+
+    @Override
+    public Map<UUID, PlayerStatsManager.PlayerStats> loadAll(List<UUID> uuids) throws SQLException {
+        Map<UUID, PlayerStatsManager.PlayerStats> result = new HashMap<>();
+        for (UUID uuid : uuids) {
+            byte[] value = store.get(KEY_PREFIX + uuid);
+            if (value == null) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+                LocalInventoryStore.readString(in); // Username
+                result.put(uuid, new PlayerStatsManager.PlayerStats(
+                        in.readInt(), in.readInt(), in.readInt(), in.readDouble(), in.readDouble()));
+            } catch (IOException e) {
+                throw new SQLException("Corrupt stats record for " + uuid + " in the local store", e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void scanAll(RowHandler handler) throws SQLException, IOException {
+        for (String key : store.keys(KEY_PREFIX)) {
+            byte[] value = store.get(key);
+            if (value == null) {
+                continue;
+            }
+            UUID uuid = UUID.fromString(key.substring(KEY_PREFIX.length()));
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+                String username = LocalInventoryStore.readString(in);
+                handler.accept(uuid, username, new PlayerStatsManager.PlayerStats(
+                        in.readInt(), in.readInt(), in.readInt(), in.readDouble(), in.readDouble()));
+            } catch (EOFException e) {
+                throw new SQLException("Corrupt stats record for " + uuid + " in the local store", e);
+            }
+        }
+    }
+
+    @Override
+    public void importAll(Map<UUID, PlayerStatsManager.PlayerStats> stats, Map<UUID, String> usernames) throws SQLException {
+        for (Map.Entry<UUID, PlayerStatsManager.PlayerStats> entry : stats.entrySet()) {
+            save(entry.getKey(), usernames.get(entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Override
+    public void save(UUID uuid, String username, PlayerStatsManager.PlayerStats stats) throws SQLException {
+        BufferPool.Buffer bytes = BufferPool.acquire();
+        try {
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                LocalInventoryStore.writeString(out, username);
+                out.writeInt(stats.getMobsKilled());
+                out.writeInt(stats.getPlayersKilled());
+                out.writeInt(stats.getDeaths());
+                out.writeDouble(stats.getPlaytimeHours());
+                out.writeDouble(stats.getBalance());
+            } catch (IOException e) {
+                throw new SQLException("Failed to encode stats of " + uuid, e);
+            }
+
+            try {
+                store.put(KEY_PREFIX + uuid, bytes.array(), 0, bytes.size());
+            } catch (IOException e) {
+                throw new SQLException("Failed to write stats of " + uuid + " to the local store", e);
+            }
+        } finally {
+            BufferPool.release(bytes);
+        }
+
+        if (username != null) {
+            usernames.put(username.toLowerCase(Locale.ROOT), uuid);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> uuids) throws SQLException {
+        try {
+            for (UUID uuid : uuids) {
+                store.delete(KEY_PREFIX + uuid);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to delete stats from the local store", e);
+        }
+        usernames.values().removeAll(uuids);
+    }
+
+    @Override
+    public UUID findUuidByUsername(String username) {
+        return usernames.get(username.toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,490 @@
+package com.maks.playerdataplugin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded append-only key/value log backed by a memory-mapped file.
+ * Every put or delete appends a record and an in-memory index, sorted by key, points at the latest
+ * record per key, so reads are a single copy out of the mapping and prefix scans only visit their keys. Superseded records are dropped by background
+ * compaction, which rewrites the live records into a fresh file and swaps it in.
+ *
+ * Record layout: [int length][int crc32][byte type][short keyLength][key][value],
+ * where length and crc cover everything after the crc field. A zero length marks the end of the log.
+ */
+public class LogStructuredStore implements Closeable {
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 16 * 1024 * 1024;
+    private static final long COMPACTION_CHECK_SECONDS = 30;
+
+    // Location of the latest record for a key
+    private static class Entry {
+        final int offset;
+        final int recordSize;
+        final int valueOffset;
+        final int valueLength;
+
+        Entry(int offset, int recordSize, int valueOffset, int valueLength) {
+            this.offset = offset;
+            this.recordSize = recordSize;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+
+        Entry shift(int newOffset) {
+            return new Entry(newOffset, recordSize, valueOffset - offset + newOffset, valueLength);
+        }
+    }
+
+    private final File file;
+    private final Logger logger;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private TreeMap<String, Entry> index = new TreeMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+    private long liveBytes;
+    private boolean dirty;
+
+    private ScheduledExecutorService maintenance;
+
+    public LogStructuredStore(File file, Logger logger) throws IOException {
+        this.file = file;
+        this.logger = logger;
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+
+        reopen();
+        recover();
+    }
+
+    // Opens and maps the store file, at least INITIAL_CAPACITY bytes of it
+    private void reopen() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Store file " + file + " is larger than 2GB");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, (int) size));
+    }
+
+    /**
+     * Releases a mapping right away instead of when it is garbage collected, so the file can be replaced
+     * on Windows. The buffer must not be touched afterwards. Without access to the cleaner the mapping is
+     * left to the garbage collector.
+     */
+    static void unmap(MappedByteBuffer mapping) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), mapping);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Fall through to the Java 8 cleaner
+        }
+        try {
+            Method cleanerMethod = mapping.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mapping);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+
+    // Rebuilds the index by scanning the log, stopping at the first torn or corrupt record
+    private void recover() {
+        int capacity = buffer.capacity();
+        int position = 0;
+        int records = 0;
+
+        while (position + HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > capacity) {
+                break;
+            }
+
+            byte[] body = new byte[length];
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(position + HEADER_SIZE);
+            reader.get(body);
+
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                logger.warning("Store " + file.getName() + " has a corrupt record at offset " + position + ", discarding the rest of the log");
+                break;
+            }
+
+            ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+            byte type = bodyBuffer.get();
+            int keyLength = bodyBuffer.getShort() & 0xFFFF;
+            String key = new String(body, 3, keyLength, StandardCharsets.UTF_8);
+            int recordSize = HEADER_SIZE + length;
+
+            if (type == TYPE_PUT) {
+                int valueOffset = position + HEADER_SIZE + 3 + keyLength;
+                apply(key, new Entry(position, recordSize, valueOffset, length - 3 - keyLength));
+            } else {
+                apply(key, null);
+            }
+
+            position += recordSize;
+            records++;
+        }
+
+        writePosition = position;
+
+        // Zero whatever follows the last valid record, so orphaned pages from a crash can't be replayed later
+        ByteBuffer zeroes = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer writer = buffer.duplicate();
+        writer.position(writePosition);
+        while (writer.remaining() > 0) {
+            zeroes.clear();
+            zeroes.limit(Math.min(zeroes.capacity(), writer.remaining()));
+            writer.put(zeroes);
+        }
+        buffer.force();
+
+        logger.info("Opened local store " + file.getName() + ": " + index.size() + " keys, " + records + " records, " +
+                (writePosition / 1024) + " KB used");
+    }
+
+    // Must be called while holding the write lock (or during recovery)
+    private void apply(String key, Entry entry) {
+        Entry previous = entry == null ? index.remove(key) : index.put(key, entry);
+        if (previous != null) {
+            liveBytes -= previous.recordSize;
+        }
+        if (entry != null) {
+            liveBytes += entry.recordSize;
+        }
+    }
+
+    public byte[] get(String key) {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            byte[] value = new byte[entry.valueLength];
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(entry.valueOffset);
+            reader.get(value);
+            return value;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, byte[] value) throws IOException {
+        append(TYPE_PUT, key, value, 0, value.length);
+    }
+
+    /**
+     * Stores a range of the array, so callers encoding into a reused buffer don't have to copy it out first.
+     */
+    public void put(String key, byte[] value, int valueOffset, int valueLength) throws IOException {
+        append(TYPE_PUT, key, value, valueOffset, valueLength);
+    }
+
+    public void delete(String key) throws IOException {
+        append(TYPE_DELETE, key, new byte[0], 0, 0);
+    }
+
+    private void append(byte type, String key, byte[] value, int valueOffset, int valueLength) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IOException("Key is too long: " + key);
+        }
+
+        // The checksum covers type, key length, key and value, fed piece by piece instead of from a copied body
+        int length = 3 + keyBytes.length + valueLength;
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update((keyBytes.length >>> 8) & 0xFF);
+        crc.update(keyBytes.length & 0xFF);
+        crc.update(keyBytes, 0, keyBytes.length);
+        crc.update(value, valueOffset, valueLength);
+
+        lock.writeLock().lock();
+        try {
+            if (type == TYPE_DELETE && !index.containsKey(key)) {
+                return;
+            }
+
+            int recordSize = HEADER_SIZE + length;
+            ensureCapacity(recordSize);
+
+            int offset = writePosition;
+            ByteBuffer writer = buffer.duplicate();
+            writer.position(offset + 4);
+            writer.putInt((int) crc.getValue());
+            writer.put(type).putShort((short) keyBytes.length).put(keyBytes).put(value, valueOffset, valueLength);
+            // Length last, so a record only becomes visible to recovery once it is complete
+            buffer.putInt(offset, length);
+
+            writePosition += recordSize;
+            dirty = true;
+            apply(key, type == TYPE_PUT
+                    ? new Entry(offset, recordSize, offset + HEADER_SIZE + 3 + keyBytes.length, valueLength)
+                    : null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Must be called while holding the write lock
+    private void ensureCapacity(int recordSize) throws IOException {
+        long required = (long) writePosition + recordSize + HEADER_SIZE; // Room for the end-of-log marker
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        if (required > Integer.MAX_VALUE) {
+            throw new IOException("Local store " + file.getName() + " is full");
+        }
+        long newCapacity = Math.min(Integer.MAX_VALUE, Math.max(required, (long) buffer.capacity() * 2));
+        MappedByteBuffer previous = buffer;
+        previous.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+        unmap(previous);
+    }
+
+    /**
+     * Calls the consumer with every live key starting with the prefix and its value.
+     */
+    public void forEach(String prefix, BiConsumer<String, byte[]> consumer) {
+        Map<String, byte[]> matches = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Entry> entry : withPrefix(prefix).entrySet()) {
+                byte[] value = new byte[entry.getValue().valueLength];
+                ByteBuffer reader = buffer.duplicate();
+                reader.position(entry.getValue().valueOffset);
+                reader.get(value);
+                matches.put(entry.getKey(), value);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.forEach(consumer);
+    }
+
+    /**
+     * The keys with the prefix at the time of the call, without their values, for scans that read
+     * one value at a time.
+     */
+    public List<String> keys(String prefix) {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(withPrefix(prefix).keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to limit keys with the prefix in key order, starting after the given key (null for the first),
+     * so paged scans only walk the page they return.
+     */
+    public List<String> keysAfter(String prefix, String after, int limit) {
+        List<String> keys = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            NavigableMap<String, Entry> range = withPrefix(prefix);
+            if (after != null) {
+                range = range.tailMap(after, false);
+            }
+            for (String key : range.keySet()) {
+                if (keys.size() >= limit) {
+                    break;
+                }
+                keys.add(key);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return keys;
+    }
+
+    // Must be called while holding a lock. Every key with the prefix sorts between it and the prefix followed by the highest char
+    private NavigableMap<String, Entry> withPrefix(String prefix) {
+        return index.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * Flushes written records to disk.
+     */
+    public void sync() {
+        lock.writeLock().lock();
+        try {
+            if (dirty) {
+                buffer.force();
+                dirty = false;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the live records into a new file when at least the given share of the log is garbage.
+     * Writers wait while the live records are copied; readers of the old mapping are never blocked for long.
+     */
+    public boolean compactIfNeeded(double garbageRatio, long minBytes) {
+        lock.writeLock().lock();
+        try {
+            long garbage = writePosition - liveBytes;
+            if (writePosition < minBytes || garbage < writePosition * garbageRatio) {
+                return false;
+            }
+            compact();
+            return true;
+        } catch (IOException e) {
+            logger.warning("Compaction of local store " + file.getName() + " failed: " + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Must be called while holding the write lock
+    private void compact() throws IOException {
+        long started = System.nanoTime();
+        int before = writePosition;
+        File compacted = new File(file.getPath() + ".compact");
+        int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(INITIAL_CAPACITY, liveBytes * 2 + HEADER_SIZE));
+
+        TreeMap<String, Entry> newIndex = new TreeMap<>();
+        int position = 0;
+        FileChannel newChannel = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            ByteBuffer writer = newBuffer.duplicate();
+
+            // Live records are copied verbatim, so their checksums stay valid
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                Entry live = entry.getValue();
+                ByteBuffer record = buffer.duplicate();
+                record.position(live.offset);
+                record.limit(live.offset + live.recordSize);
+                writer.put(record);
+                newIndex.put(entry.getKey(), live.shift(position));
+                position += live.recordSize;
+            }
+            newBuffer.force();
+            unmap(newBuffer);
+        } catch (IOException e) {
+            newChannel.close();
+            compacted.delete();
+            throw e;
+        }
+        newChannel.close();
+
+        // Windows can't replace a file that is still mapped, so both mappings go before the move and the store reopens after it
+        buffer.force();
+        unmap(buffer);
+        buffer = null;
+        channel.close();
+        try {
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The original file is untouched, continue on it
+            compacted.delete();
+            reopen();
+            throw e;
+        }
+        reopen();
+        index = newIndex;
+        writePosition = position;
+        dirty = false;
+
+        logger.info("Compacted local store " + file.getName() + " from " + (before / 1024) + " KB to " +
+                (writePosition / 1024) + " KB in " + ((System.nanoTime() - started) / 1_000_000) + "ms");
+    }
+
+    /**
+     * Starts the background thread that periodically syncs the mapping to disk and compacts the log.
+     */
+    public void startMaintenance(long syncIntervalMs, double garbageRatio, long minCompactionBytes) {
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "PlayerDataPlugin-local-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::sync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(() -> compactIfNeeded(garbageRatio, minCompactionBytes),
+                COMPACTION_CHECK_SECONDS, COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getMetrics() {
+        lock.readLock().lock();
+        try {
+            return "local store: " + index.size() + " keys, " + (liveBytes / 1024) + " KB live of " +
+                    (writePosition / 1024) + " KB log";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
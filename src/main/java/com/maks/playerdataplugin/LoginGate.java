@@ -0,0 +1,78 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.ChatColor;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+
+/**
+ * Holds logins while the persistence layer can't serve them (still starting up, or the database is
+ * down), so players don't spawn with an inventory that can't be loaded. Runs on the async login thread, so waiting here never blocks a tick.
+ */
+public class LoginGate implements Listener {
+
+    private static final long POLL_INTERVAL_MS = 250;
+
+    private final Main plugin;
+    private final boolean holdDuringOutage;
+    private final long holdTimeoutMs;
+    private final String outageMessage;
+    private final long startupTimeoutMs;
+    private final String startupMessage;
+
+    public LoginGate(Main plugin) {
+        this.plugin = plugin;
+        this.holdDuringOutage = plugin.getConfig().getBoolean("degraded.holdJoins", true);
+        this.holdTimeoutMs = plugin.getConfig().getLong("degraded.holdJoinsTimeoutMs", 10000);
+        this.outageMessage = ChatColor.translateAlternateColorCodes('&',
+                plugin.getConfig().getString("degraded.holdJoinsMessage", "&cPlayer data is temporarily unavailable, please try again in a moment."));
+        this.startupTimeoutMs = plugin.getConfig().getLong("startup.holdJoinsTimeoutMs", 30000);
+        this.startupMessage = ChatColor.translateAlternateColorCodes('&',
+                plugin.getConfig().getString("startup.holdJoinsMessage", "&cThe server is still starting up, please try again in a moment."));
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        // The database is still being opened by the async startup, nothing could be loaded yet
+        PersistenceStartup startup = plugin.getPersistenceStartup();
+        if (!startup.isReady()) {
+            plugin.getLogger().info("Holding login of " + event.getName() + " until the persistence layer is ready");
+            if (!startup.awaitReady(startupTimeoutMs)) {
+                event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, startupMessage);
+                plugin.getLogger().warning("Denied login of " + event.getName() + ", the persistence layer is still starting");
+                return;
+            }
+        }
+
+        if (!holdDuringOutage) {
+            return;
+        }
+
+        CircuitBreaker circuitBreaker = plugin.getDatabaseManager().getCircuitBreaker();
+        if (!circuitBreaker.isOpen()) {
+            return;
+        }
+
+        plugin.getLogger().info("Holding login of " + event.getName() + " while the database is unavailable");
+        long deadline = System.currentTimeMillis() + holdTimeoutMs;
+        // Probing lets the breaker go half-open even when no other traffic is reaching the database
+        while (!plugin.getDatabaseManager().probe() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (circuitBreaker.isOpen()) {
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, outageMessage);
+            plugin.getLogger().warning("Denied login of " + event.getName() + ", database is still unavailable");
+        }
+    }
+}
@@ -4,12 +4,24 @@ import com.maks.playerdataplugin.DatabaseManager;
 import com.maks.playerdataplugin.PlayerDataListener;
 import com.maks.playerdataplugin.PlayerStatsManager;
 import com.maks.playerdataplugin.PlayerStatsListener;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
 public class Main extends JavaPlugin {
 
     private static Main instance;
+    private TaskScheduler taskScheduler;
+    private TraceBuffer traceBuffer;
     private DatabaseManager databaseManager;
+    private DatabaseExecutor databaseExecutor;
+    private PersistenceStartup persistenceStartup;
+    private HandoffCoordinator handoffCoordinator;
+    private SnapshotHistory snapshotHistory;
+    private OfflineInventories offlineInventories;
+    private IntegrityScanner integrityScanner;
+    private SaveScheduler saveScheduler;
+    private CadenceController cadenceController;
+    private long ticksSinceStatsSave = 0;
     private PlayerDataListener playerDataListener;
     private PlayerStatsManager playerStatsManager;
     private PlayerStatsListener playerStatsListener;
@@ -17,21 +29,28 @@ public class Main extends JavaPlugin {
     @Override
     public void onEnable() {
         instance = this;
+        // Regionized schedulers on Folia, the main thread scheduler everywhere else
+        taskScheduler = TaskScheduler.create(this);
 
         // Disable saving player data to disk
         getServer().getWorlds().forEach(world -> world.setAutoSave(false));
 
         // Save default config if needed
         saveDefaultConfig();
+        traceBuffer = new TraceBuffer(this);
 
-        // Initialize the database manager
+        // Initialize the database manager, the connection itself is opened by the async startup below
         databaseManager = new DatabaseManager(this);
-        databaseManager.connect();
+        databaseExecutor = new DatabaseExecutor(this, databaseManager.getMaxConnections());
+        persistenceStartup = new PersistenceStartup(this);
+        handoffCoordinator = new HandoffCoordinator(this);
+        snapshotHistory = new SnapshotHistory(this);
+        offlineInventories = new OfflineInventories(this);
+        integrityScanner = new IntegrityScanner(this);
 
         // Initialize stats manager
         try {
             playerStatsManager = new PlayerStatsManager(this);
-            playerStatsManager.createStatsTable();
             getLogger().info("Player stats system initialized.");
         } catch (Exception e) {
             getLogger().severe("Failed to initialize player stats system: " + e.getMessage());
@@ -39,6 +58,8 @@ public class Main extends JavaPlugin {
         }
 
         // Register event listeners
+        getServer().getPluginManager().registerEvents(new LoginGate(this), this);
+
         playerDataListener = new PlayerDataListener(this);
         getServer().getPluginManager().registerEvents(playerDataListener, this);
 
@@ -52,52 +73,85 @@ public class Main extends JavaPlugin {
             getCommand("stats").setTabCompleter(statsCommand);
         }
 
-        // Get save interval and batch size from config
+        // Lets other plugins read stats and wait for loads without polling or querying the tables themselves
+        getServer().getServicesManager().register(PlayerDataService.class, new CachedPlayerDataService(this), this, ServicePriority.Normal);
+
+        AdminCommand adminCommand = new AdminCommand(this);
+        getCommand("playerdata").setExecutor(adminCommand);
+        getCommand("playerdata").setTabCompleter(adminCommand);
+
+        InvseeCommand invseeCommand = new InvseeCommand(this);
+        getCommand("invsee").setExecutor(invseeCommand);
+        getCommand("invsee").setTabCompleter(invseeCommand);
+        getServer().getPluginManager().registerEvents(invseeCommand, this);
+
+        // Get save interval from config
         long saveIntervalTicks = getConfig().getLong("saveInterval.ticks", 1200L); // Default: 1 minute (1200 ticks)
-        int batchSizePercent = getConfig().getInt("saveInterval.batchSizePercent", 20); // Default: 20% of players per batch
 
         // Get stats save interval from config
         long statsSaveIntervalTicks = getConfig().getLong("statsInterval.ticks", 6000L); // Default: 5 minutes (6000 ticks)
 
         if (getConfig().getBoolean("debug", false)) {
-            getLogger().info("[DEBUG] Scheduled saving with interval: " + saveIntervalTicks + " ticks, batch size: " + batchSizePercent + "%");
+            getLogger().info("[DEBUG] Scheduled saving with interval: " + saveIntervalTicks + " ticks");
             getLogger().info("[DEBUG] Stats saving interval: " + statsSaveIntervalTicks + " ticks");
         }
 
-        // Schedule staggered periodic saving for inventory data
-        final int[] saveIndex = {0};
-        getServer().getScheduler().runTaskTimer(this, () -> {
-            java.util.List<org.bukkit.entity.Player> players = new java.util.ArrayList<>(getServer().getOnlinePlayers());
-            if (players.isEmpty()) return;
+        // Spread periodic inventory saves evenly over the interval, each player in a stable tick slot
+        saveScheduler = new SaveScheduler(this, saveIntervalTicks);
+        getServer().getPluginManager().registerEvents(saveScheduler, this);
 
-            // Calculate how many players to save in this batch
-            int playersPerBatch = Math.max(1, (int)(players.size() * (batchSizePercent / 100.0)));
-            int start = saveIndex[0];
-            int end = Math.min(start + playersPerBatch, players.size());
+        // Stretch or shrink both save intervals with the server's tick time and the database's latency
+        cadenceController = new CadenceController(this, saveIntervalTicks, statsSaveIntervalTicks);
 
-            if (getConfig().getBoolean("debug", false)) {
-                getLogger().info("[DEBUG] Saving players " + start + " to " + (end-1) + " of " + players.size() + 
-                                " (batch size: " + playersPerBatch + ")");
-            }
+        // Open the database off the main thread, logins are held by the LoginGate until it is ready
+        persistenceStartup.begin(this::activate);
+    }
 
-            for (int i = start; i < end; i++) {
-                org.bukkit.entity.Player player = players.get(i);
-                playerDataListener.savePlayerData(player.getUniqueId(), player.getInventory());
+    // Runs on the first tick after the database is open
+    private void activate() {
+        // Vault resolves here, once every plugin that might register an economy is enabled
+        if (playerStatsManager != null) {
+            long economyStart = System.nanoTime();
+            playerStatsManager.setupEconomy();
+            persistenceStartup.record("vault", System.nanoTime() - economyStart);
+
+            // Vault balances are sampled a few players per tick instead of on every save
+            if (playerStatsManager.getBalanceSampler() != null) {
+                getServer().getPluginManager().registerEvents(playerStatsManager.getBalanceSampler(), this);
+                playerStatsManager.getBalanceSampler().start();
             }
+        }
 
-            saveIndex[0] = (end >= players.size()) ? 0 : end;
-        }, saveIntervalTicks, saveIntervalTicks);
+        snapshotHistory.start();
+        integrityScanner.start();
+        saveScheduler.start();
+        cadenceController.start();
+
+        // Keep the data leases of online players alive for other servers sharing the database
+        if (handoffCoordinator.isEnabled()) {
+            long leaseRenewTicks = handoffCoordinator.getLeaseSeconds() * 20L / 3;
+            taskScheduler.runGlobalTimer(handoffCoordinator::renewLeases, leaseRenewTicks, leaseRenewTicks);
+        }
 
-        // Schedule periodic stats saving
+        // Schedule periodic stats saving, checked every second against the current cadence
         if (playerStatsListener != null) {
-            getServer().getScheduler().runTaskTimer(this, () -> {
+            taskScheduler.runGlobalTimer(() -> {
+                ticksSinceStatsSave += 20L;
+                if (ticksSinceStatsSave < cadenceController.getStatsIntervalTicks()) {
+                    return;
+                }
+                ticksSinceStatsSave = 0;
                 if (getConfig().getBoolean("debug", false)) {
                     getLogger().info("[DEBUG] Running periodic stats save for all online players");
                 }
                 playerStatsListener.saveAllOnlinePlayersStats();
-            }, statsSaveIntervalTicks, statsSaveIntervalTicks);
+            }, 20L, 20L);
         }
 
+        // Take ownership of players who are already online (in case of reload)
+        getServer().getOnlinePlayers().forEach(player ->
+                handoffCoordinator.acquire(player.getUniqueId(), player.getName()));
+
         // Load stats for players who are already online (in case of reload)
         if (playerStatsManager != null) {
             getServer().getOnlinePlayers().forEach(player -> {
@@ -109,19 +163,42 @@ public class Main extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        // Save all online players' inventory data
-        getServer().getOnlinePlayers().forEach(player -> {
-            playerDataListener.savePlayerData(player.getUniqueId(), player.getInventory());
-        });
+        getServer().getServicesManager().unregisterAll(this);
+        cadenceController.stop();
+        saveScheduler.stop();
+
+        // Save all online players' inventory data, releasing their leases for other servers
+        playerDataListener.saveAllOnDisable(5000L);
 
         // Save all online players' stats and stop playtime tracking
         if (playerStatsManager != null) {
+            if (playerStatsManager.getBalanceSampler() != null) {
+                playerStatsManager.getBalanceSampler().stop();
+            }
             getServer().getOnlinePlayers().forEach(player -> {
                 playerStatsManager.stopPlaytimeTracking(player.getUniqueId());
                 playerStatsManager.savePlayerStats(player.getUniqueId());
             });
         }
 
+        snapshotHistory.stop();
+        integrityScanner.stop();
+
+        // Resolve any loads still waiting for their batch window
+        playerDataListener.getInventoryLoader().shutdown();
+        if (playerStatsManager != null) {
+            playerStatsManager.getStatsLoader().shutdown();
+        }
+
+        // Let database work still in flight finish, saves running on virtual threads must land before the leases go
+        databaseExecutor.shutdown();
+
+        // Last chance for writes queued during an outage, they must land before the leases are released
+        if (persistenceStartup.isReady()) {
+            databaseManager.getWriteBacklog().flush();
+            handoffCoordinator.releaseAll();
+        }
+
         // Disconnect from the database
         databaseManager.disconnect();
     }
@@ -130,10 +207,54 @@ public class Main extends JavaPlugin {
         return instance;
     }
 
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+
+    public TraceBuffer getTraceBuffer() {
+        return traceBuffer;
+    }
+
     public DatabaseManager getDatabaseManager() {
         return databaseManager;
     }
 
+    public DatabaseExecutor getDatabaseExecutor() {
+        return databaseExecutor;
+    }
+
+    public PersistenceStartup getPersistenceStartup() {
+        return persistenceStartup;
+    }
+
+    public HandoffCoordinator getHandoffCoordinator() {
+        return handoffCoordinator;
+    }
+
+    public SnapshotHistory getSnapshotHistory() {
+        return snapshotHistory;
+    }
+
+    public OfflineInventories getOfflineInventories() {
+        return offlineInventories;
+    }
+
+    public IntegrityScanner getIntegrityScanner() {
+        return integrityScanner;
+    }
+
+    public SaveScheduler getSaveScheduler() {
+        return saveScheduler;
+    }
+
+    public CadenceController getCadenceController() {
+        return cadenceController;
+    }
+
+    public PlayerDataListener getPlayerDataListener() {
+        return playerDataListener;
+    }
+
     public PlayerStatsManager getPlayerStatsManager() {
         return playerStatsManager;
     }
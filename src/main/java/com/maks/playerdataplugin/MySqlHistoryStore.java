@@ -0,0 +1,228 @@
+package com.maks.playerdataplugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Inventory history in the player_data_history and player_data_blobs MySQL tables.
+ */
+public class MySqlHistoryStore implements HistoryStore {
+
+    private final DatabaseManager databaseManager;
+
+    public MySqlHistoryStore(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        try (Connection connection = databaseManager.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "CREATE TABLE IF NOT EXISTS player_data_blobs (" +
+                            "hash CHAR(64) PRIMARY KEY," +
+                            "data MEDIUMBLOB NOT NULL" +
+                            ");")) {
+                statement.execute();
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "CREATE TABLE IF NOT EXISTS player_data_history (" +
+                            "id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                            "uuid VARCHAR(36) NOT NULL," +
+                            "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                            "blob_hash CHAR(64) NOT NULL," +
+                            "reason VARCHAR(32)," +
+                            "checkpoint BOOLEAN NOT NULL DEFAULT FALSE," +
+                            "INDEX idx_history_player (uuid, id)," +
+                            "INDEX idx_history_blob (blob_hash)" +
+                            ");")) {
+                statement.execute();
+            }
+        }
+    }
+
+    @Override
+    public HistorySnapshot latest(UUID uuid, boolean checkpointOnly) throws SQLException {
+        String sql = "SELECT id, created_at, blob_hash, reason, checkpoint FROM player_data_history WHERE uuid=?" +
+                (checkpointOnly ? " AND checkpoint=TRUE" : "") + " ORDER BY id DESC LIMIT 1";
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, uuid.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? readSnapshot(uuid, rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public void append(UUID uuid, String hash, byte[] blob, String reason, boolean checkpoint) throws SQLException {
+        try (Connection conn = databaseManager.getConnection()) {
+            // One transaction, so pruning can't remove the blob between the two inserts
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT IGNORE INTO player_data_blobs (hash, data) VALUES (?, ?)")) {
+                    stmt.setString(1, hash);
+                    stmt.setBytes(2, blob);
+                    stmt.executeUpdate();
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO player_data_history (uuid, blob_hash, reason, checkpoint) VALUES (?, ?, ?, ?)")) {
+                    stmt.setString(1, uuid.toString());
+                    stmt.setString(2, hash);
+                    stmt.setString(3, reason);
+                    stmt.setBoolean(4, checkpoint);
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public List<HistorySnapshot> list(UUID uuid, int offset, int limit) throws SQLException {
+        List<HistorySnapshot> result = new ArrayList<>();
+        try (Connection conn = databaseManager.getConnection(DatabaseManager.Workload.INTERACTIVE);
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT id, created_at, blob_hash, reason, checkpoint FROM player_data_history " +
+                             "WHERE uuid=? ORDER BY id DESC LIMIT ? OFFSET ?")) {
+            stmt.setString(1, uuid.toString());
+            stmt.setInt(2, limit);
+            stmt.setInt(3, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(readSnapshot(uuid, rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public HistorySnapshot get(UUID uuid, long id) throws SQLException {
+        try (Connection conn = databaseManager.getConnection(DatabaseManager.Workload.INTERACTIVE);
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT id, created_at, blob_hash, reason, checkpoint FROM player_data_history WHERE uuid=? AND id=?")) {
+            stmt.setString(1, uuid.toString());
+            stmt.setLong(2, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? readSnapshot(uuid, rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public byte[] readBlob(String hash, BlobReader reader) throws SQLException, IOException {
+        try (Connection conn = databaseManager.getConnection(DatabaseManager.Workload.INTERACTIVE);
+             PreparedStatement stmt = conn.prepareStatement("SELECT data FROM player_data_blobs WHERE hash=?")) {
+            stmt.setString(1, hash);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                // Read straight from the row instead of copying the blob out with getBytes first
+                try (InputStream blob = rs.getBinaryStream("data")) {
+                    return reader.read(blob);
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<UUID> playersAfter(UUID after, int limit) throws SQLException {
+        List<UUID> result = new ArrayList<>();
+        // Walks the (uuid, id) index, so every call only touches the next few players
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT DISTINCT uuid FROM player_data_history WHERE uuid > ? ORDER BY uuid LIMIT ?")) {
+            stmt.setString(1, after == null ? "" : after.toString());
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(UUID.fromString(rs.getString("uuid")));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int prune(UUID uuid, int keepLatest, long checkpointCutoff) throws SQLException {
+        try (Connection conn = databaseManager.getConnection()) {
+            // Everything older than the newest keepLatest snapshots is a candidate
+            long oldestKept;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT id FROM player_data_history WHERE uuid=? ORDER BY id DESC LIMIT 1 OFFSET ?")) {
+                stmt.setString(1, uuid.toString());
+                stmt.setInt(2, Math.max(0, keepLatest - 1));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return 0;
+                    }
+                    oldestKept = rs.getLong("id");
+                }
+            }
+
+            String condition = "uuid=? AND id < ? AND (checkpoint=FALSE OR created_at < ?)";
+            Set<String> hashes = new LinkedHashSet<>();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT DISTINCT blob_hash FROM player_data_history WHERE " + condition)) {
+                bindPrune(stmt, uuid, oldestKept, checkpointCutoff);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        hashes.add(rs.getString("blob_hash"));
+                    }
+                }
+            }
+            if (hashes.isEmpty()) {
+                return 0;
+            }
+
+            int deleted;
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM player_data_history WHERE " + condition)) {
+                bindPrune(stmt, uuid, oldestKept, checkpointCutoff);
+                deleted = stmt.executeUpdate();
+            }
+
+            // Blobs can be shared with other snapshots and players, only drop the ones nobody references
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM player_data_blobs WHERE hash=? " +
+                            "AND NOT EXISTS (SELECT 1 FROM player_data_history WHERE blob_hash=?)")) {
+                for (String hash : hashes) {
+                    stmt.setString(1, hash);
+                    stmt.setString(2, hash);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            return deleted;
+        }
+    }
+
+    private void bindPrune(PreparedStatement stmt, UUID uuid, long oldestKept, long checkpointCutoff) throws SQLException {
+        stmt.setString(1, uuid.toString());
+        stmt.setLong(2, oldestKept);
+        stmt.setTimestamp(3, new Timestamp(checkpointCutoff));
+    }
+
+    private HistorySnapshot readSnapshot(UUID uuid, ResultSet rs) throws SQLException {
+        return new HistorySnapshot(rs.getLong("id"), uuid, rs.getTimestamp("created_at").getTime(),
+                rs.getString("blob_hash"), rs.getString("reason"), rs.getBoolean("checkpoint"));
+    }
+}
@@ -0,0 +1,379 @@
+package com.maks.playerdataplugin;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Inventory storage in the player_data_info MySQL table.
+ */
+public class MySqlInventoryStore implements InventoryStore {
+
+    private final DatabaseManager databaseManager;
+
+    public MySqlInventoryStore(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS player_data_info (" +
+                "uuid VARCHAR(36) PRIMARY KEY," +
+                "state MEDIUMBLOB NULL," +
+                "inventory TEXT," +
+                "armor TEXT," +
+                "version BIGINT NOT NULL DEFAULT 0," +
+                "lease_owner VARCHAR(64) NULL," +
+                "lease_expires TIMESTAMP NULL" +
+                ");";
+
+        try (Connection connection = databaseManager.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.execute();
+            }
+
+            // Columns added for multi-server handoff
+            databaseManager.ensureColumn(connection, "player_data_info", "version", "BIGINT NOT NULL DEFAULT 0");
+            databaseManager.ensureColumn(connection, "player_data_info", "lease_owner", "VARCHAR(64) NULL");
+            databaseManager.ensureColumn(connection, "player_data_info", "lease_expires", "TIMESTAMP NULL");
+            // Single player state record, the inventory/armor columns only remain for rows not saved since
+            databaseManager.ensureColumn(connection, "player_data_info", "state", "MEDIUMBLOB NULL");
+
+            // Report of the background integrity scan
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "CREATE TABLE IF NOT EXISTS player_data_integrity (" +
+                            "uuid VARCHAR(36) PRIMARY KEY," +
+                            "severity VARCHAR(16) NOT NULL," +
+                            "version BIGINT NOT NULL," +
+                            "detail VARCHAR(255) NOT NULL," +
+                            "checked_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+                            ");")) {
+                statement.execute();
+            }
+        }
+    }
+
+    @Override
+    public Map<UUID, StoredInventory> loadAll(List<UUID> uuids) throws SQLException {
+        Map<UUID, StoredInventory> result = new HashMap<>();
+        String sql = "SELECT uuid, state, inventory, armor, version FROM player_data_info WHERE uuid IN (" +
+                BatchLoader.placeholders(uuids.size()) + ")";
+
+        try (Connection conn = databaseManager.getConnection(DatabaseManager.Workload.INTERACTIVE);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < uuids.size(); i++) {
+                stmt.setString(i + 1, uuids.get(i).toString());
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(UUID.fromString(rs.getString("uuid")), readInventory(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Rows written before the state column existed are migrated when they are applied
+    private static StoredInventory readInventory(ResultSet rs) throws SQLException {
+        byte[] state = rs.getBytes("state");
+        return state != null ? new StoredInventory(state, rs.getLong("version"))
+                : StoredInventory.legacy(rs.getString("inventory"), rs.getString("armor"), rs.getLong("version"));
+    }
+
+    @Override
+    public void scanAll(RowHandler handler) throws SQLException, IOException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT uuid, state, inventory, armor, version FROM player_data_info",
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Connector/J streams a forward-only result row by row with this fetch size, instead of buffering the whole table
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    StoredInventory inventory = readInventory(rs);
+                    if (!inventory.isEmpty()) {
+                        handler.accept(UUID.fromString(rs.getString("uuid")), inventory);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Map<UUID, StoredInventory> loadAfter(UUID after, int limit) throws SQLException {
+        Map<UUID, StoredInventory> result = new LinkedHashMap<>();
+        // Walks the primary key, so every page costs the same however far into the table it starts
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT uuid, state, inventory, armor, version FROM player_data_info WHERE uuid > ? ORDER BY uuid LIMIT ?")) {
+            stmt.setString(1, after == null ? "" : after.toString());
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(UUID.fromString(rs.getString("uuid")), readInventory(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void reportIssue(IntegrityIssue issue) throws SQLException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "REPLACE INTO player_data_integrity (uuid, severity, version, detail, checked_at) VALUES (?, ?, ?, ?, ?)")) {
+            stmt.setString(1, issue.getUuid().toString());
+            stmt.setString(2, issue.getSeverity().name());
+            stmt.setLong(3, issue.getVersion());
+            stmt.setString(4, issue.getDetail().length() > 255 ? issue.getDetail().substring(0, 255) : issue.getDetail());
+            stmt.setTimestamp(5, new Timestamp(issue.getCheckedAt()));
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public void clearIssues(Collection<UUID> uuids) throws SQLException {
+        if (uuids.isEmpty()) {
+            return;
+        }
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "DELETE FROM player_data_integrity WHERE uuid IN (" + BatchLoader.placeholders(uuids.size()) + ")")) {
+            int index = 1;
+            for (UUID uuid : uuids) {
+                stmt.setString(index++, uuid.toString());
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<IntegrityIssue> listIssues(int limit) throws SQLException {
+        List<IntegrityIssue> result = new ArrayList<>();
+        try (Connection conn = databaseManager.getConnection(DatabaseManager.Workload.INTERACTIVE);
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT uuid, severity, version, detail, checked_at FROM player_data_integrity " +
+                             "ORDER BY severity='CORRUPT' DESC, checked_at DESC LIMIT ?")) {
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new IntegrityIssue(UUID.fromString(rs.getString("uuid")),
+                            IntegrityIssue.Severity.valueOf(rs.getString("severity")), rs.getLong("version"),
+                            rs.getString("detail"), rs.getTimestamp("checked_at").getTime()));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<UUID> importAll(Map<UUID, StoredInventory> inventories, String owner) throws SQLException {
+        Set<UUID> leased = new HashSet<>();
+        if (inventories.isEmpty()) {
+            return leased;
+        }
+        try (Connection conn = databaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Locks the batch's rows, so no lease can be taken between this check and the upsert
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT uuid, lease_owner IS NULL OR lease_owner <=> ? OR lease_expires < NOW() FROM player_data_info " +
+                                "WHERE uuid IN (" + BatchLoader.placeholders(inventories.size()) + ") FOR UPDATE")) {
+                    stmt.setString(1, owner);
+                    int index = 2;
+                    for (UUID uuid : inventories.keySet()) {
+                        stmt.setString(index++, uuid.toString());
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            if (!rs.getBoolean(2)) {
+                                leased.add(UUID.fromString(rs.getString(1)));
+                            }
+                        }
+                    }
+                }
+
+                if (leased.size() < inventories.size()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "INSERT INTO player_data_info (uuid, state, version) VALUES (?, ?, ?) " +
+                                    "ON DUPLICATE KEY UPDATE state=VALUES(state), inventory=NULL, armor=NULL, version=GREATEST(version + 1, VALUES(version))")) {
+                        for (Map.Entry<UUID, StoredInventory> entry : inventories.entrySet()) {
+                            if (leased.contains(entry.getKey())) {
+                                continue;
+                            }
+                            stmt.setString(1, entry.getKey().toString());
+                            stmt.setBytes(2, entry.getValue().toStateBytes());
+                            stmt.setLong(3, entry.getValue().getVersion() + 1);
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return leased;
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> uuids) throws SQLException {
+        if (uuids.isEmpty()) {
+            return;
+        }
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "DELETE FROM player_data_info WHERE uuid IN (" + BatchLoader.placeholders(uuids.size()) + ")")) {
+            int index = 1;
+            for (UUID uuid : uuids) {
+                stmt.setString(index++, uuid.toString());
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public long save(UUID uuid, StoredInventory inventory, String leaseOwner, int leaseSeconds, boolean releaseLease) throws SQLException {
+        // LAST_INSERT_ID(expr) hands the new version back on this connection, read atomically with the write
+        try (Connection conn = databaseManager.getConnection()) {
+            if (leaseOwner == null) {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO player_data_info (uuid, state, version) VALUES (?, ?, LAST_INSERT_ID(1)) " +
+                                "ON DUPLICATE KEY UPDATE state=VALUES(state), inventory=NULL, armor=NULL, version=LAST_INSERT_ID(version+1)")) {
+                    stmt.setString(1, uuid.toString());
+                    stmt.setBytes(2, inventory.toStateBytes());
+                    stmt.executeUpdate();
+                    return lastInsertId(conn);
+                }
+            }
+
+            // Only lands while the owner still holds the lease, a stale save can't clobber another server's data
+            String leaseUpdate = releaseLease ? "lease_owner=NULL, lease_expires=NULL" : "lease_expires=NOW() + INTERVAL ? SECOND";
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE player_data_info SET state=?, inventory=NULL, armor=NULL, version=LAST_INSERT_ID(version+1), " + leaseUpdate +
+                            " WHERE uuid=? AND lease_owner=?")) {
+                int index = 1;
+                stmt.setBytes(index++, inventory.toStateBytes());
+                if (!releaseLease) {
+                    stmt.setInt(index++, leaseSeconds);
+                }
+                stmt.setString(index++, uuid.toString());
+                stmt.setString(index, leaseOwner);
+                return stmt.executeUpdate() > 0 ? lastInsertId(conn) : -1L;
+            }
+        }
+    }
+
+    @Override
+    public long saveIfUnchanged(UUID uuid, StoredInventory inventory, long expectedVersion, String owner) throws SQLException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE player_data_info SET state=?, inventory=NULL, armor=NULL, version=LAST_INSERT_ID(version+1) " +
+                             "WHERE uuid=? AND version=? AND (lease_owner IS NULL OR lease_owner=? OR lease_expires < NOW())")) {
+            stmt.setBytes(1, inventory.toStateBytes());
+            stmt.setString(2, uuid.toString());
+            stmt.setLong(3, expectedVersion);
+            stmt.setString(4, owner);
+            return stmt.executeUpdate() > 0 ? lastInsertId(conn) : -1L;
+        }
+    }
+
+    private static long lastInsertId(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT LAST_INSERT_ID()");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+
+    // Lease handling on join runs on the interactive pool, it gates the player's load
+    @Override
+    public boolean tryAcquireLease(UUID uuid, String owner, int leaseSeconds) throws SQLException {
+        try (Connection conn = databaseManager.getConnection(DatabaseManager.Workload.INTERACTIVE)) {
+            // Make sure there is a row to hold the lease for first-time players
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT IGNORE INTO player_data_info (uuid, version) VALUES (?, 0)")) {
+                stmt.setString(1, uuid.toString());
+                stmt.executeUpdate();
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE player_data_info SET lease_owner=?, lease_expires=NOW() + INTERVAL ? SECOND " +
+                            "WHERE uuid=? AND (lease_owner IS NULL OR lease_owner=? OR lease_expires < NOW())")) {
+                stmt.setString(1, owner);
+                stmt.setInt(2, leaseSeconds);
+                stmt.setString(3, uuid.toString());
+                stmt.setString(4, owner);
+                return stmt.executeUpdate() > 0;
+            }
+        }
+    }
+
+    @Override
+    public void releaseLease(UUID uuid, String owner) throws SQLException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE player_data_info SET lease_owner=NULL, lease_expires=NULL WHERE uuid=? AND lease_owner=?")) {
+            stmt.setString(1, uuid.toString());
+            stmt.setString(2, owner);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public int renewLeases(Collection<UUID> uuids, String owner, int leaseSeconds) throws SQLException {
+        if (uuids.isEmpty()) {
+            return 0;
+        }
+
+        List<UUID> players = new ArrayList<>(uuids);
+        String sql = "UPDATE player_data_info SET lease_expires=NOW() + INTERVAL ? SECOND " +
+                "WHERE lease_owner=? AND uuid IN (" + BatchLoader.placeholders(players.size()) + ")";
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, leaseSeconds);
+            stmt.setString(2, owner);
+            for (int i = 0; i < players.size(); i++) {
+                stmt.setString(i + 3, players.get(i).toString());
+            }
+            return stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public int releaseAllLeases(String owner) throws SQLException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE player_data_info SET lease_owner=NULL, lease_expires=NULL WHERE lease_owner=?")) {
+            stmt.setString(1, owner);
+            return stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public long readVersion(UUID uuid) throws SQLException {
+        try (Connection conn = databaseManager.getConnection(DatabaseManager.Workload.INTERACTIVE);
+             PreparedStatement stmt = conn.prepareStatement("SELECT version FROM player_data_info WHERE uuid=?")) {
+            stmt.setString(1, uuid.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong("version") : 0L;
+            }
+        }
+    }
+}
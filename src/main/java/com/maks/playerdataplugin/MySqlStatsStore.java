@@ -0,0 +1,169 @@
+package com.maks.playerdataplugin;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stats storage in the player_stats MySQL table.
+ */
+public class MySqlStatsStore implements StatsStore {
+
+    private final DatabaseManager databaseManager;
+
+    public MySqlStatsStore(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS player_stats (" +
+                "uuid VARCHAR(36) NOT NULL PRIMARY KEY," +
+                "username VARCHAR(16)," +
+                "mobs_killed INT DEFAULT 0," +
+                "players_killed INT DEFAULT 0," +
+                "deaths INT DEFAULT 0," +
+                "playtime_hours DOUBLE DEFAULT 0.0," +
+                "balance DOUBLE DEFAULT 0.0," +
+                "last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+                ");";
+
+        try (Connection connection = databaseManager.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.execute();
+        }
+    }
+
+    @Override
+    public Map<UUID, PlayerStatsManager.PlayerStats> loadAll(List<UUID> uuids) throws SQLException {
+        Map<UUID, PlayerStatsManager.PlayerStats> result = new HashMap<>();
+        String sql = "SELECT uuid, mobs_killed, players_killed, deaths, playtime_hours, balance FROM player_stats WHERE uuid IN (" +
+                BatchLoader.placeholders(uuids.size()) + ")";
+
+        try (Connection conn = databaseManager.getConnection(DatabaseManager.Workload.INTERACTIVE);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < uuids.size(); i++) {
+                stmt.setString(i + 1, uuids.get(i).toString());
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(UUID.fromString(rs.getString("uuid")), new PlayerStatsManager.PlayerStats(
+                            rs.getInt("mobs_killed"),
+                            rs.getInt("players_killed"),
+                            rs.getInt("deaths"),
+                            rs.getDouble("playtime_hours"),
+                            rs.getDouble("balance")
+                    ));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void scanAll(RowHandler handler) throws SQLException, IOException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT uuid, username, mobs_killed, players_killed, deaths, playtime_hours, balance FROM player_stats",
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Streamed row by row, see MySqlInventoryStore.scanAll
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.accept(UUID.fromString(rs.getString("uuid")), rs.getString("username"), new PlayerStatsManager.PlayerStats(
+                            rs.getInt("mobs_killed"),
+                            rs.getInt("players_killed"),
+                            rs.getInt("deaths"),
+                            rs.getDouble("playtime_hours"),
+                            rs.getDouble("balance")
+                    ));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void importAll(Map<UUID, PlayerStatsManager.PlayerStats> stats, Map<UUID, String> usernames) throws SQLException {
+        try (Connection conn = databaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "REPLACE INTO player_stats (uuid, username, mobs_killed, players_killed, deaths, playtime_hours, balance) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (Map.Entry<UUID, PlayerStatsManager.PlayerStats> entry : stats.entrySet()) {
+                    PlayerStatsManager.PlayerStats playerStats = entry.getValue();
+                    stmt.setString(1, entry.getKey().toString());
+                    stmt.setString(2, usernames.get(entry.getKey()));
+                    stmt.setInt(3, playerStats.getMobsKilled());
+                    stmt.setInt(4, playerStats.getPlayersKilled());
+                    stmt.setInt(5, playerStats.getDeaths());
+                    stmt.setDouble(6, playerStats.getPlaytimeHours());
+                    stmt.setDouble(7, playerStats.getBalance());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public void save(UUID uuid, String username, PlayerStatsManager.PlayerStats stats) throws SQLException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "REPLACE INTO player_stats (uuid, username, mobs_killed, players_killed, deaths, playtime_hours, balance) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+
+            stmt.setString(1, uuid.toString());
+            stmt.setString(2, username);
+            stmt.setInt(3, stats.getMobsKilled());
+            stmt.setInt(4, stats.getPlayersKilled());
+            stmt.setInt(5, stats.getDeaths());
+            stmt.setDouble(6, stats.getPlaytimeHours());
+            stmt.setDouble(7, stats.getBalance());
+
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> uuids) throws SQLException {
+        if (uuids.isEmpty()) {
+            return;
+        }
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "DELETE FROM player_stats WHERE uuid IN (" + BatchLoader.placeholders(uuids.size()) + ")")) {
+            int index = 1;
+            for (UUID uuid : uuids) {
+                stmt.setString(index++, uuid.toString());
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public UUID findUuidByUsername(String username) throws SQLException {
+        try (Connection conn = databaseManager.getConnection(DatabaseManager.Workload.INTERACTIVE);
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT uuid FROM player_stats WHERE LOWER(username) = LOWER(?) LIMIT 1")) {
+
+            stmt.setString(1, username);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? UUID.fromString(rs.getString("uuid")) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stored inventories of offline players for staff tools, behind a read-through cache: repeated lookups of
+ * the same player within the TTL don't query the database again. Entries are dropped whenever the player's
+ * own session writes or they join, so the cache never serves data older than the store.
+ * Edits are written back with a version check, they only land if nothing was stored since they were read.
+ */
+public class OfflineInventories {
+
+    public enum WriteResult {
+        SAVED,
+        // Something was stored since the inventory was read, or another server holds the player
+        CONFLICT,
+        // The player is online here, or a save of theirs is still in flight or queued
+        PLAYER_ACTIVE
+    }
+
+    private static class Entry {
+        final StoredInventory data;
+        final long loadedAt;
+
+        Entry(StoredInventory data, long loadedAt) {
+            this.data = data;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final Main plugin;
+    private final long ttlMs;
+    private final int maxEntries;
+    // Access order, so the least recently viewed player is evicted first
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    public OfflineInventories(Main plugin) {
+        this.plugin = plugin;
+        this.ttlMs = Math.max(1L, plugin.getConfig().getLong("invsee.cacheSeconds", 60)) * 1000L;
+        this.maxEntries = Math.max(1, plugin.getConfig().getInt("invsee.cacheEntries", 200));
+    }
+
+    /**
+     * The player's stored inventory, null if they have none. Served from the cache when possible,
+     * otherwise read on the database executor once the database is open.
+     */
+    public CompletableFuture<StoredInventory> load(UUID uuid) {
+        StoredInventory cached = get(uuid);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        misses.incrementAndGet();
+        return plugin.getPersistenceStartup().whenReady().thenCompose(ready -> {
+            CompletableFuture<StoredInventory> result = new CompletableFuture<>();
+            plugin.getDatabaseExecutor().execute(() -> {
+                try {
+                    StoredInventory data = plugin.getDatabaseManager().getInventoryStore()
+                            .loadAll(Collections.singletonList(uuid)).get(uuid);
+                    if (data != null && !data.isEmpty()) {
+                        put(uuid, data);
+                    }
+                    result.complete(data == null || data.isEmpty() ? null : data);
+                } catch (SQLException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return result;
+        });
+    }
+
+    /**
+     * Writes an edit of the inventory that was read as original. Once the write landed, the replaced
+     * inventory and the edit are recorded in the history. Must run on the database executor.
+     */
+    public WriteResult write(UUID uuid, StoredInventory original, PlayerState edited) throws SQLException {
+        // The player's own session would overwrite the edit with what it holds in memory
+        if (Bukkit.getPlayer(uuid) != null || plugin.getPlayerDataListener().hasPendingSave(uuid)) {
+            return WriteResult.PLAYER_ACTIVE;
+        }
+
+        HandoffCoordinator handoff = plugin.getHandoffCoordinator();
+        StoredInventory data = new StoredInventory(SerializationUtils.serializePlayerState(edited), 0L);
+        long version = plugin.getDatabaseManager().getInventoryStore().saveIfUnchanged(uuid, data, original.getVersion(),
+                handoff.isEnabled() ? handoff.getServerId() : null);
+        if (version < 0) {
+            conflicts.incrementAndGet();
+            invalidate(uuid);
+            return WriteResult.CONFLICT;
+        }
+
+        saved.incrementAndGet();
+        // Only an edit that landed replaced anything worth recording
+        plugin.getSnapshotHistory().record(uuid, original, "pre-edit");
+        // The snapshot from the player's last quit no longer matches what is stored
+        plugin.getPlayerDataListener().getRecentQuitCache().invalidate(uuid);
+        plugin.getSnapshotHistory().record(uuid, data, "edit");
+        put(uuid, new StoredInventory(data.getState(), version));
+        return WriteResult.SAVED;
+    }
+
+    public synchronized void invalidate(UUID uuid) {
+        entries.remove(uuid);
+    }
+
+    private synchronized StoredInventory get(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.loadedAt < System.currentTimeMillis() - ttlMs) {
+            entries.remove(uuid);
+            return null;
+        }
+        return entry.data;
+    }
+
+    private synchronized void put(UUID uuid, StoredInventory data) {
+        entries.put(uuid, new Entry(data, System.currentTimeMillis()));
+        Iterator<Map.Entry<UUID, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public synchronized String getMetrics() {
+        long lookups = hits.get() + misses.get();
+        return "offline inventories: " + entries.size() + " cached, " + hits.get() + " hits, " + misses.get() + " misses (hit rate " +
+                String.format("%.1f", lookups == 0 ? 0.0 : hits.get() * 100.0 / lookups) + "%), " + saved.get() + " edits saved, " +
+                conflicts.get() + " conflicts";
+    }
+}
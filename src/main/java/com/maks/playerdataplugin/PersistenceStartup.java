@@ -0,0 +1,165 @@
+package com.maks.playerdataplugin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Opens the persistence layer off the main thread. Connecting the pools, warming them up and creating or
+ * migrating the tables run on a startup thread while the server keeps loading, and are retried with backoff
+ * while the database can't be reached. Once they are done, the work that needs the database (timers, loads
+ * of players already online) runs on the next tick and the layer is marked ready. Logins are held by the
+ * {@link LoginGate} until then. Each phase is timed and logged.
+ */
+public class PersistenceStartup {
+
+    private final Main plugin;
+    private final long startedAt = System.nanoTime();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    // Phase name to duration, in the order they ran
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+    private volatile int attempts = 0;
+    private volatile String lastError = null;
+    private long totalMillis = 0;
+
+    private interface Phase {
+        void run() throws Exception;
+    }
+
+    public PersistenceStartup(Main plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts opening the database, onReady runs on the global thread once it is usable.
+     */
+    public void begin(Runnable onReady) {
+        Thread thread = new Thread(() -> open(onReady), "PlayerDataPlugin-startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void open(Runnable onReady) {
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+        long retryBaseMs = plugin.getConfig().getLong("startup.retryBaseMs", 1000);
+        long retryMaxMs = plugin.getConfig().getLong("startup.retryMaxMs", 30000);
+
+        while (true) {
+            attempts++;
+            try {
+                // A plugin disabled meanwhile may already have disconnected, what a phase opened is closed again
+                if (!timed("connect", databaseManager::connect)
+                        || !timed("pool warm-up", databaseManager::warmUp)
+                        || !timed("schema", databaseManager::createTables)) {
+                    return;
+                }
+                break;
+            } catch (Exception e) {
+                // Hikari reports an unreachable database as a runtime exception, so everything is retried
+                lastError = e.getMessage();
+                if (!plugin.isEnabled()) {
+                    databaseManager.disconnect();
+                    return;
+                }
+                long delay = CircuitBreaker.backoffDelay(attempts - 1, retryBaseMs, retryMaxMs);
+                plugin.getLogger().severe("Failed to open the database (attempt " + attempts + "): " + e.getMessage() +
+                        ", retrying in " + delay + "ms");
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        long openedAt = System.nanoTime();
+        plugin.getTaskScheduler().runGlobal(() -> {
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            record("wait for tick", System.nanoTime() - openedAt);
+            try {
+                timed("activation", onReady::run);
+            } catch (Exception e) {
+                // Unchecked only, activation throws nothing checked
+                plugin.getLogger().severe("Failed to activate the persistence layer: " + e);
+                e.printStackTrace();
+            }
+            synchronized (this) {
+                totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            }
+            ready.complete(null);
+            plugin.getLogger().info("Persistence ready " + getSummary());
+        });
+    }
+
+    // Runs and times a startup phase, returns false if the plugin was disabled by the time it finished
+    private boolean timed(String name, Phase phase) throws Exception {
+        long start = System.nanoTime();
+        phase.run();
+        record(name, System.nanoTime() - start);
+        if (!plugin.isEnabled()) {
+            plugin.getDatabaseManager().disconnect();
+            return false;
+        }
+        return true;
+    }
+
+    synchronized void record(String name, long nanos) {
+        // A retried phase keeps the time of its successful run
+        phaseMillis.put(name, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    /**
+     * Completes once the database is open and the plugin is fully active.
+     */
+    public CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    /**
+     * Blocks until ready or the timeout elapses, only for async threads such as the login thread.
+     */
+    public boolean awaitReady(long timeoutMs) {
+        try {
+            ready.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder("after ").append(totalMillis).append("ms (");
+        boolean first = true;
+        for (Map.Entry<String, Long> phase : phaseMillis.entrySet()) {
+            if (!first) {
+                summary.append(", ");
+            }
+            summary.append(phase.getKey()).append(' ').append(phase.getValue()).append("ms");
+            first = false;
+        }
+        summary.append(attempts > 1 ? ", " + attempts + " attempts)" : ")");
+        return summary.toString();
+    }
+
+    public String getMetrics() {
+        if (!isReady()) {
+            return "startup: not ready, attempt " + attempts + (lastError != null ? ", last error: " + lastError : "");
+        }
+        return "startup: ready " + getSummary();
+    }
+}
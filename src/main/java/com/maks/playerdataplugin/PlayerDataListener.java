@@ -1,6 +1,9 @@
 package com.maks.playerdataplugin;
 
 import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
@@ -8,168 +11,364 @@ import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.UUID;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.Map;
 
 public class PlayerDataListener implements Listener {
 
     private final Main plugin;
-    private final Set<UUID> savingPlayers = ConcurrentHashMap.newKeySet();
-    private final Map<UUID, PlayerData> playerDataCache = new HashMap<>();
-    private boolean debugMode = false;
+    private final Map<UUID, CompletableFuture<Void>> savingPlayers = new ConcurrentHashMap<>();
+    private final Set<UUID> loadingPlayers = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, StoredInventory> playerDataCache = new ConcurrentHashMap<>();
+    private final RecentQuitCache recentQuits;
+    // Callers waiting for a joining player's state to be applied
+    private final Map<UUID, CompletableFuture<Boolean>> loadWaiters = new ConcurrentHashMap<>();
+    private final Tracer tracer;
     private int maxRetryAttempts = 3;
     private long retryDelayMs = 1000;
-
-    // Inner class to store player data for caching
-    private static class PlayerData {
-        final String inventoryData;
-        final String armorData;
-
-        PlayerData(String inventoryData, String armorData) {
-            this.inventoryData = inventoryData;
-            this.armorData = armorData;
-        }
-    }
+    private long maxRetryDelayMs = 10000;
+    private final BatchLoader<StoredInventory> inventoryLoader;
+    private static final long LOAD_RETRY_TICKS = 100L; // 5 seconds
+    // Items that are serialized on the main thread instead of from their cloned snapshot
+    private final Set<Material> mainThreadMaterials = EnumSet.noneOf(Material.class);
+    private final Map<UUID, String> lastSavedHashes = new ConcurrentHashMap<>();
+
+    // Save metrics
+    private final AtomicLong encodes = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+    private final AtomicLong mainThreadEncodes = new AtomicLong();
+    // Only encodes on threads that report their allocations are counted
+    private final AtomicLong measuredEncodes = new AtomicLong();
+    private final AtomicLong encodeAllocatedBytes = new AtomicLong();
+    private final AtomicLong unchangedSaves = new AtomicLong();
+    private final Map<UUID, Long> decodeTimes = new ConcurrentHashMap<>();
+    private final AtomicLong decodes = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong slowestDecodeNanos = new AtomicLong();
 
     public PlayerDataListener(Main plugin) {
         this.plugin = plugin;
-        this.debugMode = plugin.getConfig().getBoolean("debug", false);
+        this.tracer = new Tracer(plugin.getTraceBuffer(), "DEBUG");
+        this.recentQuits = new RecentQuitCache(plugin);
         this.maxRetryAttempts = plugin.getConfig().getInt("database.maxRetryAttempts", 3);
         this.retryDelayMs = plugin.getConfig().getLong("database.retryDelayMs", 1000);
+        this.maxRetryDelayMs = Math.max(retryDelayMs, plugin.getConfig().getLong("database.maxRetryDelayMs", 10000));
+        this.inventoryLoader = new BatchLoader<>(plugin, "inventory",
+                plugin.getConfig().getInt("loader.maxBatchSize", 100),
+                plugin.getConfig().getLong("loader.batchWindowMs", 5),
+                this::queryPlayerData);
+        for (String name : plugin.getConfig().getStringList("serialization.mainThreadMaterials")) {
+            Material material = Material.matchMaterial(name);
+            if (material != null) {
+                mainThreadMaterials.add(material);
+            } else {
+                plugin.getLogger().warning("Unknown material in serialization.mainThreadMaterials: " + name);
+            }
+        }
 
-        logDebug("PlayerDataListener initialized with maxRetryAttempts=" + maxRetryAttempts + ", retryDelayMs=" + retryDelayMs);
-    }
-
-    private void logDebug(String message) {
-        if (debugMode) {
-            plugin.getLogger().info("[DEBUG] " + message);
+        if (tracer.isEnabled()) {
+            tracer.trace(null, "PlayerDataListener initialized with maxRetryAttempts={}, retryDelayMs={}", maxRetryAttempts, retryDelayMs);
         }
     }
 
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
-        UUID uuid = event.getPlayer().getUniqueId();
-        PlayerInventory inventory = event.getPlayer().getInventory();
-        String playerName = event.getPlayer().getName();
+        Player player = event.getPlayer();
+        UUID uuid = player.getUniqueId();
+        PlayerInventory inventory = player.getInventory();
+        String playerName = player.getName();
 
-        logDebug("Player " + playerName + " (" + uuid + ") joined, loading inventory data");
+        tracer.trace(uuid, "Player {} ({}) joined, loading inventory data", playerName, uuid);
 
         // Clear the inventory to prevent default items
         inventory.clear();
         inventory.setArmorContents(null);
-        logDebug("Cleared inventory for player " + playerName);
+        tracer.trace(uuid, "Cleared inventory for player {}", playerName);
+
+        // Saves are skipped until the stored data has been applied, so the cleared inventory can't overwrite it
+        loadingPlayers.add(uuid);
+        // The session's saves are the source of truth from now on
+        plugin.getOfflineInventories().invalidate(uuid);
+
+        // Check if we have cached data (from a failed save)
+        StoredInventory cachedData = playerDataCache.get(uuid);
+        if (cachedData != null) {
+            tracer.trace(uuid, "Found cached data for player {}, attempting to load", playerName);
+            // Newer than anything stored, so a snapshot from the last quit is outdated
+            recentQuits.invalidate(uuid);
+            // The cached snapshot was never stored, so this server keeps (or takes) ownership of the player
+            plugin.getHandoffCoordinator().acquire(uuid, playerName).exceptionally(error -> {
+                plugin.getLogger().warning("Failed to acquire data lease for " + playerName + ": " + error.getMessage());
+                return null;
+            });
+            decodeAndApply(uuid, playerName, CompletableFuture.completedFuture(cachedData), "cached");
+            return;
+        }
+
+        // A reconnect shortly after quitting is served from the snapshot the quit save stored
+        StoredInventory recentData = recentQuits.take(uuid);
+        if (recentData != null) {
+            if (tracer.isEnabled()) {
+                tracer.trace(uuid, "Found data stored on the last quit of player {} (version {})", playerName, recentData.getVersion());
+            }
+            loadRecent(uuid, playerName, recentData);
+            return;
+        }
+
+        tracer.trace(uuid, "No cached data found for player {}, loading from database", playerName);
+        loadFromDatabase(uuid, playerName);
+    }
 
-        // Wait for any ongoing saves to complete
-        if (savingPlayers.contains(uuid)) {
-            logDebug("Player " + playerName + " has an ongoing save, waiting for it to complete");
-            while (savingPlayers.contains(uuid)) {
+    private void loadRecent(UUID uuid, String playerName, StoredInventory recentData) {
+        // Another server may have written since (a proxy hop there and back), even without handoff. Once the
+        // lease is ours, or right away without handoff, a version probe tells whether the snapshot is current
+        CompletableFuture<StoredInventory> source = plugin.getHandoffCoordinator().acquire(uuid, playerName).thenCompose(ignored -> {
+            CompletableFuture<Long> version = new CompletableFuture<>();
+            plugin.getDatabaseExecutor().execute(() -> {
                 try {
-                    Thread.sleep(50);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    logDebug("Interrupted while waiting for save to complete for player " + playerName);
-                    break;
+                    version.complete(plugin.getDatabaseManager().getInventoryStore().readVersion(uuid));
+                } catch (SQLException e) {
+                    version.completeExceptionally(e);
                 }
+            });
+            return version;
+        }).thenCompose(storedVersion -> {
+            if (storedVersion == recentData.getVersion()) {
+                recentQuits.recordHit();
+                return CompletableFuture.completedFuture(recentData);
             }
-            logDebug("Save completed for player " + playerName + ", proceeding with data load");
+            recentQuits.recordStale();
+            if (tracer.isEnabled()) {
+                tracer.trace(uuid, "Stored version of {} moved from {} to {}, loading from database", playerName, recentData.getVersion(), storedVersion);
+            }
+            return inventoryLoader.load(uuid);
+        });
+        decodeAndApply(uuid, playerName, source, "recent");
+    }
+
+    private void loadFromDatabase(UUID uuid, String playerName) {
+        // Wait for any ongoing save to complete, then join the next batched load
+        CompletableFuture<Void> ongoingSave = savingPlayers.get(uuid);
+        if (ongoingSave != null) {
+            tracer.trace(uuid, "Player {} has an ongoing save, loading once it completes", playerName);
+        } else {
+            ongoingSave = CompletableFuture.completedFuture(null);
         }
 
-        // Check if we have cached data (from a failed save)
-        PlayerData cachedData = playerDataCache.get(uuid);
-        if (cachedData != null) {
-            logDebug("Found cached data for player " + playerName + ", attempting to load");
-            try {
-                if (cachedData.inventoryData != null && !cachedData.inventoryData.isEmpty()) {
-                    logDebug("Deserializing cached inventory data for player " + playerName);
-                    ItemStack[] items = SerializationUtils.deserializeItemStackArray(cachedData.inventoryData);
-                    validateItems(items);
-                    inventory.setContents(items);
-                    logDebug("Successfully loaded cached inventory data for player " + playerName);
-                } else {
-                    logDebug("No cached inventory data found for player " + playerName);
-                }
+        // Other servers may still own the player, wait for their final save before reading
+        decodeAndApply(uuid, playerName, ongoingSave
+                .thenCompose(ignored -> plugin.getHandoffCoordinator().acquire(uuid, playerName))
+                .thenCompose(ignored -> inventoryLoader.load(uuid)), "database");
+    }
 
-                if (cachedData.armorData != null && !cachedData.armorData.isEmpty()) {
-                    logDebug("Deserializing cached armor data for player " + playerName);
-                    ItemStack[] armor = SerializationUtils.deserializeItemStackArray(cachedData.armorData);
-                    validateItems(armor);
-                    inventory.setArmorContents(armor);
-                    logDebug("Successfully loaded cached armor data for player " + playerName);
-                } else {
-                    logDebug("No cached armor data found for player " + playerName);
-                }
+    // Decodes and validates on a worker thread, the main thread only applies the ready state
+    private void decodeAndApply(UUID uuid, String playerName, CompletableFuture<StoredInventory> source, String sourceName) {
+        source.thenApplyAsync(data -> decode(uuid, playerName, data, sourceName), this::runAsync)
+                .whenComplete((decoded, error) ->
+                        plugin.getTaskScheduler().runForPlayer(uuid, () -> finishLoad(uuid, playerName, decoded, sourceName, error)));
+    }
 
-                plugin.getLogger().info("Loaded cached data for player " + playerName);
-                return;
-            } catch (Exception e) {
-                plugin.getLogger().warning("Failed to load cached data for " + playerName + ", falling back to database");
-                logDebug("Error loading cached data for player " + playerName + ": " + e.getMessage());
-            }
+    private void runAsync(Runnable task) {
+        if (plugin.isEnabled()) {
+            plugin.getTaskScheduler().runAsync(task);
         } else {
-            logDebug("No cached data found for player " + playerName + ", loading from database");
-        }
-
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT inventory, armor FROM player_data_info WHERE uuid=?")) {
-
-            logDebug("Querying database for player " + playerName + " data");
-            stmt.setString(1, uuid.toString());
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    logDebug("Found database record for player " + playerName);
-                    String inventoryData = rs.getString("inventory");
-                    String armorData = rs.getString("armor");
-
-                    if (inventoryData != null && !inventoryData.isEmpty()) {
-                        logDebug("Deserializing inventory data for player " + playerName);
-                        try {
-                            ItemStack[] items = SerializationUtils.deserializeItemStackArray(inventoryData);
-                            validateItems(items);
-                            inventory.setContents(items);
-                            logDebug("Successfully loaded inventory data for player " + playerName);
-                        } catch (Exception e) {
-                            plugin.getLogger().warning("Corrupted inventory data for " + playerName);
-                            logDebug("Error deserializing inventory data for player " + playerName + ": " + e.getMessage());
-                        }
-                    } else {
-                        logDebug("No inventory data found in database for player " + playerName);
-                    }
+            task.run();
+        }
+    }
 
-                    if (armorData != null && !armorData.isEmpty()) {
-                        logDebug("Deserializing armor data for player " + playerName);
-                        try {
-                            ItemStack[] armor = SerializationUtils.deserializeItemStackArray(armorData);
-                            validateItems(armor);
-                            inventory.setArmorContents(armor);
-                            logDebug("Successfully loaded armor data for player " + playerName);
-                        } catch (Exception e) {
-                            plugin.getLogger().warning("Corrupted armor data for " + playerName);
-                            logDebug("Error deserializing armor data for player " + playerName + ": " + e.getMessage());
-                        }
-                    } else {
-                        logDebug("No armor data found in database for player " + playerName);
-                    }
-                } else {
-                    logDebug("No database record found for player " + playerName + ", using empty inventory");
+    // Result of the worker stage, a null state means there was nothing (usable) to apply
+    private static class DecodedState {
+        final PlayerState state;
+        final long version;
+        final boolean corrupted;
+
+        DecodedState(PlayerState state, long version, boolean corrupted) {
+            this.state = state;
+            this.version = version;
+            this.corrupted = corrupted;
+        }
+    }
+
+    private DecodedState decode(UUID uuid, String playerName, StoredInventory data, String source) {
+        if (data == null || data.isEmpty()) {
+            return new DecodedState(null, 0L, false);
+        }
+
+        tracer.trace(uuid, "Deserializing {} player state for {}{}", source, playerName, data.isLegacy() ? " (legacy format)" : "");
+        long start = System.nanoTime();
+        try {
+            return new DecodedState(decodeState(uuid, data), data.getVersion(), false);
+        } catch (IllegalStateException e) {
+            tracer.trace(uuid, "Error deserializing player state for {}: {}", playerName, e.getMessage());
+            return new DecodedState(null, data.getVersion(), true);
+        } finally {
+            recordDecodeTime(uuid, playerName, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Decodes and validates a stored record. Safe to call off the main thread.
+     */
+    public PlayerState decodeState(UUID uuid, StoredInventory data) {
+        // Records in the old inventory/armor format are migrated on the fly
+        PlayerState state = data.toPlayerState();
+        validateItems(uuid, state.getContents());
+        validateItems(uuid, state.getEnderChest());
+        return state;
+    }
+
+    private void recordDecodeTime(UUID uuid, String playerName, long nanos) {
+        decodeTimes.put(uuid, nanos);
+        decodes.incrementAndGet();
+        decodeNanos.addAndGet(nanos);
+        slowestDecodeNanos.accumulateAndGet(nanos, Math::max);
+        if (tracer.isEnabled()) {
+            tracer.trace(uuid, "Decoded player state for {} in {} ms", playerName, nanos / 1_000_000.0);
+        }
+    }
+
+    private void finishLoad(UUID uuid, String playerName, DecodedState decoded, String source, Throwable error) {
+        Player player = Bukkit.getPlayer(uuid);
+        if (player == null || !player.isOnline()) {
+            loadingPlayers.remove(uuid);
+            completeLoadWaiters(uuid, false);
+            tracer.trace(uuid, "Player {} left before their data finished loading", playerName);
+            return;
+        }
+
+        if (error != null) {
+            // Degraded mode: keep saves blocked so the empty inventory never reaches the database, and retry
+            plugin.getLogger().severe("Failed to load player data for " + playerName + ", retrying in " + (LOAD_RETRY_TICKS / 20) + " seconds");
+            tracer.trace(uuid, "Database error while loading data for player {}: {}", playerName, error.getMessage());
+            player.sendMessage(ChatColor.RED + "Your inventory could not be loaded yet, retrying shortly...");
+            plugin.getTaskScheduler().runGlobalLater(() -> {
+                if (loadingPlayers.contains(uuid) && Bukkit.getPlayer(uuid) != null) {
+                    loadFromDatabase(uuid, playerName);
                 }
+            }, LOAD_RETRY_TICKS);
+            return;
+        }
+
+        if (decoded.corrupted && source.equals("cached")) {
+            plugin.getLogger().warning("Failed to load cached data for " + playerName + ", falling back to database");
+            playerDataCache.remove(uuid);
+            loadFromDatabase(uuid, playerName);
+            return;
+        }
+
+        loadingPlayers.remove(uuid);
+        if (decoded.corrupted) {
+            plugin.getLogger().warning("Corrupted player data for " + playerName);
+        } else if (decoded.state == null) {
+            tracer.trace(uuid, "No database record found for player {}, using empty inventory", playerName);
+        } else {
+            if (tracer.isEnabled()) {
+                tracer.trace(uuid, "Found {} record for player {} (version {})", source, playerName, decoded.version);
+            }
+            decoded.state.apply(player);
+            if (source.equals("cached")) {
+                plugin.getLogger().info("Loaded cached data for player " + playerName);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            plugin.getLogger().severe("Failed to load player data for " + playerName);
-            logDebug("Database error while loading data for player " + playerName + ": " + e.getMessage());
+            tracer.trace(uuid, "Successfully loaded {} player state for {}{}", source, playerName,
+                    decoded.state.hasStatus() ? "" : " (inventory only, the rest is stored with the next save)");
+        }
+
+        tracer.trace(uuid, "Finished loading data for player {}", playerName);
+        completeLoadWaiters(uuid, true);
+        Bukkit.getPluginManager().callEvent(new PlayerDataLoadedEvent(player, decoded.state != null));
+    }
+
+    /**
+     * Completes with true once an online player's stored state has been applied, or false if they leave first.
+     */
+    public CompletableFuture<Boolean> whenDataLoaded(UUID uuid) {
+        if (Bukkit.getPlayer(uuid) == null) {
+            return CompletableFuture.completedFuture(false);
         }
+        if (!loadingPlayers.contains(uuid)) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        CompletableFuture<Boolean> waiting = loadWaiters.computeIfAbsent(uuid, key -> new CompletableFuture<>());
+        // The load may have finished between the two checks
+        if (!loadingPlayers.contains(uuid) && loadWaiters.remove(uuid, waiting)) {
+            waiting.complete(Bukkit.getPlayer(uuid) != null);
+        }
+        return waiting;
+    }
+
+    public boolean isDataLoaded(UUID uuid) {
+        return Bukkit.getPlayer(uuid) != null && !loadingPlayers.contains(uuid);
+    }
 
-        logDebug("Finished loading data for player " + playerName);
+    private void completeLoadWaiters(UUID uuid, boolean loaded) {
+        CompletableFuture<Boolean> waiting = loadWaiters.remove(uuid);
+        if (waiting != null) {
+            waiting.complete(loaded);
+        }
+    }
+
+    // Fetches the stored inventories for a whole batch of joining players with one store call
+    private Map<UUID, StoredInventory> queryPlayerData(List<UUID> uuids) throws SQLException {
+        Map<UUID, StoredInventory> result = plugin.getDatabaseManager().getInventoryStore().loadAll(uuids);
+        if (tracer.isEnabled()) {
+            tracer.trace(null, "Loaded {} of {} requested player data records", result.size(), uuids.size());
+        }
+        return result;
     }
 
-    private void validateItems(ItemStack[] items) {
+    public BatchLoader<?> getInventoryLoader() {
+        return inventoryLoader;
+    }
+
+    /**
+     * Whether a save of the player is running, failed and cached for their next join, or queued in the backlog.
+     */
+    public boolean hasPendingSave(UUID uuid) {
+        return savingPlayers.containsKey(uuid) || playerDataCache.containsKey(uuid)
+                || plugin.getDatabaseManager().getWriteBacklog().isQueued("inventory:" + uuid);
+    }
+
+    public RecentQuitCache getRecentQuitCache() {
+        return recentQuits;
+    }
+
+    public String getSaveMetrics() {
+        long count = encodes.get();
+        return "saves: " + count + " encoded off-thread (avg " +
+                String.format("%.3f", count == 0 ? 0.0 : encodeNanos.get() / 1_000_000.0 / count) + " ms), " +
+                mainThreadEncodes.get() + " on the main thread, " + unchangedSaves.get() + " unchanged skipped" +
+                (measuredEncodes.get() == 0 ? "" : ", " + String.format("%.1f", encodeAllocatedBytes.get() / 1024.0 / measuredEncodes.get()) +
+                        " KB allocated per encode");
+    }
+
+    public String getLoadMetrics() {
+        long count = decodes.get();
+        return "loads: " + count + " decoded off-thread (avg " +
+                String.format("%.3f", count == 0 ? 0.0 : decodeNanos.get() / 1_000_000.0 / count) + " ms, slowest " +
+                String.format("%.3f", slowestDecodeNanos.get() / 1_000_000.0) + " ms)";
+    }
+
+    /**
+     * How long decoding the player's data took on their last join, -1 if it wasn't decoded.
+     */
+    public double getLastDecodeMillis(UUID uuid) {
+        Long nanos = decodeTimes.get(uuid);
+        return nanos == null ? -1.0 : nanos / 1_000_000.0;
+    }
+
+    private void validateItems(UUID uuid, ItemStack[] items) {
         if (items == null) return;
 
         int validatedCount = 0;
@@ -178,7 +377,9 @@ public class PlayerDataListener implements Listener {
             if (item != null) {
                 // Check for invalid stack size
                 if (item.getAmount() > item.getMaxStackSize()) {
-                    logDebug("Found item with invalid stack size: " + item.getType() + " x" + item.getAmount() + " (max: " + item.getMaxStackSize() + "), correcting");
+                    if (tracer.isEnabled()) {
+                        tracer.trace(uuid, "Found item with invalid stack size: {} x{} (max: {}), correcting", item.getType(), item.getAmount(), item.getMaxStackSize());
+                    }
                     item.setAmount(item.getMaxStackSize());
                 }
 
@@ -187,90 +388,295 @@ public class PlayerDataListener implements Listener {
                 validatedCount++;
             }
         }
-        logDebug("Validated " + validatedCount + " items out of " + items.length + " total slots");
+        if (tracer.isEnabled()) {
+            tracer.trace(uuid, "Validated {} items out of {} total slots", validatedCount, items.length);
+        }
     }
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
-        savePlayerData(event.getPlayer().getUniqueId(), event.getPlayer().getInventory());
+        UUID uuid = event.getPlayer().getUniqueId();
+        decodeTimes.remove(uuid);
+        if (loadingPlayers.remove(uuid)) {
+            completeLoadWaiters(uuid, false);
+            // Nothing was applied yet, so there is nothing to save, just hand the player back
+            tracer.trace(uuid, "Player {} quit before their data was loaded, releasing lease without saving", uuid);
+            plugin.getHandoffCoordinator().release(uuid);
+            return;
+        }
+        savePlayerData(event.getPlayer(), true);
     }
 
-    public void savePlayerData(UUID uuid, PlayerInventory inventory) {
-        // Skip if already saving this player's data
-        if (!savingPlayers.add(uuid)) {
-            logDebug("Already saving data for player " + uuid + ", skipping");
+    /**
+     * Final saves of everyone still online when the plugin is disabled. On Paper this runs on the main
+     * thread. Folia halts the region threads before it disables plugins and hands their entities to the
+     * shutdown thread, so the state is normally captured right here as well; a player whose region still
+     * ticks is captured on that region instead, waiting at most timeoutMs for all of them.
+     */
+    public void saveAllOnDisable(long timeoutMs) {
+        List<Player> elsewhere = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            if (Bukkit.isOwnedByCurrentRegion(player)) {
+                savePlayerData(player, true);
+            } else {
+                elsewhere.add(player);
+            }
+        }
+        if (elsewhere.isEmpty()) {
             return;
         }
 
-        logDebug("Starting save for player " + uuid);
+        CountDownLatch captured = new CountDownLatch(elsewhere.size());
+        for (Player player : elsewhere) {
+            plugin.getTaskScheduler().runForEntity(player, () -> {
+                try {
+                    savePlayerData(player, true);
+                } finally {
+                    captured.countDown();
+                }
+            });
+        }
+        try {
+            if (!captured.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                plugin.getLogger().warning(captured.getCount() + " players could not be saved before shutdown, their regions did not run the save");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void savePlayerData(Player player) {
+        savePlayerData(player, false);
+    }
+
+    /**
+     * Saves the player's state. The final save on quit also releases this server's lease on the
+     * player; it is never skipped and runs after any save that is still in flight.
+     */
+    public void savePlayerData(Player player, boolean finalSave) {
+        savePlayerData(player, finalSave, finalSave, finalSave ? "quit" : "save");
+    }
+
+    private void savePlayerData(Player player, boolean mustRun, boolean finalSave, String reason) {
+        UUID uuid = player.getUniqueId();
+        if (!mustRun && !player.isOnline()) {
+            // A delayed save that fired after the player left, the final save already covered it
+            tracer.trace(uuid, "Player {} is offline, skipping delayed save", uuid);
+            return;
+        }
+
+        // Never overwrite stored data with the empty inventory of a player that is still loading
+        if (loadingPlayers.contains(uuid)) {
+            tracer.trace(uuid, "Data for player {} is still loading, skipping save", uuid);
+            return;
+        }
+
+        // Players online across a reload keep their inventory, there is nowhere to save it before the database is open
+        if (!plugin.getPersistenceStartup().isReady()) {
+            tracer.trace(uuid, "Persistence not ready yet, skipping save of {}", uuid);
+            return;
+        }
 
-        // Cache the data in case of failure
-        String inventoryData = SerializationUtils.serializeItemStackArray(inventory.getContents());
-        String armorData = SerializationUtils.serializeItemStackArray(inventory.getArmorContents());
-        playerDataCache.put(uuid, new PlayerData(inventoryData, armorData));
-        logDebug("Cached data for player " + uuid + " (inventory size: " + inventory.getContents().length + ", armor size: " + inventory.getArmorContents().length + ")");
+        CompletableFuture<Void> saveCompletion = new CompletableFuture<>();
+        CompletableFuture<Void> previousSave = savingPlayers.putIfAbsent(uuid, saveCompletion);
+        if (previousSave != null) {
+            if (!mustRun) {
+                // Skip if already saving this player's data
+                tracer.trace(uuid, "Already saving data for player {}, skipping", uuid);
+                return;
+            }
+            tracer.trace(uuid, "Save ({}) for player {} queued behind the save in flight", reason, uuid);
+            savingPlayers.put(uuid, saveCompletion);
+        }
 
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            logDebug("Running async save task for player " + uuid);
+        tracer.trace(uuid, "Starting save ({}) for player {}", reason, uuid);
+
+        // The main thread only clones the stacks, encoding and hashing happen on the worker
+        PlayerState state = PlayerState.capture(player);
+        byte[] encodedOnMainThread = null;
+        if (state.containsAny(mainThreadMaterials)) {
+            encodedOnMainThread = SerializationUtils.serializePlayerState(state);
+            mainThreadEncodes.incrementAndGet();
+        }
+        final byte[] preEncoded = encodedOnMainThread;
+
+        Runnable saveTask = () -> {
+            tracer.trace(uuid, "Running async save task for player {}", uuid);
             try {
+                long allocatedBefore = BufferPool.currentThreadAllocatedBytes();
+                long encodeStart = System.nanoTime();
+                StoredInventory data = new StoredInventory(preEncoded != null ? preEncoded : SerializationUtils.serializePlayerState(state), 0L);
+                String hash = data.getStateHash();
+                encodeNanos.addAndGet(System.nanoTime() - encodeStart);
+                encodes.incrementAndGet();
+                long allocatedAfter = BufferPool.currentThreadAllocatedBytes();
+                if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                    measuredEncodes.incrementAndGet();
+                    encodeAllocatedBytes.addAndGet(allocatedAfter - allocatedBefore);
+                }
+
+                if (!mustRun && hash.equals(lastSavedHashes.get(uuid))) {
+                    unchangedSaves.incrementAndGet();
+                    tracer.trace(uuid, "State of player {} is unchanged since the last save, skipping write", uuid);
+                    return;
+                }
+
+                // Cached in case of failure
+                playerDataCache.put(uuid, data);
+                if (tracer.isEnabled()) {
+                    tracer.trace(uuid, "Cached data for player {} (state size: {} bytes)", uuid, data.getState().length);
+                }
+
                 int attempts = 0;
                 boolean success = false;
 
                 while (attempts < maxRetryAttempts && !success) {
-                    try (Connection conn = plugin.getDatabaseManager().getConnection();
-                         PreparedStatement stmt = conn.prepareStatement(
-                                 "REPLACE INTO player_data_info (uuid, inventory, armor) VALUES (?, ?, ?)")) {
-
-                        logDebug("Attempt " + (attempts + 1) + " to save data for player " + uuid);
-                        stmt.setString(1, uuid.toString());
-                        stmt.setString(2, inventoryData);
-                        stmt.setString(3, armorData);
-                        stmt.executeUpdate();
+                    try {
+                        if (tracer.isEnabled()) {
+                            tracer.trace(uuid, "Attempt {} to save data for player {}", attempts + 1, uuid);
+                        }
+                        boolean written = plugin.getDatabaseManager().executeOrQueue("inventory:" + uuid,
+                                () -> writePlayerData(uuid, data, finalSave, reason));
 
                         success = true;
-                        playerDataCache.remove(uuid); // Success, remove from cache
-                        logDebug("Successfully saved data for player " + uuid);
+                        if (written) {
+                            tracer.trace(uuid, "Successfully saved data for player {}", uuid);
+                        } else {
+                            tracer.trace(uuid, "Database unavailable, queued save for player {} locally", uuid);
+                        }
                     } catch (Exception e) {
                         attempts++;
                         if (attempts >= maxRetryAttempts) {
                             e.printStackTrace();
                             plugin.getLogger().severe("Failed to save player data for UUID: " + uuid + " after " + maxRetryAttempts + " attempts!");
                             plugin.getLogger().severe("Error: " + e.getMessage());
-                            logDebug("Save failed after " + maxRetryAttempts + " attempts for player " + uuid + ". Error: " + e.getMessage());
+                            if (tracer.isEnabled()) {
+                                tracer.trace(uuid, "Save failed after {} attempts for player {}. Error: {}", maxRetryAttempts, uuid, e.getMessage());
+                            }
                             // Keep in cache for manual recovery
                         } else {
+                            // Exponential backoff with jitter so failing saves don't retry in lockstep
+                            long delay = CircuitBreaker.backoffDelay(attempts - 1, retryDelayMs, maxRetryDelayMs);
                             plugin.getLogger().warning("Failed to save player data for UUID: " + uuid + ", attempt " + attempts + " of " + maxRetryAttempts + ". Retrying...");
-                            logDebug("Save attempt " + attempts + " failed for player " + uuid + ". Error: " + e.getMessage() + ". Retrying in " + (retryDelayMs / 1000.0) + " seconds...");
+                            if (tracer.isEnabled()) {
+                                tracer.trace(uuid, "Save attempt {} failed for player {}. Error: {}. Retrying in {} seconds...", attempts, uuid, e.getMessage(), delay / 1000.0);
+                            }
                             try {
-                                Thread.sleep(retryDelayMs); // Wait before retry
+                                Thread.sleep(delay); // Wait before retry
                             } catch (InterruptedException ie) {
                                 Thread.currentThread().interrupt();
-                                logDebug("Interrupted while waiting to retry save for player " + uuid);
+                                tracer.trace(uuid, "Interrupted while waiting to retry save for player {}", uuid);
                                 break;
                             }
                         }
                     }
                 }
+            } catch (IllegalStateException e) {
+                plugin.getLogger().severe("Failed to encode player data for UUID: " + uuid + ": " + e.getMessage());
             } finally {
-                savingPlayers.remove(uuid);
-                logDebug("Finished save process for player " + uuid + " (removed from savingPlayers set)");
+                savingPlayers.remove(uuid, saveCompletion);
+                saveCompletion.complete(null);
+                tracer.trace(uuid, "Finished save process for player {} (removed from savingPlayers set)", uuid);
             }
-        });
+        };
+
+        if (!plugin.isEnabled()) {
+            // The scheduler rejects new tasks while the plugin is disabling, so shutdown saves run inline
+            saveTask.run();
+        } else if (previousSave != null) {
+            previousSave.whenComplete((ignored, error) -> plugin.getDatabaseExecutor().execute(saveTask));
+        } else {
+            plugin.getDatabaseExecutor().execute(saveTask);
+        }
+    }
+
+    private boolean writePlayerData(UUID uuid, StoredInventory data, boolean releaseLease, String reason) throws SQLException {
+        HandoffCoordinator handoff = plugin.getHandoffCoordinator();
+        // Without handoff the save is a plain upsert, with it the store only writes while this server owns the player
+        String leaseOwner = handoff.isEnabled() ? handoff.getServerId() : null;
+
+        long version = plugin.getDatabaseManager().getInventoryStore().save(uuid, data, leaseOwner, handoff.getLeaseSeconds(), releaseLease);
+        boolean saved = version >= 0;
+        plugin.getOfflineInventories().invalidate(uuid);
+        if (saved && releaseLease) {
+            // The player's last stored state, a reconnect within the TTL loads it from memory
+            recentQuits.put(uuid, new StoredInventory(data.getState(), version));
+        }
+        if (saved) {
+            lastSavedHashes.put(uuid, data.getStateHash());
+            plugin.getSnapshotHistory().record(uuid, data, reason);
+        } else {
+            plugin.getLogger().warning("Discarded save for " + uuid + ": another server owns this player's data now");
+        }
+        if (releaseLease) {
+            lastSavedHashes.remove(uuid);
+            plugin.getSnapshotHistory().forget(uuid);
+        }
+
+        // Success, remove from cache unless a newer snapshot replaced it meanwhile
+        playerDataCache.remove(uuid, data);
+        return saved;
+    }
+
+    /**
+     * Replaces the inventory of a player online on this server with a restored one and saves it.
+     * The inventory being replaced is recorded in the history first, so the restore can be undone.
+     * Must be called on the main thread. Returns false while the player's data is still loading.
+     */
+    public boolean restoreInventory(Player player, PlayerState restored) {
+        UUID uuid = player.getUniqueId();
+        if (loadingPlayers.contains(uuid)) {
+            return false;
+        }
+
+        StoredInventory current = new StoredInventory(SerializationUtils.serializePlayerState(PlayerState.capture(player)), 0L);
+        plugin.getDatabaseExecutor().execute(() -> plugin.getSnapshotHistory().record(uuid, current, "pre-restore"));
+
+        PlayerInventory inventory = player.getInventory();
+        inventory.clear();
+        inventory.setArmorContents(null);
+        restored.apply(player);
+        savePlayerData(player, true, false, "restore");
+        return true;
+    }
+
+    /**
+     * Writes a restored inventory for a player who isn't online on this server, recording the replaced
+     * inventory first. Runs on an async thread. Like offline edits, it is refused while the player is online
+     * here or a save of theirs is still pending, which would land after the restore and undo it, and while
+     * another server owns the player.
+     */
+    public OfflineInventories.WriteResult restoreOfflineInventory(UUID uuid, StoredInventory restored) throws SQLException {
+        if (Bukkit.getPlayer(uuid) != null || hasPendingSave(uuid)) {
+            return OfflineInventories.WriteResult.PLAYER_ACTIVE;
+        }
+
+        HandoffCoordinator handoff = plugin.getHandoffCoordinator();
+        InventoryStore store = plugin.getDatabaseManager().getInventoryStore();
+        if (handoff.isEnabled() && !store.tryAcquireLease(uuid, handoff.getServerId(), handoff.getLeaseSeconds())) {
+            return OfflineInventories.WriteResult.CONFLICT;
+        }
+
+        StoredInventory current = store.loadAll(Collections.singletonList(uuid)).get(uuid);
+        if (current != null) {
+            plugin.getSnapshotHistory().record(uuid, current, "pre-restore");
+        }
+        return writePlayerData(uuid, restored, true, "restore") ? OfflineInventories.WriteResult.SAVED : OfflineInventories.WriteResult.CONFLICT;
     }
 
     @EventHandler
     public void onInventoryClose(org.bukkit.event.inventory.InventoryCloseEvent event) {
         if (event.getPlayer() instanceof org.bukkit.entity.Player) {
             org.bukkit.entity.Player player = (org.bukkit.entity.Player) event.getPlayer();
-            savePlayerData(player.getUniqueId(), player.getInventory());
+            savePlayerData(player);
         }
     }
 
     @EventHandler
     public void onItemDrop(org.bukkit.event.player.PlayerDropItemEvent event) {
         // Save after a delay to batch multiple drops
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            savePlayerData(event.getPlayer().getUniqueId(), event.getPlayer().getInventory());
+        plugin.getTaskScheduler().runForEntityLater(event.getPlayer(), () -> {
+            savePlayerData(event.getPlayer());
         }, 20L); // 1 second delay
     }
 
@@ -279,8 +685,8 @@ public class PlayerDataListener implements Listener {
         if (event.getWhoClicked() instanceof org.bukkit.entity.Player) {
             org.bukkit.entity.Player player = (org.bukkit.entity.Player) event.getWhoClicked();
             // Save after a delay to batch multiple clicks
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                savePlayerData(player.getUniqueId(), player.getInventory());
+            plugin.getTaskScheduler().runForEntityLater(player, () -> {
+                savePlayerData(player);
             }, 20L); // 1 second delay
         }
     }
@@ -290,8 +696,8 @@ public class PlayerDataListener implements Listener {
         if (event.getEntity() instanceof org.bukkit.entity.Player) {
             org.bukkit.entity.Player player = (org.bukkit.entity.Player) event.getEntity();
             // Save after a delay to batch multiple pickups
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                savePlayerData(player.getUniqueId(), player.getInventory());
+            plugin.getTaskScheduler().runForEntityLater(player, () -> {
+                savePlayerData(player);
             }, 20L); // 1 second delay
         }
     }
@@ -301,8 +707,8 @@ public class PlayerDataListener implements Listener {
         if (event.getWhoClicked() instanceof org.bukkit.entity.Player) {
             org.bukkit.entity.Player player = (org.bukkit.entity.Player) event.getWhoClicked();
             // Save after a delay to batch multiple crafts
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                savePlayerData(player.getUniqueId(), player.getInventory());
+            plugin.getTaskScheduler().runForEntityLater(player, () -> {
+                savePlayerData(player);
             }, 20L); // 1 second delay
         }
     }
@@ -311,40 +717,40 @@ public class PlayerDataListener implements Listener {
     public void onPlayerDeath(org.bukkit.event.entity.PlayerDeathEvent event) {
         // Save player data after death (inventory will be empty or modified based on keepInventory gamerule)
         // This ensures we capture the state after death
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            savePlayerData(event.getEntity().getUniqueId(), event.getEntity().getInventory());
+        plugin.getTaskScheduler().runForEntityLater(event.getEntity(), () -> {
+            savePlayerData(event.getEntity());
         }, 5L); // Short delay to ensure death processing is complete
     }
 
     @EventHandler
     public void onPlayerRespawn(org.bukkit.event.player.PlayerRespawnEvent event) {
         // Save player data after respawn (inventory might be restored based on keepInventory gamerule)
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            savePlayerData(event.getPlayer().getUniqueId(), event.getPlayer().getInventory());
+        plugin.getTaskScheduler().runForEntityLater(event.getPlayer(), () -> {
+            savePlayerData(event.getPlayer());
         }, 5L); // Short delay to ensure respawn processing is complete
     }
 
     @EventHandler
     public void onItemConsume(org.bukkit.event.player.PlayerItemConsumeEvent event) {
         // Save player data after consuming an item (like potions, food)
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            savePlayerData(event.getPlayer().getUniqueId(), event.getPlayer().getInventory());
+        plugin.getTaskScheduler().runForEntityLater(event.getPlayer(), () -> {
+            savePlayerData(event.getPlayer());
         }, 5L); // Short delay to ensure item consumption is complete
     }
 
     @EventHandler
     public void onItemBreak(org.bukkit.event.player.PlayerItemBreakEvent event) {
         // Save player data after an item breaks (like tools, armor)
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            savePlayerData(event.getPlayer().getUniqueId(), event.getPlayer().getInventory());
+        plugin.getTaskScheduler().runForEntityLater(event.getPlayer(), () -> {
+            savePlayerData(event.getPlayer());
         }, 5L); // Short delay to ensure item break processing is complete
     }
 
     @EventHandler
     public void onSwapHandItems(org.bukkit.event.player.PlayerSwapHandItemsEvent event) {
         // Save player data after swapping items between main hand and off hand
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            savePlayerData(event.getPlayer().getUniqueId(), event.getPlayer().getInventory());
+        plugin.getTaskScheduler().runForEntityLater(event.getPlayer(), () -> {
+            savePlayerData(event.getPlayer());
         }, 5L); // Short delay to ensure hand swap processing is complete
     }
 }
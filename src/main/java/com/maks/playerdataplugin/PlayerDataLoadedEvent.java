@@ -0,0 +1,36 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.player.PlayerEvent;
+
+/**
+ * Called on the main thread once a joining player's stored state has been applied (or they turned out to
+ * have none). Until then the player's inventory is empty and isn't saved.
+ */
+public class PlayerDataLoadedEvent extends PlayerEvent {
+
+    private static final HandlerList handlers = new HandlerList();
+    private final boolean storedData;
+
+    public PlayerDataLoadedEvent(Player player, boolean storedData) {
+        super(player);
+        this.storedData = storedData;
+    }
+
+    /**
+     * False for players without saved data, such as first joins.
+     */
+    public boolean hasStoredData() {
+        return storedData;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
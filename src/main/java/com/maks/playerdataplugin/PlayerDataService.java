@@ -0,0 +1,39 @@
+package com.maks.playerdataplugin;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service for other plugins, registered in Bukkit's ServicesManager. Lookups are served from the plugin's
+ * caches where possible and never block. Returned futures may complete on any thread, switch to the main
+ * thread before using the Bukkit API.
+ */
+public interface PlayerDataService {
+
+    /**
+     * The player's statistics, or null if they have none. For online players this completes once their
+     * stats have loaded, offline players are looked up in storage.
+     */
+    CompletableFuture<PlayerStatsSnapshot> getStats(UUID uuid);
+
+    /**
+     * The statistics of an online player whose stats have loaded, otherwise null.
+     */
+    PlayerStatsSnapshot getCachedStats(UUID uuid);
+
+    /**
+     * Completes with true once an online player's stored state has been applied, or with false if they
+     * aren't online or leave before it is.
+     */
+    CompletableFuture<Boolean> whenDataLoaded(UUID uuid);
+
+    /**
+     * Whether the player is online and their stored state has been applied.
+     */
+    boolean isDataLoaded(UUID uuid);
+
+    /**
+     * The UUID last stored for a username, or null if it is unknown.
+     */
+    CompletableFuture<UUID> findUuidByUsername(String username);
+}
@@ -0,0 +1,202 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Material;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.potion.PotionEffect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Everything persisted about a player: the full inventory (on 1.20 the contents already include armor
+ * and offhand), ender chest, experience, health, hunger and active potion effects.
+ * Records migrated from the old inventory/armor columns only carry the inventory.
+ */
+public class PlayerState {
+
+    private final ItemStack[] contents;
+    private final ItemStack[] enderChest;
+    private final boolean hasStatus;
+    private final int level;
+    private final float exp;
+    private final int totalExperience;
+    private final double health;
+    private final int foodLevel;
+    private final float saturation;
+    private final float exhaustion;
+    private final List<PotionEffect> effects;
+
+    public PlayerState(ItemStack[] contents, ItemStack[] enderChest, int level, float exp, int totalExperience,
+                       double health, int foodLevel, float saturation, float exhaustion, List<PotionEffect> effects) {
+        this.contents = contents;
+        this.enderChest = enderChest;
+        this.hasStatus = true;
+        this.level = level;
+        this.exp = exp;
+        this.totalExperience = totalExperience;
+        this.health = health;
+        this.foodLevel = foodLevel;
+        this.saturation = saturation;
+        this.exhaustion = exhaustion;
+        this.effects = effects;
+    }
+
+    private PlayerState(ItemStack[] contents, ItemStack[] enderChest) {
+        this.contents = contents;
+        this.enderChest = enderChest;
+        this.hasStatus = false;
+        this.level = 0;
+        this.exp = 0f;
+        this.totalExperience = 0;
+        this.health = 0.0;
+        this.foodLevel = 0;
+        this.saturation = 0f;
+        this.exhaustion = 0f;
+        this.effects = new ArrayList<>();
+    }
+
+    /**
+     * Captures the player's current state. Must be called on the main thread; the stacks are cloned,
+     * so the snapshot can be encoded on another thread while the player keeps changing the inventory.
+     */
+    public static PlayerState capture(Player player) {
+        return new PlayerState(
+                snapshot(player.getInventory().getContents()),
+                snapshot(player.getEnderChest().getContents()),
+                player.getLevel(),
+                player.getExp(),
+                player.getTotalExperience(),
+                player.getHealth(),
+                player.getFoodLevel(),
+                player.getSaturation(),
+                player.getExhaustion(),
+                new ArrayList<>(player.getActivePotionEffects()));
+    }
+
+    private static ItemStack[] snapshot(ItemStack[] items) {
+        ItemStack[] copy = new ItemStack[items.length];
+        for (int i = 0; i < items.length; i++) {
+            copy[i] = items[i] == null ? null : items[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Whether any stack in the inventory or ender chest is one of the given materials.
+     */
+    public boolean containsAny(Set<Material> materials) {
+        return !materials.isEmpty() && (containsAny(contents, materials) || containsAny(enderChest, materials));
+    }
+
+    private static boolean containsAny(ItemStack[] items, Set<Material> materials) {
+        if (items == null) {
+            return false;
+        }
+        for (ItemStack item : items) {
+            if (item != null && materials.contains(item.getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds a state from the old two-column format. Either part may be null or corrupted, in which case
+     * it is skipped without affecting the other one.
+     */
+    public static PlayerState fromLegacy(String inventoryData, String armorData) {
+        ItemStack[] contents = null;
+        if (inventoryData != null && !inventoryData.isEmpty()) {
+            try {
+                contents = SerializationUtils.deserializeItemStackArray(inventoryData);
+            } catch (IllegalStateException e) {
+                contents = null;
+            }
+        }
+
+        if (armorData != null && !armorData.isEmpty()) {
+            try {
+                ItemStack[] armor = SerializationUtils.deserializeItemStackArray(armorData);
+                // Armor occupies slots 36-39 of the full contents, the old format stored it a second time
+                if (contents == null) {
+                    contents = new ItemStack[41];
+                }
+                if (contents.length >= 36 + armor.length) {
+                    System.arraycopy(armor, 0, contents, 36, armor.length);
+                }
+            } catch (IllegalStateException e) {
+                // Keep whatever the inventory column had in the armor slots
+            }
+        }
+
+        return inventoryOnly(contents, null);
+    }
+
+    /**
+     * A state that leaves experience, health, hunger and effects of the player untouched when applied.
+     */
+    public static PlayerState inventoryOnly(ItemStack[] contents, ItemStack[] enderChest) {
+        return new PlayerState(contents == null ? new ItemStack[0] : contents, enderChest);
+    }
+
+    /**
+     * The same state with other inventory contents and ender chest, keeping experience, health and effects.
+     */
+    public PlayerState withItems(ItemStack[] contents, ItemStack[] enderChest) {
+        if (!hasStatus) {
+            return inventoryOnly(contents, enderChest);
+        }
+        return new PlayerState(contents, enderChest, level, exp, totalExperience, health, foodLevel, saturation, exhaustion, effects);
+    }
+
+    /**
+     * Applies the state to the player. Must be called on the main thread.
+     */
+    public void apply(Player player) {
+        PlayerInventory inventory = player.getInventory();
+        if (contents.length > 0) {
+            inventory.setContents(contents);
+        }
+        if (enderChest != null) {
+            player.getEnderChest().setContents(enderChest);
+        }
+        if (!hasStatus) {
+            return;
+        }
+
+        player.setLevel(level);
+        player.setExp(exp);
+        player.setTotalExperience(totalExperience);
+        AttributeInstance maxHealth = player.getAttribute(Attribute.GENERIC_MAX_HEALTH);
+        if (health > 0.0) {
+            player.setHealth(maxHealth == null ? health : Math.min(health, maxHealth.getValue()));
+        }
+        player.setFoodLevel(foodLevel);
+        player.setSaturation(saturation);
+        player.setExhaustion(exhaustion);
+
+        for (PotionEffect active : player.getActivePotionEffects()) {
+            player.removePotionEffect(active.getType());
+        }
+        for (PotionEffect effect : effects) {
+            player.addPotionEffect(effect);
+        }
+    }
+
+    public ItemStack[] getContents() { return contents; }
+    public ItemStack[] getEnderChest() { return enderChest; }
+    public boolean hasStatus() { return hasStatus; }
+    public int getLevel() { return level; }
+    public float getExp() { return exp; }
+    public int getTotalExperience() { return totalExperience; }
+    public double getHealth() { return health; }
+    public int getFoodLevel() { return foodLevel; }
+    public float getSaturation() { return saturation; }
+    public float getExhaustion() { return exhaustion; }
+    public List<PotionEffect> getEffects() { return effects; }
+}
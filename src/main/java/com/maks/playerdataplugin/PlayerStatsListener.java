@@ -12,24 +12,24 @@ import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.server.ServerCommandEvent;
 
-import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PlayerStatsListener implements Listener {
 
     private final Main plugin;
     private final PlayerStatsManager statsManager;
-    private boolean debugMode = false;
-    // Set to track players who recently used the suicide command
-    private final Set<UUID> recentSuicideCommandUsers = new HashSet<>();
+    private final Tracer tracer;
+    // Set to track players who recently used the suicide command, updated from every region's thread on Folia
+    private final Set<UUID> recentSuicideCommandUsers = ConcurrentHashMap.newKeySet();
     // Whether to count deaths caused by the suicide command
     private boolean countSuicideCommandDeaths = true;
 
     public PlayerStatsListener(Main plugin, PlayerStatsManager statsManager) {
         this.plugin = plugin;
         this.statsManager = statsManager;
-        this.debugMode = plugin.getConfig().getBoolean("debug", false);
+        this.tracer = new Tracer(plugin.getTraceBuffer(), "STATS-DEBUG");
         this.countSuicideCommandDeaths = plugin.getConfig().getBoolean("deathStats.countSuicideCommandDeaths", true);
 
         if (!countSuicideCommandDeaths) {
@@ -37,12 +37,6 @@ public class PlayerStatsListener implements Listener {
         }
     }
 
-    private void logDebug(String message) {
-        if (debugMode) {
-            plugin.getLogger().info("[STATS-DEBUG] " + message);
-        }
-    }
-
     /**
      * Listens for player commands to detect when a player uses the /suicide command
      */
@@ -60,7 +54,7 @@ public class PlayerStatsListener implements Listener {
             Player player = event.getPlayer();
             UUID playerUUID = player.getUniqueId();
 
-            logDebug("Player " + player.getName() + " used the suicide command via chat/console");
+            tracer.trace(playerUUID, "Player {} used the suicide command via chat/console", player.getName());
             markPlayerForSuicideCommand(player);
         }
     }
@@ -78,7 +72,7 @@ public class PlayerStatsListener implements Listener {
 
         // Check for execute commands that might run suicide for a player
         if (command.startsWith("execute") && command.contains("suicide")) {
-            logDebug("Detected potential suicide command via execute: " + command);
+            tracer.trace(null, "Detected potential suicide command via execute: {}", command);
             // This is more complex to parse, but we'll handle it in the death event
         }
     }
@@ -89,16 +83,16 @@ public class PlayerStatsListener implements Listener {
     private void markPlayerForSuicideCommand(Player player) {
         UUID playerUUID = player.getUniqueId();
 
-        logDebug("Marking player " + player.getName() + " as suicide command user");
+        tracer.trace(playerUUID, "Marking player {} as suicide command user", player.getName());
 
         // Add player to the tracking set
         recentSuicideCommandUsers.add(playerUUID);
 
         // Remove player from tracking set after a longer delay to ensure we catch the death
-        plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+        plugin.getTaskScheduler().runGlobalLater(() -> {
             boolean removed = recentSuicideCommandUsers.remove(playerUUID);
             if (removed) {
-                logDebug("Removed " + player.getName() + " from suicide command tracking (timeout)");
+                tracer.trace(playerUUID, "Removed {} from suicide command tracking (timeout)", player.getName());
             }
         }, 200L); // 10 seconds (200 ticks) - longer timeout to be safe
     }
@@ -108,7 +102,7 @@ public class PlayerStatsListener implements Listener {
         UUID uuid = event.getPlayer().getUniqueId();
         String playerName = event.getPlayer().getName();
 
-        logDebug("Player " + playerName + " joined, loading stats and starting playtime tracking");
+        tracer.trace(uuid, "Player {} joined, loading stats and starting playtime tracking", playerName);
 
         // Load player stats
         statsManager.loadPlayerStats(uuid);
@@ -122,7 +116,7 @@ public class PlayerStatsListener implements Listener {
         UUID uuid = event.getPlayer().getUniqueId();
         String playerName = event.getPlayer().getName();
 
-        logDebug("Player " + playerName + " quit, stopping playtime tracking and saving stats");
+        tracer.trace(uuid, "Player {} quit, stopping playtime tracking and saving stats", playerName);
 
         // Stop playtime tracking
         statsManager.stopPlaytimeTracking(uuid);
@@ -147,9 +141,7 @@ public class PlayerStatsListener implements Listener {
 
         // This is a mob kill
         UUID killerUUID = killer.getUniqueId();
-        String mobType = victim.getType().name();
-
-        logDebug("Player " + killer.getName() + " killed mob: " + mobType);
+        tracer.trace(killerUUID, "Player {} killed mob: {}", killer.getName(), victim.getType());
 
         // Increment mob kills
         statsManager.incrementMobKills(killerUUID);
@@ -158,7 +150,9 @@ public class PlayerStatsListener implements Listener {
         PlayerStatsManager.PlayerStats stats = statsManager.getPlayerStats(killerUUID);
         if (stats != null && stats.getMobsKilled() % 10 == 0) {
             statsManager.savePlayerStats(killerUUID);
-            logDebug("Auto-saved stats for " + killer.getName() + " after " + stats.getMobsKilled() + " mob kills");
+            if (tracer.isEnabled()) {
+                tracer.trace(killerUUID, "Auto-saved stats for {} after {} mob kills", killer.getName(), stats.getMobsKilled());
+            }
         }
     }
 
@@ -170,7 +164,9 @@ public class PlayerStatsListener implements Listener {
         UUID victimUUID = victim.getUniqueId();
         String victimName = victim.getName();
 
-        logDebug("Player " + victimName + " died. Cause: " + (event.getDeathMessage() != null ? event.getDeathMessage() : "Unknown"));
+        if (tracer.isEnabled()) {
+            tracer.trace(victimUUID, "Player {} died. Cause: {}", victimName, event.getDeathMessage() != null ? event.getDeathMessage() : "Unknown");
+        }
 
         // Check if this death was caused by the suicide command
         boolean isSuicideCommand = recentSuicideCommandUsers.remove(victimUUID);
@@ -184,26 +180,26 @@ public class PlayerStatsListener implements Listener {
                 if (lowerDeathMessage.contains("died") && killer == null) {
                     // If player died without a killer and we just detected potential suicide command usage
                     // This is a fallback detection method
-                    logDebug("Potential suicide death detected via death message analysis for " + victimName);
+                    tracer.trace(victimUUID, "Potential suicide death detected via death message analysis for {}", victimName);
 
                     // Additional check: if player's health was set to 0 recently (indicating manual suicide)
                     if (victim.getHealth() <= 0) {
                         isSuicideCommand = true;
-                        logDebug("Confirmed suicide death for " + victimName + " via health check");
+                        tracer.trace(victimUUID, "Confirmed suicide death for {} via health check", victimName);
                     }
                 }
             }
         }
 
         if (isSuicideCommand && !countSuicideCommandDeaths) {
-            logDebug("Death of " + victimName + " was caused by suicide command - not counting as a death");
+            tracer.trace(victimUUID, "Death of {} was caused by suicide command - not counting as a death", victimName);
         } else {
             // Increment death count if it wasn't a suicide command or if we're configured to count suicide deaths
             statsManager.incrementDeaths(victimUUID);
             if (isSuicideCommand) {
-                logDebug("Death of " + victimName + " was caused by suicide command but counting as a death (per config)");
+                tracer.trace(victimUUID, "Death of {} was caused by suicide command but counting as a death (per config)", victimName);
             } else {
-                logDebug("Death of " + victimName + " counted as normal death");
+                tracer.trace(victimUUID, "Death of {} counted as normal death", victimName);
             }
         }
 
@@ -212,7 +208,7 @@ public class PlayerStatsListener implements Listener {
             UUID killerUUID = killer.getUniqueId();
             String killerName = killer.getName();
 
-            logDebug("Player " + killerName + " killed player " + victimName);
+            tracer.trace(killerUUID, "Player {} killed player {}", killerName, victimName);
             statsManager.incrementPlayerKills(killerUUID);
 
             // Save killer's stats
@@ -225,22 +221,10 @@ public class PlayerStatsListener implements Listener {
 
     // Periodic stats save for online players (called from scheduled task in Main)
     public void saveAllOnlinePlayersStats() {
-        logDebug("Saving stats for all online players");
-
-        plugin.getServer().getOnlinePlayers().forEach(player -> {
-            UUID uuid = player.getUniqueId();
-
-            // Update balance from Vault before saving
-            if (statsManager.getEconomy() != null) {
-                double currentBalance = statsManager.getEconomy().getBalance(player);
-                PlayerStatsManager.PlayerStats stats = statsManager.getPlayerStats(uuid);
-                if (stats != null) {
-                    stats.setBalance(currentBalance);
-                }
-            }
+        tracer.trace(null, "Saving stats for all online players");
 
-            statsManager.savePlayerStats(uuid);
-        });
+        // Balances come from the sampler's cache, so the flush makes no economy calls
+        plugin.getServer().getOnlinePlayers().forEach(player -> statsManager.savePlayerStats(player.getUniqueId()));
     }
 
     /**
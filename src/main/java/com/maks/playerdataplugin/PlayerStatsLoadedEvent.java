@@ -0,0 +1,32 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.player.PlayerEvent;
+
+/**
+ * Called on the main thread once a joining player's statistics are loaded and tracked.
+ */
+public class PlayerStatsLoadedEvent extends PlayerEvent {
+
+    private static final HandlerList handlers = new HandlerList();
+    private final PlayerStatsSnapshot stats;
+
+    public PlayerStatsLoadedEvent(Player player, PlayerStatsSnapshot stats) {
+        super(player);
+        this.stats = stats;
+    }
+
+    public PlayerStatsSnapshot getStats() {
+        return stats;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
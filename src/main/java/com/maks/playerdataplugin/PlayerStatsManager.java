@@ -5,11 +5,10 @@ import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.RegisteredServiceProvider;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 
@@ -17,9 +16,14 @@ public class PlayerStatsManager {
 
     private final Main plugin;
     private Economy economy = null;
+    private BalanceSampler balanceSampler;
     private final Map<UUID, PlayerStats> statsCache = new ConcurrentHashMap<>();
     private final Map<UUID, Long> sessionStartTimes = new ConcurrentHashMap<>();
-    private boolean debugMode = false;
+    // Callers waiting for an online player's stats to finish loading
+    private final Map<UUID, CompletableFuture<PlayerStats>> pendingStats = new ConcurrentHashMap<>();
+    private final Tracer tracer;
+    private final BatchLoader<PlayerStats> statsLoader;
+    private static final long LOAD_RETRY_TICKS = 100L; // 5 seconds
 
     public static class PlayerStats {
         private int mobsKilled;
@@ -55,162 +59,155 @@ public class PlayerStatsManager {
         public void incrementPlayersKilled() { this.playersKilled++; }
         public void incrementDeaths() { this.deaths++; }
         public void addPlaytime(double hours) { this.playtimeHours += hours; }
+
+        public PlayerStatsSnapshot snapshot() { return new PlayerStatsSnapshot(this); }
     }
 
     public PlayerStatsManager(Main plugin) {
         this.plugin = plugin;
-        this.debugMode = plugin.getConfig().getBoolean("debug", false);
-        setupEconomy();
-    }
-
-    private void logDebug(String message) {
-        if (debugMode) {
-            plugin.getLogger().info("[STATS-DEBUG] " + message);
-        }
+        this.tracer = new Tracer(plugin.getTraceBuffer(), "STATS-DEBUG");
+        this.statsLoader = new BatchLoader<>(plugin, "stats",
+                plugin.getConfig().getInt("loader.maxBatchSize", 100),
+                plugin.getConfig().getLong("loader.batchWindowMs", 5),
+                this::queryPlayerStats);
     }
 
-    private boolean setupEconomy() {
+    /**
+     * Looks up the Vault economy. Called on the first tick, once every plugin that might provide it is enabled.
+     */
+    public boolean setupEconomy() {
         if (plugin.getServer().getPluginManager().getPlugin("Vault") == null) {
-            logDebug("Vault plugin not found, economy features disabled");
+            tracer.trace(null, "Vault plugin not found, economy features disabled");
             return false;
         }
 
         RegisteredServiceProvider<Economy> rsp = plugin.getServer().getServicesManager().getRegistration(Economy.class);
         if (rsp == null) {
-            logDebug("Economy service provider not found");
+            tracer.trace(null, "Economy service provider not found");
             return false;
         }
 
         economy = rsp.getProvider();
-        logDebug("Economy service connected: " + (economy != null));
-        return economy != null;
-    }
-
-    public void createStatsTable() throws SQLException {
-        String sql = "CREATE TABLE IF NOT EXISTS player_stats (" +
-                "uuid VARCHAR(36) NOT NULL PRIMARY KEY," +
-                "username VARCHAR(16)," +
-                "mobs_killed INT DEFAULT 0," +
-                "players_killed INT DEFAULT 0," +
-                "deaths INT DEFAULT 0," +
-                "playtime_hours DOUBLE DEFAULT 0.0," +
-                "balance DOUBLE DEFAULT 0.0," +
-                "last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
-                ");";
-
-        try (Connection connection = plugin.getDatabaseManager().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.execute();
-            logDebug("Player stats table created/verified");
+        tracer.trace(null, "Economy service connected: {}", economy != null);
+        if (economy != null) {
+            balanceSampler = new BalanceSampler(plugin, economy);
         }
+        return economy != null;
     }
 
     public void loadPlayerStats(UUID uuid) {
-        logDebug("Loading stats for player " + uuid);
-
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try (Connection conn = plugin.getDatabaseManager().getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "SELECT username, mobs_killed, players_killed, deaths, playtime_hours, balance FROM player_stats WHERE uuid=?")) {
-
-                stmt.setString(1, uuid.toString());
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    PlayerStats stats;
-                    if (rs.next()) {
-                        String storedUsername = rs.getString("username");
-                        stats = new PlayerStats(
-                                rs.getInt("mobs_killed"),
-                                rs.getInt("players_killed"),
-                                rs.getInt("deaths"),
-                                rs.getDouble("playtime_hours"),
-                                rs.getDouble("balance")
-                        );
-                        logDebug("Loaded existing stats for " + uuid + " (username: " + storedUsername + "): " + 
-                                "mobs=" + stats.getMobsKilled() + 
-                                ", players=" + stats.getPlayersKilled() + 
-                                ", deaths=" + stats.getDeaths() + 
-                                ", playtime=" + String.format("%.2f", stats.getPlaytimeHours()) + "h");
-                    } else {
-                        // Create new stats entry
-                        stats = new PlayerStats(0, 0, 0, 0.0, 0.0);
-                        logDebug("Created new stats entry for " + uuid);
+        tracer.trace(uuid, "Loading stats for player {}", uuid);
+
+        statsLoader.load(uuid).whenComplete((loaded, error) -> {
+            if (error != null) {
+                // Without cached stats nothing is tracked or saved, so retry while the player is online
+                plugin.getLogger().severe("Failed to load player stats for " + uuid + ", retrying in " + (LOAD_RETRY_TICKS / 20) + " seconds");
+                plugin.getTaskScheduler().runGlobalLater(() -> {
+                    if (Bukkit.getPlayer(uuid) != null && !statsCache.containsKey(uuid)) {
+                        loadPlayerStats(uuid);
                     }
+                }, LOAD_RETRY_TICKS);
+                return;
+            }
 
-                    statsCache.put(uuid, stats);
+            PlayerStats stats;
+            if (loaded != null) {
+                stats = loaded;
+                if (tracer.isEnabled()) {
+                    tracer.traceAll(uuid, "Loaded existing stats for {}: mobs={}, players={}, deaths={}, playtime={}h",
+                            uuid, stats.getMobsKilled(), stats.getPlayersKilled(), stats.getDeaths(), stats.getPlaytimeHours());
+                }
+            } else {
+                // Create new stats entry
+                stats = new PlayerStats(0, 0, 0, 0.0, 0.0);
+                tracer.trace(uuid, "Created new stats entry for {}", uuid);
+            }
 
-                    // Update balance from Vault if available
-                    if (economy != null) {
-                        Player player = Bukkit.getPlayer(uuid);
-                        if (player != null && player.isOnline()) {
-                            double currentBalance = economy.getBalance(player);
-                            stats.setBalance(currentBalance);
-                            logDebug("Updated balance from Vault for " + uuid + ": " + currentBalance);
-                        }
+            // The balance is taken from the sampler when the stats are saved or shown
+            statsCache.put(uuid, stats);
+            CompletableFuture<PlayerStats> waiting = pendingStats.remove(uuid);
+            if (waiting != null) {
+                waiting.complete(stats);
+            }
+            if (plugin.isEnabled()) {
+                plugin.getTaskScheduler().runForPlayer(uuid, () -> {
+                    Player player = Bukkit.getPlayer(uuid);
+                    if (player != null && statsCache.get(uuid) == stats) {
+                        Bukkit.getPluginManager().callEvent(new PlayerStatsLoadedEvent(player, stats.snapshot()));
                     }
-                }
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to load player stats for " + uuid);
-                e.printStackTrace();
+                });
             }
         });
     }
 
+    // Fetches the stats for a whole batch of joining players with one store call
+    private Map<UUID, PlayerStats> queryPlayerStats(List<UUID> uuids) throws SQLException {
+        return plugin.getDatabaseManager().getStatsStore().loadAll(uuids);
+    }
+
+    public BatchLoader<?> getStatsLoader() {
+        return statsLoader;
+    }
+
     public void savePlayerStats(UUID uuid) {
         PlayerStats stats = statsCache.get(uuid);
         if (stats == null) {
-            logDebug("No stats to save for player " + uuid);
+            tracer.trace(uuid, "No stats to save for player {}", uuid);
             return;
         }
 
-        logDebug("Saving stats for player " + uuid);
+        tracer.trace(uuid, "Saving stats for player {}", uuid);
 
         // Get current username
         String username = null;
         Player player = Bukkit.getPlayer(uuid);
         if (player != null) {
             username = player.getName();
-
-            // Update balance from Vault before saving
-            if (economy != null && player.isOnline()) {
-                double currentBalance = economy.getBalance(player);
-                stats.setBalance(currentBalance);
-                logDebug("Updated balance before save for " + uuid + ": " + currentBalance);
-            }
+            updateBalance(uuid, stats);
         }
 
         final String finalUsername = username;
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try (Connection conn = plugin.getDatabaseManager().getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "REPLACE INTO player_stats (uuid, username, mobs_killed, players_killed, deaths, playtime_hours, balance) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
-
-                stmt.setString(1, uuid.toString());
-                stmt.setString(2, finalUsername);
-                stmt.setInt(3, stats.getMobsKilled());
-                stmt.setInt(4, stats.getPlayersKilled());
-                stmt.setInt(5, stats.getDeaths());
-                stmt.setDouble(6, stats.getPlaytimeHours());
-                stmt.setDouble(7, stats.getBalance());
-
-                stmt.executeUpdate();
-                logDebug("Successfully saved stats for " + uuid + " (username: " + finalUsername + ")" +
-                        ": mobs=" + stats.getMobsKilled() + 
-                        ", players=" + stats.getPlayersKilled() + 
-                        ", deaths=" + stats.getDeaths() + 
-                        ", playtime=" + String.format("%.2f", stats.getPlaytimeHours()) + "h" +
-                        ", balance=" + String.format("%.2f", stats.getBalance()));
-
+        Runnable saveTask = () -> {
+            try {
+                boolean written = plugin.getDatabaseManager().executeOrQueue("stats:" + uuid,
+                        () -> plugin.getDatabaseManager().getStatsStore().save(uuid, finalUsername, stats));
+
+                if (written) {
+                    if (tracer.isEnabled()) {
+                        tracer.traceAll(uuid, "Successfully saved stats for {} (username: {}): mobs={}, players={}, deaths={}, playtime={}h, balance={}",
+                                uuid, finalUsername, stats.getMobsKilled(), stats.getPlayersKilled(), stats.getDeaths(),
+                                stats.getPlaytimeHours(), stats.getBalance());
+                    }
+                } else {
+                    tracer.trace(uuid, "Database unavailable, queued stats save for {} locally", uuid);
+                }
             } catch (SQLException e) {
                 plugin.getLogger().severe("Failed to save player stats for " + uuid);
                 e.printStackTrace();
             }
-        });
+        };
+
+        if (plugin.isEnabled()) {
+            plugin.getDatabaseExecutor().execute(saveTask);
+        } else {
+            // The scheduler rejects new tasks while the plugin is disabling, so shutdown saves run inline
+            saveTask.run();
+        }
+    }
+
+    /**
+     * Copies the player's sampled balance into their stats, if the sampler has one.
+     */
+    public void updateBalance(UUID uuid, PlayerStats stats) {
+        BalanceSampler.Sample sample = balanceSampler != null ? balanceSampler.getSample(uuid) : null;
+        if (sample != null) {
+            stats.setBalance(sample.getBalance());
+        }
     }
 
     public void startPlaytimeTracking(UUID uuid) {
         sessionStartTimes.put(uuid, System.currentTimeMillis());
-        logDebug("Started playtime tracking for " + uuid);
+        tracer.trace(uuid, "Started playtime tracking for {}", uuid);
     }
 
     public void stopPlaytimeTracking(UUID uuid) {
@@ -222,9 +219,10 @@ public class PlayerStatsManager {
             PlayerStats stats = statsCache.get(uuid);
             if (stats != null) {
                 stats.addPlaytime(sessionHours);
-                logDebug("Stopped playtime tracking for " + uuid + 
-                        ", session duration: " + String.format("%.3f", sessionHours) + " hours" +
-                        ", total playtime: " + String.format("%.2f", stats.getPlaytimeHours()) + " hours");
+                if (tracer.isEnabled()) {
+                    tracer.trace(uuid, "Stopped playtime tracking for {}, session duration: {} hours, total playtime: {} hours",
+                            uuid, sessionHours, stats.getPlaytimeHours());
+                }
             }
         }
     }
@@ -234,7 +232,9 @@ public class PlayerStatsManager {
         PlayerStats stats = statsCache.get(uuid);
         if (stats != null) {
             stats.incrementMobsKilled();
-            logDebug("Incremented mob kills for " + uuid + " to " + stats.getMobsKilled());
+            if (tracer.isEnabled()) {
+                tracer.trace(uuid, "Incremented mob kills for {} to {}", uuid, stats.getMobsKilled());
+            }
         }
     }
 
@@ -242,7 +242,9 @@ public class PlayerStatsManager {
         PlayerStats stats = statsCache.get(uuid);
         if (stats != null) {
             stats.incrementPlayersKilled();
-            logDebug("Incremented player kills for " + uuid + " to " + stats.getPlayersKilled());
+            if (tracer.isEnabled()) {
+                tracer.trace(uuid, "Incremented player kills for {} to {}", uuid, stats.getPlayersKilled());
+            }
         }
     }
 
@@ -250,7 +252,9 @@ public class PlayerStatsManager {
         PlayerStats stats = statsCache.get(uuid);
         if (stats != null) {
             stats.incrementDeaths();
-            logDebug("Incremented deaths for " + uuid + " to " + stats.getDeaths());
+            if (tracer.isEnabled()) {
+                tracer.trace(uuid, "Incremented deaths for {} to {}", uuid, stats.getDeaths());
+            }
         }
     }
 
@@ -258,46 +262,65 @@ public class PlayerStatsManager {
         return statsCache.get(uuid);
     }
 
+    /**
+     * Completes with the stats of an online player once they have loaded, or with null if the player leaves first.
+     */
+    public CompletableFuture<PlayerStats> awaitPlayerStats(UUID uuid) {
+        PlayerStats cached = statsCache.get(uuid);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<PlayerStats> waiting = pendingStats.computeIfAbsent(uuid, key -> new CompletableFuture<>());
+        // The load may have finished between the two lookups
+        cached = statsCache.get(uuid);
+        if (cached != null && pendingStats.remove(uuid, waiting)) {
+            waiting.complete(cached);
+        }
+        return waiting;
+    }
+
     public void removeFromCache(UUID uuid) {
         statsCache.remove(uuid);
         sessionStartTimes.remove(uuid);
-        logDebug("Removed " + uuid + " from stats cache");
+        CompletableFuture<PlayerStats> waiting = pendingStats.remove(uuid);
+        if (waiting != null) {
+            waiting.complete(null);
+        }
+        if (balanceSampler != null) {
+            balanceSampler.forget(uuid);
+        }
+        tracer.trace(uuid, "Removed {} from stats cache", uuid);
     }
 
     public Economy getEconomy() {
         return economy;
     }
 
+    public BalanceSampler getBalanceSampler() {
+        return balanceSampler;
+    }
+
     // Method to find UUID by username from database
     public void findPlayerByUsername(String username, java.util.function.Consumer<UUID> callback) {
-        logDebug("Searching for player by username: " + username);
-
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try (Connection conn = plugin.getDatabaseManager().getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "SELECT uuid FROM player_stats WHERE LOWER(username) = LOWER(?) LIMIT 1")) {
-
-                stmt.setString(1, username);
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        String uuidString = rs.getString("uuid");
-                        UUID uuid = UUID.fromString(uuidString);
-                        logDebug("Found UUID " + uuid + " for username " + username);
-
-                        // Run callback on main thread
-                        Bukkit.getScheduler().runTask(plugin, () -> callback.accept(uuid));
-                    } else {
-                        logDebug("No UUID found for username " + username);
-                        // Run callback on main thread with null
-                        Bukkit.getScheduler().runTask(plugin, () -> callback.accept(null));
-                    }
+        tracer.trace(null, "Searching for player by username: {}", username);
+
+        plugin.getDatabaseExecutor().execute(() -> {
+            try {
+                UUID uuid = plugin.getDatabaseManager().getStatsStore().findUuidByUsername(username);
+                if (uuid != null) {
+                    tracer.trace(uuid, "Found UUID {} for username {}", uuid, username);
+                } else {
+                    tracer.trace(null, "No UUID found for username {}", username);
                 }
+
+                // Run callback on main thread
+                plugin.getTaskScheduler().runGlobal(() -> callback.accept(uuid));
             } catch (SQLException e) {
                 plugin.getLogger().severe("Failed to search for player by username: " + username);
                 e.printStackTrace();
                 // Run callback on main thread with null
-                Bukkit.getScheduler().runTask(plugin, () -> callback.accept(null));
+                plugin.getTaskScheduler().runGlobal(() -> callback.accept(null));
             }
         });
     }
@@ -311,41 +334,25 @@ public class PlayerStatsManager {
             return;
         }
 
-        logDebug("Stats not cached for " + uuid + ", loading from database");
-
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try (Connection conn = plugin.getDatabaseManager().getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "SELECT username, mobs_killed, players_killed, deaths, playtime_hours, balance FROM player_stats WHERE uuid=?")) {
-
-                stmt.setString(1, uuid.toString());
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    PlayerStats stats;
-                    if (rs.next()) {
-                        String storedUsername = rs.getString("username");
-                        stats = new PlayerStats(
-                                rs.getInt("mobs_killed"),
-                                rs.getInt("players_killed"),
-                                rs.getInt("deaths"),
-                                rs.getDouble("playtime_hours"),
-                                rs.getDouble("balance")
-                        );
-                        logDebug("Loaded stats from database for " + uuid + " (username: " + storedUsername + ")");
-                    } else {
-                        // No stats found
-                        stats = null;
-                        logDebug("No stats found in database for " + uuid);
-                    }
+        tracer.trace(uuid, "Stats not cached for {}, loading from database", uuid);
 
-                    // Run callback on main thread
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(stats));
+        plugin.getDatabaseExecutor().execute(() -> {
+            try {
+                PlayerStats stats = plugin.getDatabaseManager().getStatsStore().load(uuid);
+                if (stats != null) {
+                    tracer.trace(uuid, "Loaded stats from storage for {}", uuid);
+                } else {
+                    // No stats found
+                    tracer.trace(uuid, "No stats found in storage for {}", uuid);
                 }
+
+                // Run callback on main thread
+                plugin.getTaskScheduler().runGlobal(() -> callback.accept(stats));
             } catch (SQLException e) {
                 plugin.getLogger().severe("Failed to load player stats for " + uuid);
                 e.printStackTrace();
                 // Run callback on main thread with null
-                Bukkit.getScheduler().runTask(plugin, () -> callback.accept(null));
+                plugin.getTaskScheduler().runGlobal(() -> callback.accept(null));
             }
         });
     }
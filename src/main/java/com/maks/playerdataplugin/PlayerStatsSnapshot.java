@@ -0,0 +1,32 @@
+package com.maks.playerdataplugin;
+
+/**
+ * Read-only copy of a player's statistics, safe to keep and read from any thread.
+ */
+public final class PlayerStatsSnapshot {
+
+    private final int mobsKilled;
+    private final int playersKilled;
+    private final int deaths;
+    private final double playtimeHours;
+    private final double balance;
+    private final long capturedAt;
+
+    PlayerStatsSnapshot(PlayerStatsManager.PlayerStats stats) {
+        this.mobsKilled = stats.getMobsKilled();
+        this.playersKilled = stats.getPlayersKilled();
+        this.deaths = stats.getDeaths();
+        this.playtimeHours = stats.getPlaytimeHours();
+        this.balance = stats.getBalance();
+        this.capturedAt = System.currentTimeMillis();
+    }
+
+    public int getMobsKilled() { return mobsKilled; }
+    public int getPlayersKilled() { return playersKilled; }
+    public int getDeaths() { return deaths; }
+    // Playtime of finished sessions, the current session is added when the player quits
+    public double getPlaytimeHours() { return playtimeHours; }
+    // Last sampled balance, 0 without Vault
+    public double getBalance() { return balance; }
+    public long getCapturedAt() { return capturedAt; }
+}
@@ -0,0 +1,137 @@
+package com.maks.playerdataplugin;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The last stored snapshot of recently quit players, kept in its encoded form together with the version
+ * the final save produced. A player reconnecting within the TTL is loaded from here instead of the
+ * database. Bounded by entry count and total size, the oldest quits are evicted first.
+ */
+public class RecentQuitCache {
+
+    private static class Entry {
+        final StoredInventory data;
+        final long storedAt;
+
+        Entry(StoredInventory data, long storedAt) {
+            this.data = data;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final boolean enabled;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final long maxBytes;
+    // Insertion order is quit order, so expired and evicted entries are always at the head
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>();
+    private long bytes = 0;
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public RecentQuitCache(Main plugin) {
+        this.enabled = plugin.getConfig().getBoolean("quitCache.enabled", true);
+        this.ttlMs = Math.max(1L, plugin.getConfig().getLong("quitCache.ttlSeconds", 300)) * 1000L;
+        this.maxEntries = Math.max(1, plugin.getConfig().getInt("quitCache.maxEntries", 1000));
+        this.maxBytes = Math.max(1L, plugin.getConfig().getLong("quitCache.maxMegabytes", 64)) * 1024L * 1024L;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Remembers what the player's final save stored, replacing anything cached for them before.
+     */
+    public synchronized void put(UUID uuid, StoredInventory data) {
+        if (!enabled || data.getState() == null) {
+            return;
+        }
+        remove(uuid);
+        entries.put(uuid, new Entry(data, System.currentTimeMillis()));
+        bytes += data.getState().length;
+
+        Iterator<Entry> oldest = entries.values().iterator();
+        while (oldest.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= oldest.next().data.getState().length;
+            oldest.remove();
+            evicted.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes and returns the player's snapshot if it is younger than the TTL. Taking it out keeps a
+     * snapshot from being served twice, the player's next quit stores a fresh one.
+     */
+    public synchronized StoredInventory take(UUID uuid) {
+        if (!enabled) {
+            return null;
+        }
+        expire();
+        Entry entry = remove(uuid);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        return entry.data;
+    }
+
+    /**
+     * Drops the player's snapshot, for writes to their data that didn't come from their own save.
+     */
+    public synchronized void invalidate(UUID uuid) {
+        remove(uuid);
+    }
+
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    // The stored version moved on since the snapshot was cached, another server or a restore wrote meanwhile
+    public void recordStale() {
+        stale.incrementAndGet();
+    }
+
+    private Entry remove(UUID uuid) {
+        Entry entry = entries.remove(uuid);
+        if (entry != null) {
+            bytes -= entry.data.getState().length;
+        }
+        return entry;
+    }
+
+    private void expire() {
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        Iterator<Map.Entry<UUID, Entry>> oldest = entries.entrySet().iterator();
+        while (oldest.hasNext()) {
+            Entry entry = oldest.next().getValue();
+            if (entry.storedAt >= cutoff) {
+                break;
+            }
+            bytes -= entry.data.getState().length;
+            oldest.remove();
+            expired.incrementAndGet();
+        }
+    }
+
+    public synchronized String getMetrics() {
+        if (!enabled) {
+            return "quit cache: off";
+        }
+        long served = hits.get();
+        long lookups = served + stale.get() + misses.get();
+        return "quit cache: " + entries.size() + " players (" + String.format("%.1f", bytes / 1024.0 / 1024.0) + " MB), " +
+                served + " hits, " + stale.get() + " stale, " + misses.get() + " misses (hit rate " +
+                String.format("%.1f", lookups == 0 ? 0.0 : served * 100.0 / lookups) + "%), " + expired.get() + " expired, " +
+                evicted.get() + " evicted";
+    }
+}
@@ -0,0 +1,149 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hashed timing wheel for periodic inventory saves. The save interval is split into one slot per tick
+ * and every online player hashes to a stable slot, so each player is saved exactly once per interval
+ * and the saves are spread evenly over it instead of landing in one tick. The wheel turns on the global
+ * thread, joins and quits may arrive from region threads on Folia, so the slots are guarded by the wheel.
+ * The slots are laid out for the configured interval. A different interval turns the wheel faster or
+ * slower, visiting more or fewer than one slot per tick.
+ */
+public class SaveScheduler implements Listener {
+
+    private final Main plugin;
+    private final int slotCount;
+    private final Set<UUID>[] slots;
+    private final Map<UUID, Integer> playerSlots = new ConcurrentHashMap<>();
+    private int cursor = 0;
+    // Slots visited per tick, and the fraction of a slot carried over to the next tick
+    private double slotsPerTick = 1.0;
+    private double pendingSlots = 0.0;
+    private TaskScheduler.Task task;
+    private final Tracer tracer;
+
+    // Metrics
+    private long savesTriggered = 0;
+    private int largestSlot = 0;
+
+    @SuppressWarnings("unchecked")
+    public SaveScheduler(Main plugin, long intervalTicks) {
+        this.plugin = plugin;
+        this.slotCount = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, intervalTicks));
+        this.slots = new Set[slotCount];
+        this.tracer = new Tracer(plugin.getTraceBuffer(), "DEBUG");
+    }
+
+    public void start() {
+        Bukkit.getOnlinePlayers().forEach(player -> schedule(player.getUniqueId()));
+        task = plugin.getTaskScheduler().runGlobalTimer(this::tick, 1L, 1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private synchronized void schedule(UUID uuid) {
+        int slot = slotFor(uuid);
+        Integer previous = playerSlots.put(uuid, slot);
+        if (previous != null) {
+            return;
+        }
+        if (slots[slot] == null) {
+            slots[slot] = new HashSet<>();
+        }
+        slots[slot].add(uuid);
+        largestSlot = Math.max(largestSlot, slots[slot].size());
+    }
+
+    private synchronized void unschedule(UUID uuid) {
+        Integer slot = playerSlots.remove(uuid);
+        if (slot != null && slots[slot] != null) {
+            slots[slot].remove(uuid);
+            if (slots[slot].isEmpty()) {
+                slots[slot] = null;
+            }
+        }
+    }
+
+    // Spreads the UUID's bits before reducing, player UUIDs aren't uniformly distributed in their low bits
+    private int slotFor(UUID uuid) {
+        long hash = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) Math.floorMod(hash, (long) slotCount);
+    }
+
+    /**
+     * Changes the interval between two saves of the same player, keeping every player's slot.
+     */
+    public synchronized void setIntervalTicks(long intervalTicks) {
+        slotsPerTick = (double) slotCount / Math.max(1L, intervalTicks);
+    }
+
+    private void tick() {
+        List<UUID> due = new ArrayList<>();
+        synchronized (this) {
+            pendingSlots += slotsPerTick;
+            while (pendingSlots >= 1.0) {
+                pendingSlots -= 1.0;
+                cursor = (cursor + 1) % slotCount;
+                if (slots[cursor] != null) {
+                    due.addAll(slots[cursor]);
+                }
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+
+        // Each save captures the player's inventory on the thread that owns the player
+        for (UUID uuid : due) {
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null) {
+                plugin.getTaskScheduler().runForEntity(player, () -> plugin.getPlayerDataListener().savePlayerData(player));
+                savesTriggered++;
+                if (tracer.isEnabled()) {
+                    tracer.trace(uuid, "Save wheel at slot {} saving {}", cursor, player.getName());
+                }
+            }
+        }
+        if (tracer.isEnabled()) {
+            tracer.trace(null, "Save wheel at slot {} saved {} players", cursor, due.size());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        schedule(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        unschedule(event.getPlayer().getUniqueId());
+    }
+
+    public synchronized String getMetrics() {
+        return "save wheel: " + playerSlots.size() + " players over " + slotCount + " slots (largest slot " +
+                largestSlot + "), " + savesTriggered + " periodic saves";
+    }
+}
@@ -1,18 +1,421 @@
 package com.maks.playerdataplugin;
 
+import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.Damageable;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.potion.PotionEffect;
 import org.bukkit.util.io.BukkitObjectInputStream;
 import org.bukkit.util.io.BukkitObjectOutputStream;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 public class SerializationUtils {
 
+    // Bumped whenever the player state layout changes, older layouts must stay readable
+    static final int PLAYER_STATE_FORMAT = 3;
+    // Format 2 wrote compact items into one object stream, without a slot index
+    static final int COMPACT_ITEMS_FORMAT = 2;
+    // Format 1 wrote every item with Java serialization
+    static final int OBJECT_ITEMS_FORMAT = 1;
+
+    // Per-slot encodings of the compact item format
+    static final int SLOT_EMPTY = 0;
+    static final int SLOT_PLAIN = 1;      // Material and amount, no meta at all
+    static final int SLOT_DAMAGED = 2;    // Material, amount and damage, meta holding nothing else
+    static final int SLOT_SERIALIZED = 3; // Anything else, through Bukkit's serialization
+    private static final int MAX_COMPACT_AMOUNT = 255;
+
+    public static byte[] serializePlayerState(PlayerState state) {
+        return serializePlayerState(state, PLAYER_STATE_FORMAT);
+    }
+
+    // The older formats stay writable for the codec benchmark
+    static byte[] serializePlayerState(PlayerState state, int format) {
+        if (format == PLAYER_STATE_FORMAT) {
+            return serializeIndexedState(state);
+        }
+
+        // Encoded into a pooled buffer, the only copy made is the exact-size record handed to the store
+        BufferPool.Buffer outputStream = BufferPool.acquire();
+        try {
+            BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream);
+
+            dataOutput.writeByte(format);
+            if (format == OBJECT_ITEMS_FORMAT) {
+                writeItems(dataOutput, state.getContents());
+                writeItems(dataOutput, state.getEnderChest());
+            } else {
+                writeCompactItems(dataOutput, state.getContents());
+                writeCompactItems(dataOutput, state.getEnderChest());
+            }
+
+            dataOutput.writeBoolean(state.hasStatus());
+            if (state.hasStatus()) {
+                dataOutput.writeInt(state.getLevel());
+                dataOutput.writeFloat(state.getExp());
+                dataOutput.writeInt(state.getTotalExperience());
+                dataOutput.writeDouble(state.getHealth());
+                dataOutput.writeInt(state.getFoodLevel());
+                dataOutput.writeFloat(state.getSaturation());
+                dataOutput.writeFloat(state.getExhaustion());
+                dataOutput.writeInt(state.getEffects().size());
+                for (PotionEffect effect : state.getEffects()) {
+                    dataOutput.writeObject(effect);
+                }
+            }
+
+            dataOutput.close();
+            return outputStream.copy();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to serialize player state.", e);
+        } finally {
+            BufferPool.release(outputStream);
+        }
+    }
+
+    public static PlayerState deserializePlayerState(byte[] data) {
+        return isIndexed(data) ? InventorySnapshot.open(data).toPlayerState() : deserializeStreamState(data);
+    }
+
+    /**
+     * Whether the record is in the indexed format. Older formats start with the object stream header.
+     */
+    static boolean isIndexed(byte[] data) {
+        return data.length > 0 && data[0] == PLAYER_STATE_FORMAT;
+    }
+
+    // Formats 1 and 2, written as a single object stream
+    static PlayerState deserializeStreamState(byte[] data) {
+        try {
+            BukkitObjectInputStream dataInput = new BukkitObjectInputStream(new ByteArrayInputStream(data));
+            int format = dataInput.readByte();
+            if (format != COMPACT_ITEMS_FORMAT && format != OBJECT_ITEMS_FORMAT) {
+                throw new IOException("Unknown player state format " + format);
+            }
+
+            boolean compact = format != OBJECT_ITEMS_FORMAT;
+            ItemStack[] contents = compact ? readCompactItems(dataInput) : readItems(dataInput);
+            ItemStack[] enderChest = compact ? readCompactItems(dataInput) : readItems(dataInput);
+            PlayerState state;
+            if (dataInput.readBoolean()) {
+                int level = dataInput.readInt();
+                float exp = dataInput.readFloat();
+                int totalExperience = dataInput.readInt();
+                double health = dataInput.readDouble();
+                int foodLevel = dataInput.readInt();
+                float saturation = dataInput.readFloat();
+                float exhaustion = dataInput.readFloat();
+                List<PotionEffect> effects = new ArrayList<>();
+                int effectCount = dataInput.readInt();
+                for (int i = 0; i < effectCount; i++) {
+                    effects.add((PotionEffect) dataInput.readObject());
+                }
+                state = new PlayerState(contents, enderChest, level, exp, totalExperience, health, foodLevel, saturation, exhaustion, effects);
+            } else {
+                state = PlayerState.inventoryOnly(contents, enderChest);
+            }
+
+            dataInput.close();
+            return state;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to deserialize player state.", e);
+        }
+    }
+
+    /**
+     * Writes the indexed format read by {@link InventorySnapshot}. Plain data output instead of an object
+     * stream, so every slot sits at a fixed position in the record: each item section carries a table of
+     * slot offsets, and serialized slots are self-contained payloads (Paper's item bytes) that can be
+     * decoded one at a time. Potion effects are one object stream payload of their own.
+     */
+    private static byte[] serializeIndexedState(PlayerState state) {
+        BufferPool.Buffer outputStream = BufferPool.acquire();
+        BufferPool.Buffer scratch = BufferPool.acquire();
+        try {
+            DataOutputStream dataOutput = new DataOutputStream(outputStream);
+            dataOutput.writeByte(PLAYER_STATE_FORMAT);
+            writeIndexedItems(dataOutput, scratch, state.getContents());
+            writeIndexedItems(dataOutput, scratch, state.getEnderChest());
+
+            dataOutput.writeBoolean(state.hasStatus());
+            if (state.hasStatus()) {
+                dataOutput.writeInt(state.getLevel());
+                dataOutput.writeFloat(state.getExp());
+                dataOutput.writeInt(state.getTotalExperience());
+                dataOutput.writeDouble(state.getHealth());
+                dataOutput.writeInt(state.getFoodLevel());
+                dataOutput.writeFloat(state.getSaturation());
+                dataOutput.writeFloat(state.getExhaustion());
+
+                scratch.reset();
+                BukkitObjectOutputStream effectsOutput = new BukkitObjectOutputStream(scratch);
+                effectsOutput.writeInt(state.getEffects().size());
+                for (PotionEffect effect : state.getEffects()) {
+                    effectsOutput.writeObject(effect);
+                }
+                effectsOutput.close();
+                dataOutput.writeInt(scratch.size());
+                scratch.writeTo(dataOutput);
+            }
+
+            dataOutput.flush();
+            return outputStream.copy();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to serialize player state.", e);
+        } finally {
+            BufferPool.release(scratch);
+            BufferPool.release(outputStream);
+        }
+    }
+
+    /**
+     * Section layout: slot count (-1 for none), material palette, slot data length, one offset into the
+     * slot data per slot (-1 for empty slots), then the slot data. A slot starts with its encoding, palette
+     * index and amount, so type and amount can be read without decoding the item.
+     */
+    private static void writeIndexedItems(DataOutputStream dataOutput, BufferPool.Buffer scratch, ItemStack[] items) throws IOException {
+        if (items == null) {
+            dataOutput.writeInt(-1);
+            return;
+        }
+
+        // Slots are written first, the offset table in front of them needs their positions
+        scratch.reset();
+        DataOutputStream slots = new DataOutputStream(scratch);
+        int[] offsets = new int[items.length];
+        Map<Material, Integer> palette = new EnumMap<>(Material.class);
+        for (int i = 0; i < items.length; i++) {
+            ItemStack item = items[i];
+            if (item == null || item.getType().isAir()) {
+                offsets[i] = -1;
+                continue;
+            }
+            offsets[i] = slots.size();
+            Integer index = palette.get(item.getType());
+            if (index == null) {
+                index = palette.size();
+                palette.put(item.getType(), index);
+            }
+
+            int encoding = compactEncoding(item);
+            slots.writeByte(encoding);
+            slots.writeShort(index);
+            switch (encoding) {
+                case SLOT_PLAIN:
+                    slots.writeByte(item.getAmount());
+                    break;
+                case SLOT_DAMAGED:
+                    slots.writeByte(item.getAmount());
+                    slots.writeInt(((Damageable) item.getItemMeta()).getDamage());
+                    break;
+                default:
+                    slots.writeInt(item.getAmount());
+                    slots.writeBoolean(InventorySnapshot.isContainer(item));
+                    byte[] payload = item.serializeAsBytes();
+                    slots.writeInt(payload.length);
+                    slots.write(payload);
+                    break;
+            }
+        }
+        slots.flush();
+
+        dataOutput.writeInt(items.length);
+        Material[] materials = new Material[palette.size()];
+        for (Map.Entry<Material, Integer> entry : palette.entrySet()) {
+            materials[entry.getValue()] = entry.getKey();
+        }
+        dataOutput.writeShort(materials.length);
+        for (Material material : materials) {
+            dataOutput.writeUTF(material.name());
+        }
+        dataOutput.writeInt(scratch.size());
+        for (int offset : offsets) {
+            dataOutput.writeInt(offset);
+        }
+        scratch.writeTo(dataOutput);
+    }
+
+    public static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void writeItems(BukkitObjectOutputStream dataOutput, ItemStack[] items) throws IOException {
+        if (items == null) {
+            dataOutput.writeInt(-1);
+            return;
+        }
+        dataOutput.writeInt(items.length);
+        for (ItemStack item : items) {
+            dataOutput.writeObject(item);
+        }
+    }
+
+    private static ItemStack[] readItems(BukkitObjectInputStream dataInput) throws IOException, ClassNotFoundException {
+        int length = dataInput.readInt();
+        if (length < 0) {
+            return null;
+        }
+        ItemStack[] items = new ItemStack[length];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = (ItemStack) dataInput.readObject();
+        }
+        return items;
+    }
+
+    /**
+     * Writes plain stacks as a palette index and amount (plus damage for damaged tools), and only falls
+     * back to full serialization for slots whose meta holds anything else. The materials used are written
+     * once per array as a palette.
+     */
+    private static void writeCompactItems(BukkitObjectOutputStream dataOutput, ItemStack[] items) throws IOException {
+        if (items == null) {
+            dataOutput.writeInt(-1);
+            return;
+        }
+
+        byte[] encodings = new byte[items.length];
+        int[] damages = new int[items.length];
+        Map<Material, Integer> palette = new EnumMap<>(Material.class);
+        for (int i = 0; i < items.length; i++) {
+            ItemStack item = items[i];
+            if (item == null || item.getType().isAir()) {
+                encodings[i] = SLOT_EMPTY;
+                continue;
+            }
+            int encoding = compactEncoding(item);
+            if (encoding == SLOT_DAMAGED) {
+                damages[i] = ((Damageable) item.getItemMeta()).getDamage();
+            }
+            if (encoding != SLOT_SERIALIZED && !palette.containsKey(item.getType())) {
+                palette.put(item.getType(), palette.size());
+            }
+            encodings[i] = (byte) encoding;
+        }
+
+        dataOutput.writeInt(items.length);
+        Material[] materials = new Material[palette.size()];
+        for (Map.Entry<Material, Integer> entry : palette.entrySet()) {
+            materials[entry.getValue()] = entry.getKey();
+        }
+        dataOutput.writeShort(materials.length);
+        for (Material material : materials) {
+            dataOutput.writeUTF(material.name());
+        }
+
+        for (int i = 0; i < items.length; i++) {
+            dataOutput.writeByte(encodings[i]);
+            switch (encodings[i]) {
+                case SLOT_PLAIN:
+                    dataOutput.writeShort(palette.get(items[i].getType()));
+                    dataOutput.writeByte(items[i].getAmount());
+                    break;
+                case SLOT_DAMAGED:
+                    dataOutput.writeShort(palette.get(items[i].getType()));
+                    dataOutput.writeByte(items[i].getAmount());
+                    dataOutput.writeInt(damages[i]);
+                    break;
+                case SLOT_SERIALIZED:
+                    dataOutput.writeObject(items[i]);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static ItemStack[] readCompactItems(BukkitObjectInputStream dataInput) throws IOException, ClassNotFoundException {
+        int length = dataInput.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        Material[] palette = new Material[dataInput.readUnsignedShort()];
+        for (int i = 0; i < palette.length; i++) {
+            String name = dataInput.readUTF();
+            palette[i] = Material.matchMaterial(name);
+            if (palette[i] == null) {
+                throw new IOException("Unknown material " + name);
+            }
+        }
+
+        ItemStack[] items = new ItemStack[length];
+        for (int i = 0; i < items.length; i++) {
+            int encoding = dataInput.readUnsignedByte();
+            switch (encoding) {
+                case SLOT_EMPTY:
+                    break;
+                case SLOT_PLAIN:
+                    items[i] = new ItemStack(palette[dataInput.readUnsignedShort()], dataInput.readUnsignedByte());
+                    break;
+                case SLOT_DAMAGED:
+                    Material material = palette[dataInput.readUnsignedShort()];
+                    int amount = dataInput.readUnsignedByte();
+                    items[i] = damagedStack(material, amount, dataInput.readInt());
+                    break;
+                case SLOT_SERIALIZED:
+                    items[i] = (ItemStack) dataInput.readObject();
+                    break;
+                default:
+                    throw new IOException("Unknown slot encoding " + encoding);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * How a stack would be written by the compact item format. A compact encoding is only chosen when the
+     * stack it decodes to is similar to the original, so every slot round-trips exactly.
+     */
+    static int compactEncoding(ItemStack item) {
+        Material type = item.getType();
+        int amount = item.getAmount();
+        if (type.isLegacy() || amount < 1 || amount > MAX_COMPACT_AMOUNT) {
+            return SLOT_SERIALIZED;
+        }
+        if (!item.hasItemMeta()) {
+            return SLOT_PLAIN;
+        }
+
+        ItemMeta meta = item.getItemMeta();
+        if (meta instanceof Damageable && ((Damageable) meta).hasDamage()
+                && damagedStack(type, amount, ((Damageable) meta).getDamage()).isSimilar(item)) {
+            return SLOT_DAMAGED;
+        }
+        return SLOT_SERIALIZED;
+    }
+
+    static ItemStack damagedStack(Material material, int amount, int damage) {
+        ItemStack item = new ItemStack(material, amount);
+        ItemMeta meta = item.getItemMeta();
+        if (meta instanceof Damageable) {
+            ((Damageable) meta).setDamage(damage);
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+
     public static String serializeItemStackArray(ItemStack[] items) {
+        BufferPool.Buffer outputStream = BufferPool.acquire();
         try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream);
 
             // Write the size of the array
@@ -25,9 +428,11 @@ public class SerializationUtils {
 
             // Serialize that array
             dataOutput.close();
-            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+            return Base64.getEncoder().encodeToString(outputStream.copy());
         } catch (Exception e) {
             throw new IllegalStateException("Unable to serialize item stacks.", e);
+        } finally {
+            BufferPool.release(outputStream);
         }
     }
 
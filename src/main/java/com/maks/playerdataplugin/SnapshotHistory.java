@@ -0,0 +1,219 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps a rollback history of every stored inventory. Snapshots are content-addressed: the compressed
+ * inventory is stored once per SHA-256 hash and an unchanged inventory adds no snapshot at all.
+ * Besides the newest snapshots, one checkpoint per interval is kept for longer. Old snapshots are
+ * pruned a few players at a time in the background.
+ */
+public class SnapshotHistory {
+
+    private final Main plugin;
+    private final boolean enabled;
+    private final int keepLatest;
+    private final long checkpointIntervalMs;
+    private final long checkpointRetentionMs;
+    private final long pruneIntervalTicks;
+    private final int prunePlayersPerRun;
+    private final Map<UUID, String> lastHashes = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> lastCheckpoints = new ConcurrentHashMap<>();
+    // A slow prune run is never overlapped by the next, the cursor is only touched by the run holding the flag
+    private final AtomicBoolean pruning = new AtomicBoolean(false);
+    private UUID pruneCursor = null;
+    private TaskScheduler.Task pruneTask;
+    private final Tracer tracer;
+
+    // Metrics
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong pruned = new AtomicLong();
+
+    public SnapshotHistory(Main plugin) {
+        this.plugin = plugin;
+        this.enabled = plugin.getConfig().getBoolean("history.enabled", true);
+        this.keepLatest = Math.max(1, plugin.getConfig().getInt("history.keepLatest", 20));
+        this.checkpointIntervalMs = plugin.getConfig().getLong("history.checkpointIntervalMinutes", 60) * 60000L;
+        this.checkpointRetentionMs = plugin.getConfig().getLong("history.checkpointRetentionDays", 7) * 86400000L;
+        this.pruneIntervalTicks = Math.max(20L, plugin.getConfig().getLong("history.pruneIntervalSeconds", 60) * 20L);
+        this.prunePlayersPerRun = Math.max(1, plugin.getConfig().getInt("history.prunePlayersPerRun", 50));
+        this.tracer = new Tracer(plugin.getTraceBuffer(), "HISTORY-DEBUG");
+    }
+
+    // Looked up on use, the store only exists once the async startup has opened the database
+    private HistoryStore store() {
+        return plugin.getDatabaseManager().getHistoryStore();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void start() {
+        if (enabled) {
+            pruneTask = plugin.getTaskScheduler().runAsyncTimer(this::pruneStep, pruneIntervalTicks, pruneIntervalTicks);
+        }
+    }
+
+    public void stop() {
+        if (pruneTask != null) {
+            pruneTask.cancel();
+            pruneTask = null;
+        }
+    }
+
+    /**
+     * Records a stored inventory. Called from the async save path after the write landed; failures are
+     * logged and never fail the save itself.
+     */
+    public void record(UUID uuid, StoredInventory inventory, String reason) {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            // Old-format records are converted first, so every blob holds the same state format
+            byte[] raw = inventory.toStateBytes();
+            String hash = inventory.getStateHash();
+
+            String lastHash = lastHashes.get(uuid);
+            if (lastHash == null) {
+                HistorySnapshot latest = store().latest(uuid, false);
+                lastHash = latest == null ? null : latest.getHash();
+            }
+            if (hash.equals(lastHash)) {
+                deduplicated.incrementAndGet();
+                tracer.trace(uuid, "Inventory of {} unchanged since the last snapshot, not recorded", uuid);
+                return;
+            }
+
+            Long lastCheckpoint = lastCheckpoints.get(uuid);
+            if (lastCheckpoint == null) {
+                HistorySnapshot latestCheckpoint = store().latest(uuid, true);
+                lastCheckpoint = latestCheckpoint == null ? 0L : latestCheckpoint.getCreatedAt();
+            }
+            long now = System.currentTimeMillis();
+            boolean checkpoint = now - lastCheckpoint >= checkpointIntervalMs;
+
+            store().append(uuid, hash, compress(raw), reason, checkpoint);
+            lastHashes.put(uuid, hash);
+            lastCheckpoints.put(uuid, checkpoint ? now : lastCheckpoint);
+            recorded.incrementAndGet();
+            tracer.trace(uuid, "Recorded {} {} for {} ({})", checkpoint ? "checkpoint" : "snapshot", hash, uuid, reason);
+        } catch (SQLException | IOException | IllegalStateException e) {
+            plugin.getLogger().warning("Failed to record inventory history for " + uuid + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the per-player dedup state once the player left.
+     */
+    public void forget(UUID uuid) {
+        lastHashes.remove(uuid);
+        lastCheckpoints.remove(uuid);
+    }
+
+    public List<HistorySnapshot> list(UUID uuid, int offset, int limit) throws SQLException {
+        return store().list(uuid, offset, limit);
+    }
+
+    /**
+     * Loads the inventory stored in a snapshot, null if the snapshot doesn't exist.
+     */
+    public StoredInventory load(UUID uuid, long id) throws SQLException {
+        HistorySnapshot snapshot = store().get(uuid, id);
+        if (snapshot == null) {
+            return null;
+        }
+
+        byte[] state;
+        try {
+            state = store().readBlob(snapshot.getHash(), SnapshotHistory::decompress);
+        } catch (IOException e) {
+            throw new SQLException("Content of snapshot #" + id + " is corrupted", e);
+        }
+        if (state == null) {
+            throw new SQLException("Content " + snapshot.getHash() + " of snapshot #" + id + " is missing");
+        }
+        return new StoredInventory(state, 0L);
+    }
+
+    // Prunes the next few players, wrapping around once every player with history was visited
+    private void pruneStep() {
+        if (!pruning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<UUID> players = store().playersAfter(pruneCursor, prunePlayersPerRun);
+            if (players.isEmpty()) {
+                pruneCursor = null;
+                return;
+            }
+
+            long checkpointCutoff = System.currentTimeMillis() - checkpointRetentionMs;
+            int deleted = 0;
+            for (UUID uuid : players) {
+                deleted += store().prune(uuid, keepLatest, checkpointCutoff);
+            }
+            pruneCursor = players.size() < prunePlayersPerRun ? null : players.get(players.size() - 1);
+            pruned.addAndGet(deleted);
+            if (deleted > 0) {
+                if (tracer.isEnabled()) {
+                    tracer.trace(null, "Pruned {} snapshots of {} players", deleted, players.size());
+                }
+            }
+        } catch (SQLException e) {
+            if (!(e instanceof CircuitBreaker.CircuitOpenException)) {
+                plugin.getLogger().warning("Failed to prune inventory history: " + e.getMessage());
+            }
+        } finally {
+            pruning.set(false);
+        }
+    }
+
+    public String getMetrics() {
+        return "history: " + recorded.get() + " snapshots recorded, " + deduplicated.get() +
+                " unchanged skipped, " + pruned.get() + " pruned";
+    }
+
+    private static byte[] compress(byte[] raw) throws IOException {
+        BufferPool.Buffer bytes = BufferPool.acquire();
+        try {
+            try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+                out.write(raw);
+            }
+            return bytes.copy();
+        } finally {
+            BufferPool.release(bytes);
+        }
+    }
+
+    private static byte[] decompress(InputStream blob) throws IOException {
+        BufferPool.Buffer bytes = BufferPool.acquire();
+        try {
+            try (InflaterInputStream in = new InflaterInputStream(blob)) {
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    bytes.write(chunk, 0, read);
+                }
+            }
+            return bytes.copy();
+        } finally {
+            BufferPool.release(bytes);
+        }
+    }
+}
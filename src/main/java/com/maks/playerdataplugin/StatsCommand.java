@@ -115,10 +115,9 @@ public class StatsCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        // Update balance from Vault if available and player is online
-        if (statsManager.getEconomy() != null && target.isOnline()) {
-            double currentBalance = statsManager.getEconomy().getBalance(target);
-            stats.setBalance(currentBalance);
+        // Update balance from the sampled value if the player is online
+        if (target.isOnline()) {
+            statsManager.updateBalance(uuid, stats);
         }
 
         // Show stats
@@ -154,8 +153,10 @@ public class StatsCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(ChatColor.BLUE + "⏰ Playtime: " + ChatColor.WHITE + formatPlaytime(stats.getPlaytimeHours()));
 
         if (statsManager.getEconomy() != null) {
-            String balanceText = isOnline && target != null ? 
-                statsManager.getEconomy().format(statsManager.getEconomy().getBalance(target)) :
+            BalanceSampler.Sample sample = isOnline && target != null && statsManager.getBalanceSampler() != null ?
+                statsManager.getBalanceSampler().getSample(target.getUniqueId()) : null;
+            String balanceText = sample != null ?
+                statsManager.getEconomy().format(sample.getBalance()) :
                 statsManager.getEconomy().format(stats.getBalance()) + " (last known)";
             sender.sendMessage(ChatColor.GOLD + "💰 Balance: " + ChatColor.WHITE + balanceText);
         }
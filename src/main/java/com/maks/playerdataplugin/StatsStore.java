@@ -0,0 +1,59 @@
+package com.maks.playerdataplugin;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Storage backend for player statistics.
+ * Implementations must be safe to call from several async threads at once.
+ */
+public interface StatsStore {
+
+    /**
+     * Receives stored stats one at a time during a scan.
+     */
+    interface RowHandler {
+        void accept(UUID uuid, String username, PlayerStatsManager.PlayerStats stats) throws IOException;
+    }
+
+    /**
+     * Creates or migrates whatever the backend needs before it can be used.
+     */
+    void initialize() throws SQLException;
+
+    /**
+     * Loads the stored stats for all given players. Players without stats are absent from the result.
+     */
+    Map<UUID, PlayerStatsManager.PlayerStats> loadAll(List<UUID> uuids) throws SQLException;
+
+    default PlayerStatsManager.PlayerStats load(UUID uuid) throws SQLException {
+        return loadAll(Collections.singletonList(uuid)).get(uuid);
+    }
+
+    void save(UUID uuid, String username, PlayerStatsManager.PlayerStats stats) throws SQLException;
+
+    /**
+     * Streams every stored stats record to the handler on the calling thread, holding only the current row in memory.
+     */
+    void scanAll(RowHandler handler) throws SQLException, IOException;
+
+    /**
+     * Writes imported stats in one batch, replacing what is stored. Usernames may be missing from the map.
+     */
+    void importAll(Map<UUID, PlayerStatsManager.PlayerStats> stats, Map<UUID, String> usernames) throws SQLException;
+
+    /**
+     * Deletes the players' stats.
+     */
+    void deleteAll(Collection<UUID> uuids) throws SQLException;
+
+    /**
+     * Finds a player by their last known username (case-insensitive), null if unknown.
+     */
+    UUID findUuidByUsername(String username) throws SQLException;
+}
@@ -0,0 +1,70 @@
+package com.maks.playerdataplugin;
+
+/**
+ * Serialized player state as held by an {@link InventoryStore}. Records written before the single state
+ * column existed carry the old inventory and armor columns instead and are migrated when read.
+ */
+public class StoredInventory {
+
+    private final byte[] state;
+    private final String legacyInventoryData;
+    private final String legacyArmorData;
+    private final long version;
+    private volatile String stateHash;
+
+    public StoredInventory(byte[] state, long version) {
+        this(state, null, null, version);
+    }
+
+    private StoredInventory(byte[] state, String legacyInventoryData, String legacyArmorData, long version) {
+        this.state = state;
+        this.legacyInventoryData = legacyInventoryData;
+        this.legacyArmorData = legacyArmorData;
+        this.version = version;
+    }
+
+    /**
+     * A record in the old two-column format.
+     */
+    public static StoredInventory legacy(String inventoryData, String armorData, long version) {
+        return new StoredInventory(null, inventoryData, armorData, version);
+    }
+
+    public byte[] getState() { return state; }
+    public long getVersion() { return version; }
+
+    public boolean isLegacy() {
+        return state == null;
+    }
+
+    public boolean isEmpty() {
+        return state == null && legacyInventoryData == null && legacyArmorData == null;
+    }
+
+    /**
+     * Decodes the record, migrating the old format on the fly.
+     */
+    public PlayerState toPlayerState() {
+        return state != null ? SerializationUtils.deserializePlayerState(state)
+                : PlayerState.fromLegacy(legacyInventoryData, legacyArmorData);
+    }
+
+    /**
+     * SHA-256 of the encoded state, computed once.
+     */
+    public String getStateHash() {
+        String hash = stateHash;
+        if (hash == null) {
+            hash = SerializationUtils.sha256(toStateBytes());
+            stateHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * The encoded state, converting records in the old format.
+     */
+    public byte[] toStateBytes() {
+        return state != null ? state : SerializationUtils.serializePlayerState(toPlayerState());
+    }
+}
@@ -0,0 +1,57 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.entity.Entity;
+
+import java.util.UUID;
+
+/**
+ * Schedules the plugin's tasks on the right thread. On Paper everything that touches the world runs on the
+ * main thread. On Folia there is no main thread: player work runs on the thread of the region owning the
+ * player, server-wide work on the global region, and both can run concurrently.
+ */
+public interface TaskScheduler {
+
+    interface Task {
+        void cancel();
+    }
+
+    static TaskScheduler create(Main plugin) {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return new FoliaTaskScheduler(plugin);
+        } catch (ClassNotFoundException e) {
+            return new BukkitTaskScheduler(plugin);
+        }
+    }
+
+    boolean isFolia();
+
+    /**
+     * Runs server-wide work on the main thread (Paper) or the global region (Folia).
+     */
+    void runGlobal(Runnable task);
+
+    void runGlobalLater(Runnable task, long delayTicks);
+
+    Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * Runs on the thread owning the entity, right away if that is the current thread. On Folia the task
+     * is dropped if the entity is removed first.
+     */
+    void runForEntity(Entity entity, Runnable task);
+
+    void runForEntityLater(Entity entity, Runnable task, long delayTicks);
+
+    /**
+     * Runs on the thread owning the player while they are online, otherwise as global work, so the task
+     * always runs and can check whether the player is still there.
+     */
+    void runForPlayer(UUID uuid, Runnable task);
+
+    void runAsync(Runnable task);
+
+    void runAsyncLater(Runnable task, long delayTicks);
+
+    Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks);
+}
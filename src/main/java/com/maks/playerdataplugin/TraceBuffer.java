@@ -0,0 +1,134 @@
+package com.maks.playerdataplugin;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * Fixed-size ring of recent trace events. Events keep their message template and arguments and are only
+ * formatted when they are dumped or mirrored to the log in debug mode, so recording one is a single small
+ * allocation. With both recording and debug off, nothing is allocated at all.
+ */
+public class TraceBuffer {
+
+    private final Logger logger;
+    private final boolean recording;
+    private final boolean logging;
+    private final AtomicReferenceArray<Event> ring;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public static class Event {
+        private final long time;
+        private final String thread;
+        private final String category;
+        private final UUID player;
+        private final String template;
+        private final Object[] args;
+
+        Event(String category, UUID player, String template, Object[] args) {
+            this.time = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+            this.category = category;
+            this.player = player;
+            this.template = template;
+            this.args = args;
+        }
+
+        public long getTime() { return time; }
+        public String getThread() { return thread; }
+        public String getCategory() { return category; }
+        public UUID getPlayer() { return player; }
+
+        // Substitutes the arguments for the {} placeholders in order
+        public String getMessage() {
+            StringBuilder message = new StringBuilder(template.length() + 16 * args.length);
+            int from = 0;
+            int argIndex = 0;
+            int at;
+            while ((at = template.indexOf("{}", from)) >= 0) {
+                message.append(template, from, at);
+                message.append(argIndex < args.length ? formatArg(args[argIndex++]) : "{}");
+                from = at + 2;
+            }
+            message.append(template, from, template.length());
+            return message.toString();
+        }
+
+        private static String formatArg(Object arg) {
+            if (arg instanceof Double || arg instanceof Float) {
+                return String.format("%.3f", ((Number) arg).doubleValue());
+            }
+            return String.valueOf(arg);
+        }
+
+        public String format() {
+            return new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(time)) + " [" + thread + "] [" + category + "] " + getMessage();
+        }
+    }
+
+    public TraceBuffer(Main plugin) {
+        this.logger = plugin.getLogger();
+        this.recording = plugin.getConfig().getBoolean("trace.enabled", false);
+        this.logging = plugin.getConfig().getBoolean("debug", false);
+        // Power of two so the slot is a mask of the sequence
+        int size = Math.max(16, Math.min(1 << 20, plugin.getConfig().getInt("trace.bufferSize", 4096)));
+        int capacity = Integer.highestOneBit(size - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(recording ? capacity : 0);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Whether events are recorded or logged. Callers building arguments that cost anything check this first.
+     */
+    public boolean isEnabled() {
+        return recording || logging;
+    }
+
+    void record(String category, UUID player, String template, Object[] args) {
+        if (!recording && !logging) {
+            return;
+        }
+        Event event = new Event(category, player, template, args);
+        if (recording) {
+            ring.set((int) (sequence.getAndIncrement() & mask), event);
+        }
+        if (logging) {
+            logger.info("[" + category + "] " + event.getMessage());
+        }
+    }
+
+    /**
+     * The newest events recorded for a player, oldest first.
+     */
+    public List<Event> recent(UUID player, int limit) {
+        List<Event> events = new ArrayList<>();
+        if (!recording) {
+            return events;
+        }
+
+        long newest = sequence.get() - 1;
+        long oldest = Math.max(0L, newest - mask);
+        for (long seq = newest; seq >= oldest && events.size() < limit; seq--) {
+            Event event = ring.get((int) (seq & mask));
+            if (event != null && player.equals(event.player)) {
+                events.add(event);
+            }
+        }
+        Collections.reverse(events);
+        return events;
+    }
+
+    public String getMetrics() {
+        if (!recording) {
+            return "trace: off";
+        }
+        return "trace: " + sequence.get() + " events recorded, last " + Math.min(sequence.get(), ring.length()) + " kept";
+    }
+}
@@ -0,0 +1,62 @@
+package com.maks.playerdataplugin;
+
+import java.util.UUID;
+
+/**
+ * Trace events of one category, recorded into the plugin's {@link TraceBuffer}. Messages are templates with
+ * {} placeholders, the arguments are only formatted when the event is read. The fixed-arity methods only
+ * allocate the argument array once tracing is known to be on.
+ */
+public class Tracer {
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final TraceBuffer buffer;
+    private final String category;
+
+    public Tracer(TraceBuffer buffer, String category) {
+        this.buffer = buffer;
+        this.category = category;
+    }
+
+    public boolean isEnabled() {
+        return buffer.isEnabled();
+    }
+
+    public void trace(UUID player, String template) {
+        if (buffer.isEnabled()) {
+            buffer.record(category, player, template, NO_ARGS);
+        }
+    }
+
+    public void trace(UUID player, String template, Object arg) {
+        if (buffer.isEnabled()) {
+            buffer.record(category, player, template, new Object[]{arg});
+        }
+    }
+
+    public void trace(UUID player, String template, Object arg1, Object arg2) {
+        if (buffer.isEnabled()) {
+            buffer.record(category, player, template, new Object[]{arg1, arg2});
+        }
+    }
+
+    public void trace(UUID player, String template, Object arg1, Object arg2, Object arg3) {
+        if (buffer.isEnabled()) {
+            buffer.record(category, player, template, new Object[]{arg1, arg2, arg3});
+        }
+    }
+
+    public void trace(UUID player, String template, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (buffer.isEnabled()) {
+            buffer.record(category, player, template, new Object[]{arg1, arg2, arg3, arg4});
+        }
+    }
+
+    // The array is built by the caller, guard the call with isEnabled()
+    public void traceAll(UUID player, String template, Object... args) {
+        if (buffer.isEnabled()) {
+            buffer.record(category, player, template, args);
+        }
+    }
+}
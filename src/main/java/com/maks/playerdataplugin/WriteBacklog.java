@@ -0,0 +1,166 @@
+package com.maks.playerdataplugin;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Local queue of writes that could not reach the database while the circuit breaker was open.
+ * Writes are keyed (e.g. per player and table) so a newer write replaces an older queued one.
+ * After recovery the backlog is drained at a fixed rate instead of all at once.
+ */
+public class WriteBacklog {
+
+    /**
+     * A single write against the storage backend.
+     */
+    public interface PendingWrite {
+        void execute() throws SQLException;
+    }
+
+    private final Main plugin;
+    private final int drainPerSecond;
+    private final int maxQueuedWrites;
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private TaskScheduler.Task drainTask;
+
+    // Metrics
+    private long queuedTotal = 0;
+    private long drainedTotal = 0;
+    private long droppedTotal = 0;
+
+    public WriteBacklog(Main plugin) {
+        this.plugin = plugin;
+        this.drainPerSecond = Math.max(1, plugin.getConfig().getInt("degraded.drainPerSecond", 20));
+        this.maxQueuedWrites = Math.max(1, plugin.getConfig().getInt("degraded.maxQueuedWrites", 10000));
+    }
+
+    /**
+     * While anything is queued, new writes must also be queued so they can't overtake older ones.
+     */
+    public synchronized boolean isActive() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Whether a write for the key is waiting to be replayed.
+     */
+    public synchronized boolean isQueued(String key) {
+        return pending.containsKey(key);
+    }
+
+    public synchronized void enqueue(String key, PendingWrite write) {
+        // Re-inserting moves the key to the back so the newest write for it runs last
+        pending.remove(key);
+        if (pending.size() >= maxQueuedWrites) {
+            Iterator<String> oldest = pending.keySet().iterator();
+            String dropped = oldest.next();
+            oldest.remove();
+            droppedTotal++;
+            plugin.getLogger().severe("Write backlog is full, dropped queued write " + dropped);
+        }
+        pending.put(key, write);
+        queuedTotal++;
+        startDraining();
+    }
+
+    /**
+     * Drains the backlog once per second at the configured rate. While the circuit is open every
+     * attempt fails fast, and the first attempt after the backoff acts as the half-open probe.
+     */
+    private void startDraining() {
+        if (drainTask != null || pending.isEmpty() || !plugin.isEnabled()) {
+            return;
+        }
+        drainTask = plugin.getTaskScheduler().runAsyncTimer(this::drainStep, 20L, 20L);
+    }
+
+    private void drainStep() {
+        for (int i = 0; i < drainPerSecond; i++) {
+            String key;
+            PendingWrite write;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    stopDraining();
+                    plugin.getLogger().info("Write backlog drained.");
+                    return;
+                }
+                Map.Entry<String, PendingWrite> next = pending.entrySet().iterator().next();
+                key = next.getKey();
+                write = next.getValue();
+            }
+
+            try {
+                write.execute();
+            } catch (SQLException e) {
+                // Leave the write queued and try again next second
+                if (!(e instanceof CircuitBreaker.CircuitOpenException)) {
+                    plugin.getLogger().warning("Failed to drain queued write " + key + ": " + e.getMessage());
+                }
+                return;
+            }
+
+            synchronized (this) {
+                // Only remove it if no newer write for the same key was queued meanwhile
+                if (pending.get(key) == write) {
+                    pending.remove(key);
+                }
+                drainedTotal++;
+            }
+        }
+    }
+
+    // Must be called while holding the lock
+    private void stopDraining() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+    }
+
+    /**
+     * Executes everything still queued, used on shutdown when the database is reachable again.
+     */
+    public void flush() {
+        while (true) {
+            String key;
+            PendingWrite write;
+            synchronized (this) {
+                stopDraining();
+                if (pending.isEmpty()) {
+                    return;
+                }
+                Map.Entry<String, PendingWrite> next = pending.entrySet().iterator().next();
+                key = next.getKey();
+                write = next.getValue();
+            }
+
+            try {
+                write.execute();
+            } catch (SQLException e) {
+                synchronized (this) {
+                    plugin.getLogger().severe("Could not flush " + pending.size() + " queued writes on shutdown, they are lost: " + e.getMessage());
+                    pending.clear();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                if (pending.get(key) == write) {
+                    pending.remove(key);
+                }
+                drainedTotal++;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    public synchronized String getMetrics() {
+        return "write backlog: " + pending.size() + " queued (total queued " + queuedTotal +
+                ", drained " + drainedTotal + ", dropped " + droppedTotal + ")";
+    }
+}
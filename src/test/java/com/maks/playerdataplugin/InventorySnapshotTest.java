@@ -0,0 +1,85 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InventorySnapshotTest {
+
+    @BeforeClass
+    public static void installServer() {
+        TestServer.install();
+    }
+
+    private static final PlayerState STATE = SerializationUtilsTest.state(SerializationUtilsTest.inventory(), SerializationUtilsTest.enderChest());
+
+    // Every slot read from the headers must agree with the fully decoded state
+    private static void assertHeadersMatch(InventorySnapshot snapshot, InventorySnapshot.Section section, ItemStack[] decoded) {
+        assertEquals(decoded.length, snapshot.getSize(section));
+        for (int slot = 0; slot < decoded.length; slot++) {
+            ItemStack item = decoded[slot];
+            boolean empty = item == null || item.getType().isAir();
+            assertEquals("slot " + slot, empty, snapshot.isEmpty(section, slot));
+            assertEquals("slot " + slot, empty ? null : item.getType(), snapshot.getType(section, slot));
+            assertEquals("slot " + slot, empty ? 0 : item.getAmount(), snapshot.getAmount(section, slot));
+            assertFalse("slot " + slot, snapshot.isContainer(section, slot));
+        }
+    }
+
+    @Test
+    public void headerReadsMatchFullDecode() {
+        byte[] data = SerializationUtils.serializePlayerState(STATE);
+        PlayerState decoded = SerializationUtils.deserializePlayerState(data);
+
+        InventorySnapshot snapshot = InventorySnapshot.open(data);
+        assertTrue(snapshot.isIndexed());
+        assertHeadersMatch(snapshot, InventorySnapshot.Section.CONTENTS, decoded.getContents());
+        assertHeadersMatch(snapshot, InventorySnapshot.Section.ENDER_CHEST, decoded.getEnderChest());
+        assertEquals(65, snapshot.count(Material.STONE));
+        assertEquals(5, snapshot.countItems(InventorySnapshot.Section.CONTENTS));
+        assertEquals(2, snapshot.countItems(InventorySnapshot.Section.ENDER_CHEST));
+        // Header reads decode nothing
+        assertEquals(0, snapshot.getDecodedSlots());
+    }
+
+    @Test
+    public void partialDecodeMatchesFullDecode() {
+        byte[] data = SerializationUtils.serializePlayerState(STATE);
+        PlayerState decoded = SerializationUtils.deserializePlayerState(data);
+
+        InventorySnapshot snapshot = InventorySnapshot.open(data);
+        SerializationUtilsTest.assertSameItems(
+                Arrays.copyOfRange(decoded.getContents(), 0, InventorySnapshot.HOTBAR_SIZE), snapshot.getHotbar());
+        assertEquals(3, snapshot.getDecodedSlots());
+        assertNull(snapshot.getItem(InventorySnapshot.Section.ENDER_CHEST, 5));
+
+        SerializationUtilsTest.assertSameItems(
+                Arrays.copyOfRange(decoded.getContents(), InventorySnapshot.ARMOR_START, InventorySnapshot.ARMOR_START + InventorySnapshot.ARMOR_SIZE),
+                snapshot.getArmor());
+
+        // Finishing the decode from a partly decoded snapshot gives the same state
+        PlayerState finished = snapshot.toPlayerState();
+        SerializationUtilsTest.assertSameItems(decoded.getContents(), finished.getContents());
+        SerializationUtilsTest.assertSameItems(decoded.getEnderChest(), finished.getEnderChest());
+        SerializationUtilsTest.assertSameStatus(decoded, finished);
+    }
+
+    @Test
+    public void streamFormatsOpenDecoded() {
+        byte[] data = SerializationUtils.serializePlayerState(STATE, SerializationUtils.COMPACT_ITEMS_FORMAT);
+        InventorySnapshot snapshot = InventorySnapshot.open(data);
+
+        assertFalse(snapshot.isIndexed());
+        assertHeadersMatch(snapshot, InventorySnapshot.Section.CONTENTS, STATE.getContents());
+        assertHeadersMatch(snapshot, InventorySnapshot.Section.ENDER_CHEST, STATE.getEnderChest());
+        assertEquals(65, snapshot.count(Material.STONE));
+    }
+}
@@ -0,0 +1,183 @@
+package com.maks.playerdataplugin;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogStructuredStoreTest {
+
+    private static final Logger LOGGER = Logger.getLogger("LogStructuredStoreTest");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Offsets of the records in the file, walked the way recovery does
+    private static List<Integer> recordOffsets(File file) throws IOException {
+        List<Integer> offsets = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long position = 0;
+            while (position + 8 <= raf.length()) {
+                raf.seek(position);
+                int length = raf.readInt();
+                if (length <= 0) {
+                    break;
+                }
+                offsets.add((int) position);
+                position += 8 + length;
+            }
+        }
+        return offsets;
+    }
+
+    @Test
+    public void reopenRestoresPutsAndDeletes() throws IOException {
+        File file = folder.newFile("store.log");
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            store.put("a", bytes("1"));
+            store.put("b", bytes("2"));
+            store.put("a", bytes("3"));
+            store.delete("b");
+        }
+
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            assertArrayEquals(bytes("3"), store.get("a"));
+            assertNull(store.get("b"));
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    public void recoveryDropsTornTail() throws IOException {
+        File file = folder.newFile("store.log");
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            store.put("a", bytes("first"));
+            store.put("b", bytes("second"));
+            store.put("a", bytes("a longer value that was only half written"));
+        }
+
+        // Cut the file in the middle of the last record, as a crash during its write would
+        List<Integer> offsets = recordOffsets(file);
+        assertEquals(3, offsets.size());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(offsets.get(2) + 20);
+        }
+
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            assertArrayEquals(bytes("first"), store.get("a"));
+            assertArrayEquals(bytes("second"), store.get("b"));
+            store.put("c", bytes("after recovery"));
+        }
+
+        // Writes after the recovered end survive the next reopen
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            assertArrayEquals(bytes("first"), store.get("a"));
+            assertArrayEquals(bytes("after recovery"), store.get("c"));
+            assertEquals(3, store.size());
+        }
+    }
+
+    @Test
+    public void recoveryStopsAtBadChecksum() throws IOException {
+        File file = folder.newFile("store.log");
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            store.put("a", bytes("1"));
+            store.put("b", bytes("2"));
+            store.put("c", bytes("3"));
+        }
+
+        // Flip the last byte of the second record's value
+        List<Integer> offsets = recordOffsets(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long last = offsets.get(2) - 1;
+            raf.seek(last);
+            int value = raf.read();
+            raf.seek(last);
+            raf.write(value ^ 0xFF);
+        }
+
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            assertArrayEquals(bytes("1"), store.get("a"));
+            assertNull(store.get("b"));
+            assertNull(store.get("c"));
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    public void compactionKeepsLiveKeys() throws IOException {
+        File file = folder.newFile("store.log");
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            for (int round = 0; round < 20; round++) {
+                for (int key = 0; key < 50; key++) {
+                    store.put("key:" + key, bytes("value " + key + " round " + round));
+                }
+            }
+            for (int key = 0; key < 50; key += 5) {
+                store.delete("key:" + key);
+            }
+
+            assertFalse(store.compactIfNeeded(0.99, 0));
+            assertTrue(store.compactIfNeeded(0.5, 0));
+            assertLive(store);
+            // The compacted store keeps taking writes
+            store.put("key:0", bytes("rewritten"));
+        }
+
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            assertArrayEquals(bytes("rewritten"), store.get("key:0"));
+            for (int key = 1; key < 50; key++) {
+                if (key % 5 == 0) {
+                    assertNull(store.get("key:" + key));
+                } else {
+                    assertArrayEquals(bytes("value " + key + " round 19"), store.get("key:" + key));
+                }
+            }
+            assertEquals(41, store.size());
+        }
+    }
+
+    private static void assertLive(LogStructuredStore store) {
+        for (int key = 0; key < 50; key++) {
+            if (key % 5 == 0) {
+                assertNull(store.get("key:" + key));
+            } else {
+                assertArrayEquals(bytes("value " + key + " round 19"), store.get("key:" + key));
+            }
+        }
+        assertEquals(40, store.size());
+    }
+
+    @Test
+    public void keysArePagedInOrderWithinThePrefix() throws IOException {
+        File file = folder.newFile("store.log");
+        try (LogStructuredStore store = new LogStructuredStore(file, LOGGER)) {
+            for (String key : new String[]{"inv:c", "inv:a", "other:b", "inv:d", "inv:b"}) {
+                store.put(key, bytes(key));
+            }
+
+            assertEquals(Arrays.asList("inv:a", "inv:b"), store.keysAfter("inv:", null, 2));
+            assertEquals(Arrays.asList("inv:c", "inv:d"), store.keysAfter("inv:", "inv:b", 2));
+            assertTrue(store.keysAfter("inv:", "inv:d", 2).isEmpty());
+            assertEquals(Arrays.asList("inv:a", "inv:b", "inv:c", "inv:d"), store.keys("inv:"));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Items are plain stacks only: anything with meta goes through Bukkit's serialization, which needs a real server
+public class SerializationUtilsTest {
+
+    @BeforeClass
+    public static void installServer() {
+        TestServer.install();
+    }
+
+    static ItemStack[] inventory() {
+        ItemStack[] contents = new ItemStack[41];
+        contents[0] = new ItemStack(Material.STONE, 64);
+        contents[1] = new ItemStack(Material.DIRT, 3);
+        contents[8] = new ItemStack(Material.STONE, 1);
+        contents[20] = new ItemStack(Material.OAK_LOG, 17);
+        contents[36] = new ItemStack(Material.AIR);
+        contents[40] = new ItemStack(Material.COAL, 5);
+        return contents;
+    }
+
+    static ItemStack[] enderChest() {
+        ItemStack[] enderChest = new ItemStack[27];
+        enderChest[0] = new ItemStack(Material.IRON_INGOT, 32);
+        enderChest[26] = new ItemStack(Material.COBBLESTONE, 64);
+        return enderChest;
+    }
+
+    static PlayerState state(ItemStack[] contents, ItemStack[] enderChest) {
+        return new PlayerState(contents, enderChest, 30, 0.25f, 1395, 17.5, 19, 4.0f, 1.5f, Collections.emptyList());
+    }
+
+    // Same slots with the same type and amount, empty and air slots alike
+    static void assertSameItems(ItemStack[] expected, ItemStack[] actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.length, actual.length);
+        for (int slot = 0; slot < expected.length; slot++) {
+            boolean expectedEmpty = expected[slot] == null || expected[slot].getType().isAir();
+            boolean actualEmpty = actual[slot] == null || actual[slot].getType().isAir();
+            assertEquals("slot " + slot, expectedEmpty, actualEmpty);
+            if (!expectedEmpty) {
+                assertEquals("slot " + slot, expected[slot].getType(), actual[slot].getType());
+                assertEquals("slot " + slot, expected[slot].getAmount(), actual[slot].getAmount());
+            }
+        }
+    }
+
+    static void assertSameStatus(PlayerState expected, PlayerState actual) {
+        assertEquals(expected.hasStatus(), actual.hasStatus());
+        if (expected.hasStatus()) {
+            assertEquals(expected.getLevel(), actual.getLevel());
+            assertEquals(expected.getExp(), actual.getExp(), 0.0f);
+            assertEquals(expected.getTotalExperience(), actual.getTotalExperience());
+            assertEquals(expected.getHealth(), actual.getHealth(), 0.0);
+            assertEquals(expected.getFoodLevel(), actual.getFoodLevel());
+            assertEquals(expected.getSaturation(), actual.getSaturation(), 0.0f);
+            assertEquals(expected.getExhaustion(), actual.getExhaustion(), 0.0f);
+            assertEquals(expected.getEffects().size(), actual.getEffects().size());
+        }
+    }
+
+    private static void assertRoundTrip(PlayerState state, int format) {
+        byte[] data = SerializationUtils.serializePlayerState(state, format);
+        assertEquals(format == SerializationUtils.PLAYER_STATE_FORMAT, SerializationUtils.isIndexed(data));
+
+        PlayerState decoded = SerializationUtils.deserializePlayerState(data);
+        assertSameItems(state.getContents(), decoded.getContents());
+        assertSameItems(state.getEnderChest(), decoded.getEnderChest());
+        assertSameStatus(state, decoded);
+    }
+
+    @Test
+    public void objectFormatRoundTrip() {
+        // Format 1 serializes every stack as an object, so only empty slots can be checked without a server
+        assertRoundTrip(state(new ItemStack[41], new ItemStack[27]), SerializationUtils.OBJECT_ITEMS_FORMAT);
+        assertRoundTrip(PlayerState.inventoryOnly(new ItemStack[41], null), SerializationUtils.OBJECT_ITEMS_FORMAT);
+    }
+
+    @Test
+    public void compactFormatRoundTrip() {
+        assertRoundTrip(state(inventory(), enderChest()), SerializationUtils.COMPACT_ITEMS_FORMAT);
+        assertRoundTrip(PlayerState.inventoryOnly(inventory(), null), SerializationUtils.COMPACT_ITEMS_FORMAT);
+    }
+
+    @Test
+    public void indexedFormatRoundTrip() {
+        assertRoundTrip(state(inventory(), enderChest()), SerializationUtils.PLAYER_STATE_FORMAT);
+        assertRoundTrip(PlayerState.inventoryOnly(inventory(), null), SerializationUtils.PLAYER_STATE_FORMAT);
+    }
+
+    @Test
+    public void defaultFormatIsIndexed() {
+        assertTrue(SerializationUtils.isIndexed(SerializationUtils.serializePlayerState(state(inventory(), enderChest()))));
+        assertFalse(SerializationUtils.isIndexed(
+                SerializationUtils.serializePlayerState(state(inventory(), enderChest()), SerializationUtils.COMPACT_ITEMS_FORMAT)));
+    }
+}
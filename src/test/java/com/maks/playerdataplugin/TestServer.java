@@ -0,0 +1,100 @@
+package com.maks.playerdataplugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.inventory.ItemFactory;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.logging.Logger;
+
+/**
+ * Minimal server for tests touching ItemStack: the API asks the server's ItemFactory whether a stack has
+ * meta, even for plain stacks. Only stacks without meta work, the factory has no meta to hand out.
+ */
+final class TestServer {
+
+    private TestServer() {
+    }
+
+    static synchronized void install() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+        ItemFactory itemFactory = proxy(ItemFactory.class, (method, args) -> {
+            if (method.getName().equals("equals") && args != null && args.length == 2) {
+                // Null meta is what a plain stack carries, and all these stacks are plain
+                return args[0] == args[1] || args[0] == null || args[1] == null;
+            }
+            return null;
+        });
+        Logger logger = Logger.getLogger("TestServer");
+        Bukkit.setServer(proxy(Server.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getItemFactory":
+                    return itemFactory;
+                case "getLogger":
+                    return logger;
+                case "getName":
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "test";
+                default:
+                    return null;
+            }
+        }));
+    }
+
+    private interface Handler {
+        Object handle(Method method, Object[] args);
+    }
+
+    // Unhandled methods return the type's default value
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return type.getSimpleName() + " for tests";
+                }
+            }
+            Object result = handler.handle(method, args);
+            if (result == null && method.getReturnType().isPrimitive()) {
+                return defaultValue(method.getReturnType());
+            }
+            return result;
+        }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == void.class) {
+            return null;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0.0f;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}